@@ -0,0 +1,42 @@
+package de.bytewright.sticker_classifier.adapter.llm_ollama;
+
+import de.bytewright.sticker_classifier.benchmark.SyntheticStickers;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Reading and base64 encoding an image before it is sent to Ollama */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageEncodingBenchmark {
+  @Param({"128", "512"})
+  int size;
+
+  private Path directory;
+  private List<Path> files;
+  private int next;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("jmh-base64");
+    files = SyntheticStickers.writeCorpus(directory, 64, size, false, 2);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    SyntheticStickers.deleteCorpus(directory);
+  }
+
+  @Benchmark
+  public String encodeImageToBase64() throws IOException {
+    next = (next + 1) % files.size();
+    return OllamaLlmService.encodeImageToBase64(files.get(next));
+  }
+}
@@ -0,0 +1,45 @@
+package de.bytewright.sticker_classifier.adapter.llm_ollama;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Decoding a model response, data binding after regex cleanup against the streaming decoder */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+  private static final String RESPONSE =
+      """
+      {"detectedTags": ["Cat", " happy ", "waving", "Cartoon", "greeting", "cute animal"],
+       "hasText": true, "textLanguageGuess": "en", "emoji": "\\u263a", "keyword": "hello"}""";
+
+  @Param({"false", "true"})
+  boolean fenced;
+
+  private ObjectMapper objectMapper;
+  private ClassificationResponseParser parser;
+  private String response;
+
+  @Setup
+  public void setUp() {
+    objectMapper = new ObjectMapper();
+    parser = new ClassificationResponseParser(objectMapper);
+    response = fenced ? "```json\n" + RESPONSE + "\n```\n" : RESPONSE;
+  }
+
+  @Benchmark
+  public ClassificationResult dataBinding() throws IOException {
+    return parser.decodeWithDataBinding(response);
+  }
+
+  @Benchmark
+  public ClassificationResult streaming() throws IOException {
+    return ClassificationResultDecoder.decode(objectMapper.getFactory(), response);
+  }
+}
@@ -0,0 +1,219 @@
+package de.bytewright.sticker_classifier.benchmark;
+
+import de.bytewright.sticker_classifier.StickerClassifierApplication;
+import de.bytewright.sticker_classifier.domain.event.ClassificationSessionStartedEvent;
+import de.bytewright.sticker_classifier.domain.event.ConfigurationLoadedEvent;
+import de.bytewright.sticker_classifier.domain.llm.ErrorPromptResult;
+import de.bytewright.sticker_classifier.domain.llm.PromptResult;
+import de.bytewright.sticker_classifier.domain.llm.PromptResultConsumer;
+import de.bytewright.sticker_classifier.domain.llm.PromptType;
+import de.bytewright.sticker_classifier.domain.metrics.LatencyHistogram;
+import de.bytewright.sticker_classifier.domain.metrics.StageMetrics;
+import de.bytewright.sticker_classifier.domain.model.ClassificationCategory;
+import de.bytewright.sticker_classifier.orchestration.llm.PromptRequestCoordinator;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Drives the full pipeline, discovery, coordinator, workers and result processing, over synthetic
+ * stickers against a {@link StubOllamaServer}, so orchestration overhead can be measured without a
+ * GPU. Reports items per second, end-to-end latency percentiles, allocation rate and the stage
+ * latencies. Options are passed as {@code --name=value}:
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dexec.args="-cp %classpath \
+ *   de.bytewright.sticker_classifier.benchmark.PipelineThroughputBenchmark \
+ *   --stickers=2000 --workers=8 --latencyMillis=20 --errorRate=0.01"
+ * </pre>
+ */
+public final class PipelineThroughputBenchmark {
+  private static final String VISION_MODEL = "stub-vision";
+  private static final String TEXT_MODEL = "stub-text";
+
+  private PipelineThroughputBenchmark() {}
+
+  public static void main(String[] args) throws Exception {
+    int stickers = Integer.parseInt(option(args, "stickers", "1000"));
+    int workers = Integer.parseInt(option(args, "workers", "4"));
+    StubOllamaServer.Config stubConfig =
+        new StubOllamaServer.Config(
+            List.of(VISION_MODEL, TEXT_MODEL),
+            Duration.ofMillis(Long.parseLong(option(args, "latencyMillis", "20"))),
+            Double.parseDouble(option(args, "latencySigma", "0.5")),
+            Double.parseDouble(option(args, "errorRate", "0.01")),
+            Double.parseDouble(option(args, "malformedRate", "0.02")),
+            workers * 2,
+            Long.parseLong(option(args, "seed", "42")));
+
+    Path root = Files.createTempDirectory("pipeline-benchmark");
+    Path workDirectory = root.resolve("work");
+    SyntheticStickers.writeCorpus(workDirectory.resolve("stickers"), stickers, 128, false, 7);
+    Probe probe = new Probe();
+    try (StubOllamaServer stub = StubOllamaServer.start(stubConfig);
+        ConfigurableApplicationContext context =
+            new SpringApplicationBuilder(StickerClassifierApplication.class)
+                .web(WebApplicationType.NONE)
+                .initializers(
+                    ctx -> ctx.getBeanFactory().registerSingleton("benchmarkProbe", probe))
+                .listeners(probe)
+                .properties(
+                    "app.adapter.ollama.baseUrl=" + stub.baseUrl(),
+                    "app.adapter.ollama.multiModalModel=" + VISION_MODEL,
+                    "app.adapter.ollama.textModel=" + TEXT_MODEL,
+                    // Only the synthetic session below may run, never one from a local config
+                    "app.adapter.workpackage.loadOnStartup=false",
+                    "app.adapter.journal.enabled=false",
+                    "app.orchestration.watch.enabled=false",
+                    "app.orchestration.prompts.workerCount=" + workers,
+                    "app.orchestration.prompts.threadCount=" + workers,
+                    "logging.level.de.bytewright=WARN")
+                .run()) {
+      Report report = run(context, probe, workDirectory, root.resolve("out"), stickers);
+      report.print(stub, context.getBean(StageMetrics.class));
+    } finally {
+      deleteQuietly(root);
+    }
+  }
+
+  private static String option(String[] args, String name, String defaultValue) {
+    String prefix = "--" + name + "=";
+    for (String arg : args) {
+      if (arg.startsWith(prefix)) {
+        return arg.substring(prefix.length());
+      }
+    }
+    return defaultValue;
+  }
+
+  private static Report run(
+      ConfigurableApplicationContext context,
+      Probe probe,
+      Path workDirectory,
+      Path outputDirectory,
+      int stickers)
+      throws InterruptedException {
+    PromptRequestCoordinator coordinator = context.getBean(PromptRequestCoordinator.class);
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long allocatedBefore = threads.getTotalThreadAllocatedBytes();
+    long start = System.nanoTime();
+    context.publishEvent(
+        ConfigurationLoadedEvent.builder()
+            .workDirectory(workDirectory)
+            .outputDirectory(outputDirectory)
+            .classifications(
+                List.of(
+                    new ClassificationCategory("cat", 1, "cats"),
+                    new ClassificationCategory("dog", 2, "dogs"),
+                    new ClassificationCategory("bear", 3, "bears")))
+            .compoundCategories(List.of())
+            .build());
+
+    // Given up requests end with an error result, the idle check only guards against lost ones
+    long idleSince = System.nanoTime();
+    long lastCount = -1;
+    while (probe.results.sum() < stickers) {
+      TimeUnit.MILLISECONDS.sleep(50);
+      long count = probe.results.sum();
+      boolean busy = coordinator.getQueueSize() > 0 || coordinator.getInFlightCount() > 0;
+      if (count != lastCount || busy) {
+        lastCount = count;
+        idleSince = System.nanoTime();
+      } else if (System.nanoTime() - idleSince > TimeUnit.SECONDS.toNanos(5)) {
+        break;
+      }
+    }
+    long end = probe.lastResultNanos.get();
+    long elapsed = (end == 0 ? System.nanoTime() : end) - start;
+    long allocated = threads.getTotalThreadAllocatedBytes() - allocatedBefore;
+    return new Report(stickers, probe, Duration.ofNanos(elapsed), allocated);
+  }
+
+  /** Records when each result arrives, runs before every other consumer */
+  static final class Probe
+      implements PromptResultConsumer, ApplicationListener<ClassificationSessionStartedEvent> {
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final LongAdder results = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicLong scheduledNanos = new AtomicLong();
+    private final AtomicLong lastResultNanos = new AtomicLong();
+
+    @Override
+    public void onApplicationEvent(ClassificationSessionStartedEvent event) {
+      // Published right after all requests of the session were scheduled
+      scheduledNanos.compareAndSet(0, System.nanoTime());
+    }
+
+    @Override
+    public int consumerPriority() {
+      return Integer.MIN_VALUE;
+    }
+
+    @Override
+    public boolean processPromtResult(PromptType promtType, PromptResult promptResult) {
+      long now = System.nanoTime();
+      if (promptResult instanceof ErrorPromptResult) {
+        errors.increment();
+      }
+      long scheduled = scheduledNanos.get();
+      if (scheduled != 0) {
+        endToEnd.recordNanos(now - scheduled);
+      }
+      lastResultNanos.accumulateAndGet(now, Math::max);
+      results.increment();
+      return false;
+    }
+  }
+
+  private record Report(int stickers, Probe probe, Duration elapsed, long allocatedBytes) {
+    void print(StubOllamaServer stub, StageMetrics stageMetrics) {
+      long results = probe.results.sum();
+      double seconds = Math.max(1e-9, elapsed.toNanos() / 1e9);
+      LatencyHistogram.Summary latency = probe.endToEnd.summary();
+      System.out.printf(
+          "%nPipeline throughput: %d of %d stickers in %.2fs = %.1f items/s%n",
+          results, stickers, seconds, results / seconds);
+      System.out.printf(
+          "Error results: %d, stub calls: %d, stub errors: %d, lost after retries: %d%n",
+          probe.errors.sum(), stub.requestCount(), stub.errorCount(), stickers - results);
+      System.out.printf(
+          "End-to-end latency since scheduling: p50=%dms p95=%dms p99=%dms max=%dms%n",
+          latency.p50().toMillis(),
+          latency.p95().toMillis(),
+          latency.p99().toMillis(),
+          latency.max().toMillis());
+      System.out.printf(
+          "Allocation: %.1f MB/s, %.1f KB per item%n",
+          allocatedBytes / seconds / (1 << 20),
+          results == 0 ? 0 : allocatedBytes / (double) results / 1024);
+      for (StageMetrics.StageLatency stage : stageMetrics.snapshot()) {
+        LatencyHistogram.Summary summary = stage.summary();
+        System.out.printf(
+            "  %-20s p50=%6.2fms p99=%6.2fms (n=%d)%n",
+            stage.key().stage(),
+            summary.p50().toNanos() / 1e6,
+            summary.p99().toNanos() / 1e6,
+            summary.count());
+      }
+    }
+  }
+
+  private static void deleteQuietly(Path root) {
+    try {
+      SyntheticStickers.deleteCorpus(root);
+    } catch (IOException e) {
+      System.err.println("Could not delete " + root + ": " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package de.bytewright.sticker_classifier.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Minimal stand-in for the Ollama HTTP API. {@code /api/chat} answers with canned classification
+ * results after a log-normally distributed delay, a configurable share of calls fails with a
+ * server error or returns content that is no valid JSON. {@code /api/tags} lists the models.
+ */
+public final class StubOllamaServer implements AutoCloseable {
+  private static final List<String> CANNED_RESULTS =
+      List.of(
+          """
+          {"detectedTags":["cat","happy"],"hasText":false,"textLanguageGuess":null,\
+          "emoji":"😺","keyword":"happy cat"}""",
+          """
+          {"detectedTags":["dog"],"hasText":true,"textLanguageGuess":"en",\
+          "emoji":"🐶","keyword":"good boy"}""",
+          """
+          {"detectedTags":["bear","angry"],"hasText":false,"textLanguageGuess":null,\
+          "emoji":"🐻","keyword":"grumpy"}""",
+          """
+          {"detectedTags":["fox","love"],"hasText":true,"textLanguageGuess":"de",\
+          "emoji":"🦊","keyword":"liebe"}""");
+
+  /**
+   * @param medianLatency median delay of a chat response
+   * @param latencySigma sigma of the log-normal delay, 0 for a constant delay
+   * @param errorRate share of chat calls answered with HTTP 503
+   * @param malformedRate share of chat calls whose content is not parseable
+   * @param models names listed by {@code /api/tags}
+   */
+  public record Config(
+      List<String> models,
+      Duration medianLatency,
+      double latencySigma,
+      double errorRate,
+      double malformedRate,
+      int threads,
+      long seed) {}
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Config config;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final SplittableRandom seedSource;
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+
+  private StubOllamaServer(Config config) throws IOException {
+    this.config = config;
+    this.seedSource = new SplittableRandom(config.seed());
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    this.executor = Executors.newFixedThreadPool(config.threads());
+    server.setExecutor(executor);
+    server.createContext("/api/chat", this::handleChat);
+    server.createContext("/api/tags", this::handleTags);
+  }
+
+  public static StubOllamaServer start(Config config) throws IOException {
+    StubOllamaServer stub = new StubOllamaServer(config);
+    stub.server.start();
+    return stub;
+  }
+
+  public String baseUrl() {
+    InetSocketAddress address = server.getAddress();
+    return "http://" + address.getHostString() + ":" + address.getPort();
+  }
+
+  public long requestCount() {
+    return requests.sum();
+  }
+
+  public long errorCount() {
+    return errors.sum();
+  }
+
+  private void handleChat(HttpExchange exchange) throws IOException {
+    requests.increment();
+    SplittableRandom random;
+    synchronized (seedSource) {
+      random = seedSource.split();
+    }
+    Map<?, ?> request;
+    try (InputStream body = exchange.getRequestBody()) {
+      request = objectMapper.readValue(body, Map.class);
+    }
+    double spread = Math.exp(config.latencySigma() * gaussian(random));
+    long delayNanos = (long) (config.medianLatency().toNanos() * spread);
+    try {
+      TimeUnit.NANOSECONDS.sleep(delayNanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    double roll = random.nextDouble();
+    if (roll < config.errorRate()) {
+      errors.increment();
+      send(exchange, 503, Map.of("error", "stub overloaded"));
+      return;
+    }
+    String content =
+        roll < config.errorRate() + config.malformedRate()
+            ? "I think this sticker shows a cat"
+            : CANNED_RESULTS.get(random.nextInt(CANNED_RESULTS.size()));
+    long loadNanos = delayNanos / 20;
+    long promptEvalNanos = delayNanos / 4;
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("model", request.get("model"));
+    response.put("created_at", Instant.now().toString());
+    response.put("message", Map.of("role", "assistant", "content", content));
+    response.put("done_reason", "stop");
+    response.put("done", true);
+    response.put("total_duration", delayNanos);
+    response.put("load_duration", loadNanos);
+    response.put("prompt_eval_count", 800);
+    response.put("prompt_eval_duration", promptEvalNanos);
+    response.put("eval_count", 60);
+    response.put("eval_duration", delayNanos - loadNanos - promptEvalNanos);
+    send(exchange, 200, response);
+  }
+
+  private void handleTags(HttpExchange exchange) throws IOException {
+    exchange.getRequestBody().close();
+    List<Map<String, String>> models =
+        config.models().stream().map(name -> Map.of("name", name, "model", name)).toList();
+    send(exchange, 200, Map.of("models", models));
+  }
+
+  private void send(HttpExchange exchange, int status, Object body) throws IOException {
+    byte[] bytes = objectMapper.writeValueAsBytes(body);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /** Standard normal sample, Box-Muller */
+  private static double gaussian(SplittableRandom random) {
+    double u = 1 - random.nextDouble();
+    double v = random.nextDouble();
+    return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,191 @@
+package de.bytewright.sticker_classifier.benchmark;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import javax.imageio.ImageIO;
+
+/**
+ * Generates sticker-like images for benchmarks: transparent background, a few outlined shapes and
+ * a text label, so pHash, dHash and colour histogram see realistic structure. Everything derives
+ * from the seed, the same seed always yields the same bytes.
+ */
+public final class SyntheticStickers {
+  private static final byte[] PNG_SIGNATURE = {
+    (byte) 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A
+  };
+
+  private SyntheticStickers() {}
+
+  public static BufferedImage sticker(long seed, int size) {
+    Random random = new Random(seed);
+    BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = img.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g.setStroke(new BasicStroke(Math.max(2, size / 64f)));
+      int shapes = 3 + random.nextInt(4);
+      for (int i = 0; i < shapes; i++) {
+        int w = size / 4 + random.nextInt(size / 2);
+        int h = size / 4 + random.nextInt(size / 2);
+        int x = random.nextInt(size - w);
+        int y = random.nextInt(size - h);
+        g.setColor(new Color(random.nextInt(0x1000000)));
+        if (random.nextBoolean()) {
+          g.fillOval(x, y, w, h);
+        } else {
+          g.fillRoundRect(x, y, w, h, w / 3, h / 3);
+        }
+        g.setColor(Color.BLACK);
+        g.drawOval(x, y, w, h);
+      }
+      g.setColor(new Color(random.nextInt(0x1000000)));
+      g.setFont(g.getFont().deriveFont(size / 8f));
+      g.drawString("#" + Long.toHexString(seed), size / 10, size - size / 10);
+    } finally {
+      g.dispose();
+    }
+    return img;
+  }
+
+  /** Near duplicate of the image: slightly scaled, shifted and tinted like a re-export */
+  public static BufferedImage variant(BufferedImage source, long seed) {
+    Random random = new Random(seed);
+    int size = source.getWidth();
+    BufferedImage img = new BufferedImage(size, source.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = img.createGraphics();
+    try {
+      g.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      double scale = 0.95 + random.nextDouble() * 0.1;
+      AffineTransform transform = new AffineTransform();
+      transform.translate(random.nextInt(5) - 2, random.nextInt(5) - 2);
+      transform.scale(scale, scale);
+      g.drawImage(source, transform, null);
+      g.setColor(new Color(random.nextInt(0x1000000) | 0x10000000, true));
+      g.fillRect(0, 0, size, size / 10);
+    } finally {
+      g.dispose();
+    }
+    return img;
+  }
+
+  public static byte[] png(BufferedImage img) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      ImageIO.write(img, "png", out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Encodes the image like Xcode's pngcrush: CgBI chunk first, premultiplied BGRA, raw deflate
+   * stream without zlib header, Sub filter on every row.
+   */
+  public static byte[] cgbiPng(BufferedImage img) {
+    int width = img.getWidth();
+    int height = img.getHeight();
+    int stride = width * 4;
+    byte[] raw = new byte[height * (stride + 1)];
+    int[] argb = new int[width];
+    byte[] row = new byte[stride];
+    for (int y = 0; y < height; y++) {
+      img.getRGB(0, y, width, 1, argb, 0, width);
+      for (int x = 0; x < width; x++) {
+        int pixel = argb[x];
+        int alpha = pixel >>> 24;
+        row[x * 4] = (byte) ((pixel & 0xFF) * alpha / 255);
+        row[x * 4 + 1] = (byte) (((pixel >> 8) & 0xFF) * alpha / 255);
+        row[x * 4 + 2] = (byte) (((pixel >> 16) & 0xFF) * alpha / 255);
+        row[x * 4 + 3] = (byte) alpha;
+      }
+      int offset = y * (stride + 1);
+      raw[offset] = 1;
+      for (int i = 0; i < stride; i++) {
+        int left = i >= 4 ? row[i - 4] & 0xFF : 0;
+        raw[offset + 1 + i] = (byte) ((row[i] & 0xFF) - left);
+      }
+    }
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(raw);
+    deflater.finish();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4);
+    byte[] buffer = new byte[16 * 1024];
+    while (!deflater.finished()) {
+      compressed.write(buffer, 0, deflater.deflate(buffer));
+    }
+    deflater.end();
+
+    ByteArrayOutputStream png = new ByteArrayOutputStream(compressed.size() + 64);
+    png.writeBytes(PNG_SIGNATURE);
+    writeChunk(png, "CgBI", new byte[] {0x50, 0x00, 0x20, 0x02});
+    writeChunk(
+        png,
+        "IHDR",
+        ByteBuffer.allocate(13).putInt(width).putInt(height).put((byte) 8).put((byte) 6).array());
+    writeChunk(png, "IDAT", compressed.toByteArray());
+    writeChunk(png, "IEND", new byte[0]);
+    return png.toByteArray();
+  }
+
+  private static void writeChunk(ByteArrayOutputStream out, String type, byte[] data) {
+    byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(data);
+    out.writeBytes(ByteBuffer.allocate(4).putInt(data.length).array());
+    out.writeBytes(typeBytes);
+    out.writeBytes(data);
+    out.writeBytes(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+  }
+
+  /**
+   * Writes a corpus of {@code count} stickers, every fourth one a near duplicate of its
+   * predecessor.
+   *
+   * @param cgbi whether to write Apple CgBI files instead of standard PNGs
+   */
+  public static List<Path> writeCorpus(Path directory, int count, int size, boolean cgbi, long seed)
+      throws IOException {
+    Files.createDirectories(directory);
+    List<Path> files = new ArrayList<>(count);
+    BufferedImage previous = null;
+    for (int i = 0; i < count; i++) {
+      BufferedImage img =
+          previous != null && i % 4 == 3 ? variant(previous, seed + i) : sticker(seed + i, size);
+      Path file = directory.resolve("sticker_%05d.png".formatted(i));
+      Files.write(file, cgbi ? cgbiPng(img) : png(img));
+      files.add(file);
+      previous = img;
+    }
+    return files;
+  }
+
+  /** Removes a corpus written by {@link #writeCorpus} */
+  public static void deleteCorpus(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+}
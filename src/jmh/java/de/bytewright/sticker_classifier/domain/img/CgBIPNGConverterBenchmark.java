@@ -0,0 +1,60 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import de.bytewright.sticker_classifier.benchmark.SyntheticStickers;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Detection and conversion of Apple CgBI PNGs, as done by the {@link ImageValidationService} */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CgBIPNGConverterBenchmark {
+  @Param({"128", "512"})
+  int size;
+
+  private Path directory;
+  private List<Path> files;
+  private Path target;
+  private byte[] cgbiBytes;
+  private final ByteBuffer headerBuffer = ByteBuffer.allocate(CgBIPNGConverter.HEADER_SIZE);
+  private int next;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("jmh-cgbi");
+    files = SyntheticStickers.writeCorpus(directory.resolve("stickers"), 32, size, true, 3);
+    target = directory.resolve("converted.png");
+    cgbiBytes = Files.readAllBytes(files.getFirst());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    SyntheticStickers.deleteCorpus(directory);
+  }
+
+  @Benchmark
+  public boolean isCgBIPNG() throws IOException {
+    next = (next + 1) % files.size();
+    return CgBIPNGConverter.isCgBIPNG(files.get(next), headerBuffer);
+  }
+
+  @Benchmark
+  public Path convertFile() throws IOException {
+    next = (next + 1) % files.size();
+    CgBIPNGConverter.convertCgBIToStandardPNG(files.get(next), target);
+    return target;
+  }
+
+  @Benchmark
+  public byte[] convertInMemory() throws IOException {
+    return CgBIPNGConverter.convertCgBIToStandardPNG(cgbiBytes);
+  }
+}
@@ -0,0 +1,72 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import de.bytewright.sticker_classifier.benchmark.SyntheticStickers;
+import dev.brachtendorf.jimagehash.hashAlgorithms.PerceptiveHash;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Signature computation (pHash, dHash, colour histogram) and the pairwise comparison cascade of
+ * the {@link StickerDeduplicationBySimilarityService}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimilarityBenchmark {
+  private static final int STICKER_COUNT = 256;
+
+  @Param({"256"})
+  int size;
+
+  private final StickerDeduplicationBySimilarityService.Config config =
+      StickerDeduplicationBySimilarityService.Config.builder().build();
+  private BufferedImage[] images;
+  private StickerSignature[] signatures;
+  private PerceptiveHash pHash;
+  private CascadedSimilarity similarity;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    pHash = StickerSignature.createPerceptiveHash(config.getHashPrecision());
+    similarity = new CascadedSimilarity(config);
+    images = new BufferedImage[STICKER_COUNT];
+    signatures = new StickerSignature[STICKER_COUNT];
+    for (int i = 0; i < STICKER_COUNT; i++) {
+      images[i] =
+          i % 4 == 3
+              ? SyntheticStickers.variant(images[i - 1], i)
+              : SyntheticStickers.sticker(i, size);
+      signatures[i] = StickerSignature.of(images[i], pHash);
+      signatures[i].perceptualHash();
+    }
+  }
+
+  /** Signature of a sticker that passed the pre-filter, including its pHash */
+  @Benchmark
+  public long[] computeSignature() {
+    next = (next + 1) % images.length;
+    return StickerSignature.of(images[next], pHash).perceptualHash();
+  }
+
+  /** All pairs of the corpus, the cost the BK-tree index avoids for most of them */
+  @Benchmark
+  @OperationsPerInvocation(STICKER_COUNT * (STICKER_COUNT - 1) / 2)
+  public int compareAllPairs() {
+    int similarPairs = 0;
+    for (int i = 0; i < signatures.length; i++) {
+      for (int j = i + 1; j < signatures.length; j++) {
+        if (similarity.passesPrefilter(signatures[i], signatures[j])
+            && similarity.fusedDistance(signatures[i], signatures[j])
+                <= config.getSimilarityThreshold()) {
+          similarPairs++;
+        }
+      }
+    }
+    return similarPairs;
+  }
+}
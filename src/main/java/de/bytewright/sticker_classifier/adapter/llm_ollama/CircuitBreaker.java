@@ -0,0 +1,84 @@
+package de.bytewright.sticker_classifier.adapter.llm_ollama;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stops calls to an endpoint after consecutive failures. Once open, calls are rejected until the
+ * open period has passed, then a single trial call decides whether the circuit closes again or
+ * stays open for another period. Rejected requests wait in the retry queue instead of hammering an
+ * endpoint that is restarting.
+ */
+@Slf4j
+final class CircuitBreaker {
+  enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final String endpoint;
+  private final int failureThreshold;
+  private final long openNanos;
+  private final LongSupplier nanoClock;
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+
+  CircuitBreaker(String endpoint, int failureThreshold, Duration openDuration) {
+    this(endpoint, failureThreshold, openDuration, System::nanoTime);
+  }
+
+  CircuitBreaker(
+      String endpoint, int failureThreshold, Duration openDuration, LongSupplier nanoClock) {
+    this.endpoint = endpoint;
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.openNanos = openDuration.toNanos();
+    this.nanoClock = nanoClock;
+  }
+
+  /**
+   * @return empty if the call may be made, otherwise how long the caller should wait
+   */
+  synchronized Optional<Duration> tryAcquire() {
+    return switch (state) {
+      case CLOSED -> Optional.empty();
+      case OPEN -> {
+        long remaining = openedAt + openNanos - nanoClock.getAsLong();
+        if (remaining > 0) {
+          yield Optional.of(Duration.ofNanos(remaining));
+        }
+        state = State.HALF_OPEN;
+        yield Optional.empty();
+      }
+      // A trial call is under way, everyone else waits for a full period
+      case HALF_OPEN -> Optional.of(Duration.ofNanos(openNanos));
+    };
+  }
+
+  synchronized void onSuccess() {
+    if (state != State.CLOSED) {
+      log.info("Circuit of {} closed, calls are made again", endpoint);
+    }
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+  }
+
+  synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      if (state != State.OPEN) {
+        log.warn(
+            "Circuit of {} opened after {} consecutive failures", endpoint, consecutiveFailures);
+      }
+      state = State.OPEN;
+      openedAt = nanoClock.getAsLong();
+    }
+  }
+
+  synchronized State state() {
+    return state;
+  }
+}
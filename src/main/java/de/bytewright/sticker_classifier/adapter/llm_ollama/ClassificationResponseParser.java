@@ -1,8 +1,10 @@
 package de.bytewright.sticker_classifier.adapter.llm_ollama;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.bytewright.sticker_classifier.domain.llm.PromptRequestWithImage;
 import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import java.io.IOException;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -33,10 +35,7 @@ public class ClassificationResponseParser {
     }
 
     try {
-      // Clean response - remove potential markdown code blocks
-      String cleanedJson = cleanJsonResponse(jsonResponse);
-
-      ClassificationResult result = objectMapper.readValue(cleanedJson, ClassificationResult.class);
+      ClassificationResult result = decode(jsonResponse);
 
       // Validate the result
       if (isValidResult(request, result)) {
@@ -53,6 +52,58 @@ public class ClassificationResponseParser {
     }
   }
 
+  /**
+   * Reads whatever fields the response contains, repairing broken JSON if necessary. Unlike {@link
+   * #parseResponse} the result is not validated, so it may lack required fields.
+   *
+   * @return the readable fields, empty if the response holds nothing usable
+   */
+  public Optional<ClassificationResult> salvage(String jsonResponse) {
+    if (jsonResponse == null || jsonResponse.isBlank()) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.ofNullable(decode(jsonResponse));
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  private ClassificationResult decode(String jsonResponse) throws IOException {
+    try {
+      return ClassificationResultDecoder.decode(objectMapper.getFactory(), jsonResponse);
+    } catch (JsonProcessingException e) {
+      log.debug("Streaming decode failed, falling back to data binding: {}", e.getMessage());
+    }
+    try {
+      return decodeWithDataBinding(jsonResponse);
+    } catch (JsonProcessingException e) {
+      Optional<ClassificationResult> repaired =
+          ClassificationResponseRepair.salvage(objectMapper.getFactory(), jsonResponse);
+      if (repaired.isEmpty()) {
+        throw e;
+      }
+      log.info("Repaired malformed LLM response");
+      return repaired.get();
+    }
+  }
+
+  /** Previous decoding path, slower but tolerant of anything the object mapper accepts */
+  ClassificationResult decodeWithDataBinding(String jsonResponse) throws IOException {
+    // Clean response - remove potential markdown code blocks
+    String cleanedJson = cleanJsonResponse(jsonResponse);
+    ClassificationResult result = objectMapper.readValue(cleanedJson, ClassificationResult.class);
+    if (result != null && result.getDetectedTags() != null) {
+      Set<String> cleanedTags =
+          result.getDetectedTags().stream()
+              .map(String::trim)
+              .map(String::toLowerCase)
+              .collect(Collectors.toSet());
+      result.setDetectedTags(cleanedTags);
+    }
+    return result;
+  }
+
   /** Clean JSON response by removing markdown code blocks and extra whitespace */
   private String cleanJsonResponse(String response) {
     return response.replaceAll("```json\\s*", "").replaceAll("```\\s*", "").trim();
@@ -66,14 +117,6 @@ public class ClassificationResponseParser {
     if (result.getDetectedTags() == null || result.getDetectedTags().isEmpty()) {
       log.debug("LLM detected no tags for image: {}", request.imagePath());
       return false;
-    } else {
-      Set<String> cleanedTags =
-          result.getDetectedTags().stream()
-              .map(String::trim)
-              .map(String::toLowerCase)
-              .collect(Collectors.toSet());
-      result.getDetectedTags().clear();
-      result.getDetectedTags().addAll(cleanedTags);
     }
 
     if (result.getEmoji() == null || result.getEmoji().isBlank()) {
@@ -0,0 +1,120 @@
+package de.bytewright.sticker_classifier.adapter.llm_ollama;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+
+/**
+ * Salvages a {@link ClassificationResult} from a response the decoders reject. The usual breakage
+ * of small models is fixed before decoding: text around the object, stray or missing closing
+ * brackets, unterminated strings and trailing commas. If the response was cut off, the incomplete
+ * tail is dropped one member at a time until the rest decodes, a truncated tag is never kept.
+ */
+final class ClassificationResponseRepair {
+  private static final int MAX_CUTS = 8;
+
+  private ClassificationResponseRepair() {}
+
+  /**
+   * @return the fields that could be read, empty if nothing could be salvaged
+   */
+  static Optional<ClassificationResult> salvage(JsonFactory factory, String response) {
+    int start = response.indexOf('{');
+    if (start < 0) {
+      return Optional.empty();
+    }
+    String candidate = response.substring(start);
+    for (int cut = 0; cut <= MAX_CUTS; cut++) {
+      try {
+        return Optional.of(ClassificationResultDecoder.decode(factory, close(candidate)));
+      } catch (IOException e) {
+        int lastComma = candidate.lastIndexOf(',');
+        if (lastComma < 0) {
+          return Optional.empty();
+        }
+        candidate = candidate.substring(0, lastComma);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Balances the brackets of the object starting at the first character. Everything after the
+   * bracket closing it is dropped, closers without an opener are skipped, an unterminated string
+   * is removed and the brackets still open at the end are appended.
+   */
+  static String close(String json) {
+    StringBuilder out = new StringBuilder(json.length() + 8);
+    Deque<Character> open = new ArrayDeque<>();
+    boolean inString = false;
+    boolean escaped = false;
+    int stringStart = 0;
+    for (int i = 0; i < json.length(); i++) {
+      char c = json.charAt(i);
+      if (inString) {
+        out.append(c);
+        if (escaped) {
+          escaped = false;
+        } else if (c == '\\') {
+          escaped = true;
+        } else if (c == '"') {
+          inString = false;
+        }
+        continue;
+      }
+      switch (c) {
+        case '"' -> {
+          inString = true;
+          stringStart = out.length();
+          out.append(c);
+        }
+        case '{' -> {
+          open.push('}');
+          out.append(c);
+        }
+        case '[' -> {
+          open.push(']');
+          out.append(c);
+        }
+        case '}', ']' -> {
+          if (!open.contains(c)) {
+            continue;
+          }
+          // Close whatever the model left open inside, then the bracket itself
+          while (!open.isEmpty()) {
+            char closer = open.pop();
+            appendCloser(out, closer);
+            if (closer == c) {
+              break;
+            }
+          }
+          if (open.isEmpty()) {
+            return out.toString();
+          }
+        }
+        default -> out.append(c);
+      }
+    }
+    if (inString) {
+      out.setLength(stringStart);
+    }
+    while (!open.isEmpty()) {
+      appendCloser(out, open.pop());
+    }
+    return out.toString();
+  }
+
+  private static void appendCloser(StringBuilder out, char closer) {
+    int end = out.length();
+    while (end > 0 && Character.isWhitespace(out.charAt(end - 1))) {
+      end--;
+    }
+    if (end > 0 && out.charAt(end - 1) == ',') {
+      out.setLength(end - 1);
+    }
+    out.append(closer);
+  }
+}
@@ -0,0 +1,93 @@
+package de.bytewright.sticker_classifier.adapter.llm_ollama;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decodes a {@link ClassificationResult} with the streaming parser in a single pass. Anything
+ * before the first opening brace and after the matching closing brace is ignored, which drops
+ * markdown code fences without rewriting the response, and tags are trimmed and lower cased while
+ * they are read. Coercions follow the data binding defaults, so both paths accept the same input.
+ */
+final class ClassificationResultDecoder {
+  private ClassificationResultDecoder() {}
+
+  /**
+   * @throws IOException if the response holds no well-formed object or a field has the wrong
+   *     shape, the caller may then fall back to data binding
+   */
+  static ClassificationResult decode(JsonFactory factory, String response) throws IOException {
+    int start = response.indexOf('{');
+    if (start < 0) {
+      throw new JsonParseException(null, "Response contains no JSON object");
+    }
+    char[] content = response.toCharArray();
+    try (JsonParser parser = factory.createParser(content, start, content.length - start)) {
+      parser.nextToken();
+      ClassificationResult result = new ClassificationResult();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        switch (field) {
+          case "detectedTags" -> {
+            // The setter rejects null, a missing list stays unset like with data binding
+            Set<String> tags = readTags(parser, value);
+            if (tags != null) {
+              result.setDetectedTags(tags);
+            }
+          }
+          case "hasText" -> result.setHasText(readBoolean(parser, value));
+          case "textLanguageGuess" -> result.setTextLanguageGuess(readString(parser, value));
+          case "emoji" -> result.setEmoji(readString(parser, value));
+          case "keyword" -> result.setKeyword(readString(parser, value));
+          default -> parser.skipChildren();
+        }
+      }
+      if (!parser.hasToken(JsonToken.END_OBJECT)) {
+        throw new JsonParseException(parser, "Expected end of object");
+      }
+      return result;
+    }
+  }
+
+  private static Set<String> readTags(JsonParser parser, JsonToken value) throws IOException {
+    if (value == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (value != JsonToken.START_ARRAY) {
+      throw new JsonParseException(parser, "detectedTags is no array");
+    }
+    Set<String> tags = new HashSet<>();
+    JsonToken token;
+    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+      String tag = readString(parser, token);
+      if (tag != null) {
+        tags.add(tag.trim().toLowerCase());
+      }
+    }
+    return tags;
+  }
+
+  private static String readString(JsonParser parser, JsonToken value) throws IOException {
+    if (value == null || !value.isScalarValue()) {
+      throw new JsonParseException(parser, "Expected a text value");
+    }
+    return value == JsonToken.VALUE_NULL ? null : parser.getText();
+  }
+
+  private static boolean readBoolean(JsonParser parser, JsonToken value) throws IOException {
+    return switch (value) {
+      case VALUE_TRUE -> true;
+      case VALUE_FALSE, VALUE_NULL -> false;
+      case VALUE_STRING -> Boolean.parseBoolean(parser.getText().trim());
+      case VALUE_NUMBER_INT -> parser.getIntValue() != 0;
+      case null, default -> throw new JsonParseException(parser, "Expected a boolean value");
+    };
+  }
+}
@@ -1,3 +0,0 @@
-package de.bytewright.sticker_classifier.adapter.llm_ollama;
-
-public class NoRetryException extends RuntimeException {}
@@ -19,4 +19,10 @@ public class OllamaAdapterConfig {
   private int timeoutSeconds = 240;
   private int minContextSize = 8_192;
   private int maxContextSize = 65_536;
+  /** Ask the text model for fields the vision model left out instead of retrying the image */
+  private boolean completePartialResults = true;
+  /** Consecutive connection, timeout or server failures of a model before its circuit opens */
+  private int circuitFailureThreshold = 5;
+  /** How long an open circuit rejects calls before a trial call is let through */
+  private int circuitOpenSeconds = 30;
 }
@@ -0,0 +1,54 @@
+package de.bytewright.sticker_classifier.adapter.llm_ollama;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports whether the configured Ollama endpoint answers and has both configured models pulled.
+ * Exposed as the {@code ollama} component of the actuator health endpoint.
+ */
+@Slf4j
+@Component("ollama")
+@Profile("!test")
+@RequiredArgsConstructor
+public class OllamaHealthIndicator implements HealthIndicator {
+  private final OllamaApi ollamaApi;
+  private final OllamaAdapterConfig ollamaAdapterConfig;
+
+  @Override
+  public Health health() {
+    long start = System.nanoTime();
+    Set<String> availableModels;
+    try {
+      availableModels =
+          ollamaApi.listModels().models().stream()
+              .map(OllamaApi.Model::name)
+              .collect(Collectors.toSet());
+    } catch (RuntimeException e) {
+      log.debug("Ollama health check failed", e);
+      return Health.down(e).withDetail("endpoint", ollamaAdapterConfig.getBaseUrl()).build();
+    }
+    Map<String, Boolean> models = new LinkedHashMap<>();
+    models.put(
+        ollamaAdapterConfig.getMultiModalModel(),
+        availableModels.contains(ollamaAdapterConfig.getMultiModalModel()));
+    models.put(
+        ollamaAdapterConfig.getTextModel(),
+        availableModels.contains(ollamaAdapterConfig.getTextModel()));
+    Health.Builder health = models.containsValue(false) ? Health.down() : Health.up();
+    return health
+        .withDetail("endpoint", ollamaAdapterConfig.getBaseUrl())
+        .withDetail("responseMillis", (System.nanoTime() - start) / 1_000_000)
+        .withDetail("models", models)
+        .build();
+  }
+}
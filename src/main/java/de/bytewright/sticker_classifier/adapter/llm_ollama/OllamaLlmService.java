@@ -12,25 +12,30 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.victools.jsonschema.generator.SchemaGenerator;
 import com.github.victools.jsonschema.generator.SchemaGeneratorConfigBuilder;
 import com.github.victools.jsonschema.module.jackson.JacksonModule;
-import de.bytewright.sticker_classifier.domain.event.ImagePromptRequestFailedEvent;
 import de.bytewright.sticker_classifier.domain.llm.*;
+import de.bytewright.sticker_classifier.domain.metrics.PipelineStage;
+import de.bytewright.sticker_classifier.domain.metrics.StageMetrics;
 import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.net.http.HttpTimeoutException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.Base64;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.ollama.api.OllamaApi;
 import org.springframework.ai.ollama.api.OllamaChatOptions;
+import org.springframework.ai.retry.NonTransientAiException;
 import org.springframework.ai.retry.TransientAiException;
 import org.springframework.beans.factory.InitializingBean;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
@@ -47,10 +52,11 @@ public class OllamaLlmService implements LlmConnector, InitializingBean {
   private final OllamaAdapterConfig ollamaAdapterConfig;
   private final ObjectMapper objectMapper = new ObjectMapper();
   private final PromptDataGenerator promptDataGenerator;
-  private final ApplicationEventPublisher eventPublisher;
   private final ClassificationResponseParser classificationResponseParser;
   private final PromptLog promptLog;
   private final OllamaApi ollamaApi;
+  private final StageMetrics stageMetrics;
+  private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
 
   @Override
   public Optional<PromptResult> processRequest(PromptRequest request) {
@@ -63,6 +69,9 @@ public class OllamaLlmService implements LlmConnector, InitializingBean {
         case PromptRequestUnstructured promptRequestUnstructured -> {
           String context = getContext(promptRequestUnstructured);
           String call = call(promptRequestUnstructured, context);
+          if (call == null) {
+            return Optional.empty();
+          }
           var promptResult =
               new StringPromptResult(
                   request, request.promptType(), request.requestParameter(), call);
@@ -73,21 +82,28 @@ public class OllamaLlmService implements LlmConnector, InitializingBean {
           return Optional.of(promptResult);
         }
         case PromptRequestWithImage requestWithImage -> {
-          return requestWithImage(requestWithImage)
-              .flatMap(json -> classificationResponseParser.parseResponse(requestWithImage, json))
-              .map(
-                  value ->
-                      ClassificationPromptResult.builder()
-                          .promptRequestWithImage(requestWithImage)
-                          .classificationResult(value)
-                          .build());
+          Optional<String> response = requestWithImage(requestWithImage);
+          if (response.isEmpty()) {
+            return Optional.empty();
+          }
+          ClassificationResult value =
+              parseOrComplete(requestWithImage, response.get())
+                  .orElseThrow(
+                      () ->
+                          new PromptFailedException(
+                              PromptFailure.PARSE_FAILURE, "No usable classification in response"));
+          return Optional.of(
+              ClassificationPromptResult.builder()
+                  .promptRequestWithImage(requestWithImage)
+                  .classificationResult(value)
+                  .build());
         }
         case PromptRetry promptRetry -> {
           return processRequest(promptRetry.delegate());
         }
       }
-    } catch (NoRetryException e) {
-      return Optional.of(new ErrorPromptResult(request));
+    } catch (PromptFailedException e) {
+      throw e;
     } catch (Exception e) {
       log.error(
           "Failed to process request of type {} for id {}",
@@ -98,6 +114,86 @@ public class OllamaLlmService implements LlmConnector, InitializingBean {
     return Optional.empty();
   }
 
+  /**
+   * Parses the response of the vision model. If it lacks required fields but still describes the
+   * image, the text model is asked to fill them in, which is much cheaper than another vision call.
+   */
+  private Optional<ClassificationResult> parseOrComplete(
+      PromptRequestWithImage request, String json) {
+    Optional<ClassificationResult> result = parseResponse(request, json);
+    if (result.isPresent() || !ollamaAdapterConfig.isCompletePartialResults()) {
+      return result;
+    }
+    return classificationResponseParser
+        .salvage(json)
+        .filter(OllamaLlmService::describesImage)
+        .flatMap(partial -> completeWithTextModel(request, partial));
+  }
+
+  /** Without keyword or emoji the text model has nothing to derive the tags from */
+  private static boolean describesImage(ClassificationResult partial) {
+    return StringUtils.hasText(partial.getKeyword()) || StringUtils.hasText(partial.getEmoji());
+  }
+
+  private Optional<ClassificationResult> completeWithTextModel(
+      PromptRequestWithImage request, ClassificationResult partial) {
+    log.info("Completing partial result for {} with the text model", request.imagePath());
+    try {
+      String partialJson = objectMapper.writeValueAsString(partial);
+      var chatRequest =
+          OllamaApi.ChatRequest.builder(ollamaAdapterConfig.getTextModel()).stream(false)
+              .messages(
+                  List.of(
+                      OllamaApi.Message.builder(OllamaApi.Message.Role.SYSTEM)
+                          .content(SystemPrompts.CLASSIFICATION_COMPLETION.getPrompt())
+                          .build(),
+                      OllamaApi.Message.builder(OllamaApi.Message.Role.USER)
+                          .content(
+                              "%s%nIncomplete analysis of the image: %s"
+                                  .formatted(Objects.toString(request.prompt(), ""), partialJson))
+                          .build()))
+              .options(OllamaChatOptions.builder().temperature(0.2).build())
+              .format(getSchema(ClassificationResult.class))
+              .build();
+      OllamaApi.ChatResponse response =
+          timedChat(chatRequest, ollamaAdapterConfig.getTextModel(), request);
+      if (response == null || response.message() == null) {
+        return Optional.empty();
+      }
+      promptLog.logResponse(request, response.message().content());
+      // The vision model saw the image, only take what it left out from the text model
+      return parseResponse(request, response.message().content())
+          .map(
+              completed -> {
+                completed.setHasText(partial.isHasText());
+                if (StringUtils.hasText(partial.getTextLanguageGuess())) {
+                  completed.setTextLanguageGuess(partial.getTextLanguageGuess());
+                }
+                if (StringUtils.hasText(partial.getEmoji())) {
+                  completed.setEmoji(partial.getEmoji());
+                }
+                if (StringUtils.hasText(partial.getKeyword())) {
+                  completed.setKeyword(partial.getKeyword());
+                }
+                return completed;
+              });
+    } catch (Exception e) {
+      log.warn("Could not complete partial result for {}: {}", request.imagePath(), e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  private Optional<ClassificationResult> parseResponse(
+      PromptRequestWithImage request, String json) {
+    long start = System.nanoTime();
+    try {
+      return classificationResponseParser.parseResponse(request, json);
+    } finally {
+      stageMetrics.recordSince(
+          PipelineStage.RESPONSE_PARSING, StageMetrics.NO_MODEL, request.promptType(), start);
+    }
+  }
+
   private String getContext(PromptRequest request) throws JsonProcessingException {
     return switch (request) {
       case PromptRequestUnstructured unstructured -> {
@@ -114,7 +210,8 @@ public class OllamaLlmService implements LlmConnector, InitializingBean {
    *
    * @param prompt The user's prompt.
    * @param context Additional context for the prompt.
-   * @return The content of the Ollama API response.
+   * @return The content of the Ollama API response, null if there was none.
+   * @throws PromptFailedException if the circuit is open or the call failed in a known way
    */
   String call(PromptRequest prompt, String context) {
     log.debug(
@@ -164,7 +261,8 @@ public class OllamaLlmService implements LlmConnector, InitializingBean {
       }
     }
     try {
-      OllamaApi.ChatResponse response = ollamaApi.chat(requestBuilder.build());
+      OllamaApi.ChatResponse response =
+          timedChat(requestBuilder.build(), ollamaAdapterConfig.getTextModel(), prompt);
       if (response != null && response.message() != null) {
         OllamaApi.Message message = response.message();
         String content = message.content();
@@ -172,12 +270,14 @@ public class OllamaLlmService implements LlmConnector, InitializingBean {
         return content;
       } else {
         log.error("Received null response or message from Ollama API for text request.");
-        return "Error: No response from LLM.";
       }
+    } catch (PromptFailedException e) {
+      log.error("Error calling Ollama API for text request: {}", e.getMessage());
+      throw e;
     } catch (Exception e) {
       log.error("Error calling Ollama API for text request: {}", e.getMessage(), e);
-      return "Error: Could not connect to LLM or process request.";
     }
+    return null;
   }
 
   /**
@@ -193,7 +293,7 @@ public class OllamaLlmService implements LlmConnector, InitializingBean {
     return Math.round(estimatedTokens * API_OVERHEAD_MARGIN);
   }
 
-  private String callWithImage(PromptRequestWithImage prompt, Path imagePath, String base64Image)
+  private String callWithImage(PromptRequestWithImage prompt, String base64Image)
       throws Exception {
     log.debug(
         "Sending multimodal prompt to model {}:\nPrompt: {}",
@@ -237,7 +337,8 @@ public class OllamaLlmService implements LlmConnector, InitializingBean {
             .build();
 
     try {
-      OllamaApi.ChatResponse response = ollamaApi.chat(request);
+      OllamaApi.ChatResponse response =
+          timedChat(request, ollamaAdapterConfig.getMultiModalModel(), prompt);
       if (response != null && response.message() != null) {
         String content = response.message().content();
         promptLog.logResponse(prompt, content);
@@ -245,25 +346,94 @@ public class OllamaLlmService implements LlmConnector, InitializingBean {
       } else {
         log.error("Received null response or message from Ollama API for multimodal request.");
       }
-    } catch (ResourceAccessException e) {
-      if (e.getCause() instanceof HttpTimeoutException te) {
+    } catch (PromptFailedException e) {
+      if (e.getFailure() == PromptFailure.TIMEOUT) {
         log.error(
             "Request timed out after {}: {}",
             Duration.ofSeconds(ollamaAdapterConfig.getTimeoutSeconds()),
-            te.getMessage());
+            e.getMessage());
       } else {
-        log.error("Error calling Ollama API for multimodal request: {}", e.getMessage(), e);
+        log.error("Error calling Ollama API for multimodal request: {}", e.getMessage());
       }
-    } catch (TransientAiException e) {
-      log.error("Error from ollama api: {}", e.getMessage());
-      eventPublisher.publishEvent(new ImagePromptRequestFailedEvent(imagePath));
-      throw new NoRetryException();
+      throw e;
     } catch (Exception e) {
       log.error("Error calling Ollama API for multimodal request: {}", e.getMessage(), e);
     }
     return null;
   }
 
+  /**
+   * Calls the api through the circuit breaker of the model and records the round trip as well as
+   * the durations reported by Ollama.
+   *
+   * @throws PromptFailedException if the circuit is open or the call failed in a known way
+   */
+  private OllamaApi.ChatResponse timedChat(
+      OllamaApi.ChatRequest request, String model, PromptRequest prompt) {
+    CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(model, this::newCircuitBreaker);
+    Optional<Duration> wait = circuitBreaker.tryAcquire();
+    if (wait.isPresent()) {
+      throw new PromptFailedException(
+          PromptFailure.CIRCUIT_OPEN, "Circuit of " + model + " is open", wait.get());
+    }
+    long start = System.nanoTime();
+    OllamaApi.ChatResponse response;
+    try {
+      response = ollamaApi.chat(request);
+    } catch (RuntimeException e) {
+      PromptFailure failure = classify(e);
+      if (failure == PromptFailure.UNKNOWN) {
+        circuitBreaker.onSuccess();
+        throw e;
+      }
+      circuitBreaker.onFailure();
+      throw new PromptFailedException(failure, e.getMessage(), e);
+    } finally {
+      stageMetrics.recordSince(PipelineStage.LLM_CALL, model, prompt.promptType(), start);
+    }
+    circuitBreaker.onSuccess();
+    if (response != null) {
+      PromptType type = prompt.promptType();
+      stageMetrics.record(PipelineStage.OLLAMA_TOTAL, model, type, response.getTotalDuration());
+      stageMetrics.record(PipelineStage.OLLAMA_LOAD, model, type, response.getLoadDuration());
+      stageMetrics.record(
+          PipelineStage.OLLAMA_PROMPT_EVAL, model, type, response.getPromptEvalDuration());
+      stageMetrics.record(PipelineStage.OLLAMA_EVAL, model, type, response.getEvalDuration());
+    }
+    return response;
+  }
+
+  private CircuitBreaker newCircuitBreaker(String model) {
+    return new CircuitBreaker(
+        model + "@" + ollamaAdapterConfig.getBaseUrl(),
+        ollamaAdapterConfig.getCircuitFailureThreshold(),
+        Duration.ofSeconds(ollamaAdapterConfig.getCircuitOpenSeconds()));
+  }
+
+  /**
+   * Maps a failed api call to the kind of failure the retry policy acts on. Ollama answers with 404
+   * for models that are not pulled and with a server error for models it can not load.
+   */
+  static PromptFailure classify(Exception e) {
+    if (e instanceof ResourceAccessException) {
+      for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+        if (cause instanceof HttpTimeoutException || cause instanceof SocketTimeoutException) {
+          return PromptFailure.TIMEOUT;
+        }
+      }
+      return PromptFailure.CONNECTION_REFUSED;
+    }
+    if (e instanceof TransientAiException || e instanceof NonTransientAiException) {
+      String message = String.valueOf(e.getMessage()).toLowerCase(Locale.ROOT);
+      boolean unavailable = message.contains("not found") || message.contains("load");
+      if (message.contains("model") && unavailable) {
+        return PromptFailure.MODEL_NOT_LOADED;
+      }
+      return e instanceof TransientAiException ? PromptFailure.SERVER_ERROR : PromptFailure.UNKNOWN;
+    }
+    return PromptFailure.UNKNOWN;
+  }
+
   Map<String, Object> getSchema(Class<?> aClass) throws JsonProcessingException {
     JacksonModule module = new JacksonModule(RESPECT_JSONPROPERTY_REQUIRED);
     SchemaGeneratorConfigBuilder configBuilder =
@@ -288,11 +458,17 @@ public class OllamaLlmService implements LlmConnector, InitializingBean {
       return Optional.empty();
     }
     try {
+      long start = System.nanoTime();
       String base64Image = encodeImageToBase64(imagePath);
-      return Optional.ofNullable(callWithImage(requestWithImage, imagePath, base64Image));
+      stageMetrics.recordSince(
+          PipelineStage.IMAGE_ENCODING,
+          ollamaAdapterConfig.getMultiModalModel(),
+          requestWithImage.promptType(),
+          start);
+      return Optional.ofNullable(callWithImage(requestWithImage, base64Image));
     } catch (IOException e) {
       log.error("Failed to encode image to Base64: {}", e.getMessage(), e);
-    } catch (NoRetryException e) {
+    } catch (PromptFailedException e) {
       throw e;
     } catch (Exception e) {
       log.error(
@@ -310,7 +486,7 @@ public class OllamaLlmService implements LlmConnector, InitializingBean {
    * @return A Base64 encoded string representation of the image.
    * @throws IOException If an error occurs during file reading.
    */
-  private String encodeImageToBase64(Path imagePath) throws IOException {
+  static String encodeImageToBase64(Path imagePath) throws IOException {
     if (imagePath == null || !Files.exists(imagePath) || !Files.isRegularFile(imagePath)) {
       throw new IOException(
           "Image file is invalid or does not exist: "
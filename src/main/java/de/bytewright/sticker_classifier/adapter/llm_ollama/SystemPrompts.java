@@ -54,6 +54,17 @@ public enum SystemPrompts {
    CRITICAL: Return ONLY valid JSON, no additional text or explanations
    CRITICAL: If no text is visible, set hasText to false and textLanguageGuess to empty string
   """),
+  CLASSIFICATION_COMPLETION(
+      """
+   You complete sticker classifications that an image model left unfinished.
+   The user will provide the instructions the image model was given, including the list of possible tags
+   with their descriptions, followed by the incomplete analysis it returned.
+   You must respond with a JSON object containing the same fields:
+   - detectedTags: The tags from the list that best match the keyword and emoji of the analysis
+   - hasText, textLanguageGuess, emoji, keyword: Copy them from the analysis if present
+   CRITICAL: Only use tag names from the provided list
+   CRITICAL: Return ONLY valid JSON, no additional text or explanations
+  """),
   TEXT_ANALYZE(
       """
                     bla
@@ -1,23 +1,72 @@
 package de.bytewright.sticker_classifier.adapter.storageInMemory;
 
 import de.bytewright.sticker_classifier.domain.llm.PromptRequest;
+import de.bytewright.sticker_classifier.domain.model.CategoryMatcher;
 import de.bytewright.sticker_classifier.domain.model.ClassificationCategory;
 import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
 import de.bytewright.sticker_classifier.domain.model.CompoundClassificationCategory;
 import de.bytewright.sticker_classifier.domain.session.ProcessingState;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import lombok.Data;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 
-@Data
+/**
+ * Session state shared by the producer and all prompt workers. Requests and results are lock-free
+ * append logs, their sizes are tracked by striped counters so concurrent appends never contend on
+ * a single cache line.
+ */
+@Getter
+@RequiredArgsConstructor
 public class ClassificationSession {
   private final List<ClassificationCategory> classifications;
   private final List<CompoundClassificationCategory> compoundCategories;
-  private final Collection<ClassificationResult> results = new ArrayList<>();
+  private final CategoryMatcher categoryMatcher;
+  private final CompactResultLog results = new CompactResultLog();
   private final Path workDirectory;
   private final Path outputDirectory;
-  private final Collection<PromptRequest> requests = new ArrayList<>();
-  private ProcessingState processingState;
+  private final Collection<PromptRequest> requests = new ConcurrentLinkedQueue<>();
+  private final LongAdder requestCount = new LongAdder();
+  private final LongAdder resultCount = new LongAdder();
+  private final Collection<Path> failedImages = new ConcurrentLinkedQueue<>();
+  private final LongAdder failureCount = new LongAdder();
+  // Request count at which completion was last reported, new requests reopen the session
+  private final AtomicLong completedAtRequestCount = new AtomicLong(-1);
+  @Setter private volatile ProcessingState processingState;
+
+  void addRequest(PromptRequest request) {
+    requests.add(request);
+    requestCount.increment();
+  }
+
+  /**
+   * @return true for exactly one caller once all requests known so far are finished
+   */
+  boolean addResult(Path imagePath, ClassificationResult result) {
+    results.add(imagePath, result);
+    resultCount.increment();
+    return completesSession();
+  }
+
+  /**
+   * @return true for exactly one caller once all requests known so far are finished
+   */
+  boolean addFailure(Path imagePath) {
+    failedImages.add(imagePath);
+    failureCount.increment();
+    return completesSession();
+  }
+
+  private boolean completesSession() {
+    long requested = requestCount.sum();
+    return resultCount.sum() + failureCount.sum() >= requested
+        && completedAtRequestCount.getAndSet(requested) != requested;
+  }
+
+  public record ImageResult(Path imagePath, ClassificationResult result) {}
 }
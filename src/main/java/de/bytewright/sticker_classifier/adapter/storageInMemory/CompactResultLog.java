@@ -0,0 +1,125 @@
+package de.bytewright.sticker_classifier.adapter.storageInMemory;
+
+import de.bytewright.sticker_classifier.adapter.storageInMemory.ClassificationSession.ImageResult;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of the classification results of a session. Tags, language guesses, emojis and
+ * directories repeat across results, so they are interned into a per session dictionary and a
+ * result only keeps their ids, the file name and the keyword. Results are decoded back into
+ * {@link ClassificationResult}s only when they are read.
+ */
+public final class CompactResultLog {
+  private static final int ABSENT = -1;
+  private static final int[] NO_TAGS = new int[0];
+
+  private final Dictionary dictionary = new Dictionary();
+  private final Queue<CompactResult> results = new ConcurrentLinkedQueue<>();
+
+  void add(Path imagePath, ClassificationResult result) {
+    Path parent = imagePath.getParent();
+    String fileName = parent == null ? imagePath.toString() : imagePath.getFileName().toString();
+    int directoryId = parent == null ? ABSENT : dictionary.intern(parent.toString());
+    if (result == null) {
+      results.add(new CompactResult(directoryId, fileName, null, ABSENT, ABSENT, null, false));
+      return;
+    }
+    int[] tagIds = NO_TAGS;
+    if (result.getDetectedTags() != null && !result.getDetectedTags().isEmpty()) {
+      tagIds = new int[result.getDetectedTags().size()];
+      int i = 0;
+      for (String tag : result.getDetectedTags()) {
+        tagIds[i++] = dictionary.intern(tag);
+      }
+    }
+    results.add(
+        new CompactResult(
+            directoryId,
+            fileName,
+            tagIds,
+            dictionary.intern(result.getTextLanguageGuess()),
+            dictionary.intern(result.getEmoji()),
+            result.getKeyword(),
+            result.isHasText()));
+  }
+
+  public Stream<ImageResult> stream() {
+    return results.stream().map(this::decode);
+  }
+
+  public Stream<Path> imagePaths() {
+    return results.stream().map(this::imagePath);
+  }
+
+  public int size() {
+    return results.size();
+  }
+
+  private Path imagePath(CompactResult compact) {
+    return compact.directoryId() == ABSENT
+        ? Path.of(compact.fileName())
+        : Path.of(dictionary.lookup(compact.directoryId()), compact.fileName());
+  }
+
+  private ImageResult decode(CompactResult compact) {
+    if (compact.tagIds() == null) {
+      return new ImageResult(imagePath(compact), null);
+    }
+    ClassificationResult result = new ClassificationResult();
+    Set<String> tags = new HashSet<>(compact.tagIds().length * 2);
+    for (int tagId : compact.tagIds()) {
+      tags.add(dictionary.lookup(tagId));
+    }
+    result.setDetectedTags(tags);
+    result.setHasText(compact.hasText());
+    result.setTextLanguageGuess(dictionary.lookup(compact.languageId()));
+    result.setEmoji(dictionary.lookup(compact.emojiId()));
+    result.setKeyword(compact.keyword());
+    return new ImageResult(imagePath(compact), result);
+  }
+
+  /**
+   * @param tagIds null for a missing result
+   */
+  private record CompactResult(
+      int directoryId,
+      String fileName,
+      int[] tagIds,
+      int languageId,
+      int emojiId,
+      String keyword,
+      boolean hasText) {}
+
+  /** Assigns dense ids to strings, lookups are rare so only interning is lock free */
+  private static final class Dictionary {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    int intern(String value) {
+      if (value == null) {
+        return ABSENT;
+      }
+      Integer id = ids.get(value);
+      return id != null ? id : add(value);
+    }
+
+    private synchronized int add(String value) {
+      Integer id = ids.get(value);
+      if (id == null) {
+        id = values.size();
+        values.add(value);
+        ids.put(value, id);
+      }
+      return id;
+    }
+
+    synchronized String lookup(int id) {
+      return id == ABSENT ? null : values.get(id);
+    }
+  }
+}
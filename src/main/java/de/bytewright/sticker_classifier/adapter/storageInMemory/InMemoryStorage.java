@@ -1,16 +1,16 @@
 package de.bytewright.sticker_classifier.adapter.storageInMemory;
 
 import de.bytewright.sticker_classifier.domain.llm.PromptRequest;
+import de.bytewright.sticker_classifier.domain.llm.PromptRequestWithImage;
+import de.bytewright.sticker_classifier.domain.model.CategoryMatcher;
 import de.bytewright.sticker_classifier.domain.model.ClassificationCategory;
 import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
 import de.bytewright.sticker_classifier.domain.model.CompoundClassificationCategory;
 import de.bytewright.sticker_classifier.domain.session.ProcessingState;
+import de.bytewright.sticker_classifier.domain.session.SessionProgress;
 import de.bytewright.sticker_classifier.domain.storage.SessionStorage;
 import java.nio.file.Path;
-import java.util.Collection;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import lombok.extern.slf4j.Slf4j;
@@ -27,12 +27,30 @@ public class InMemoryStorage implements SessionStorage {
       List<CompoundClassificationCategory> compoundCategories,
       Path workDirectory,
       Path outputDirectory) {
+    UUID sessionId = UUID.randomUUID();
+    restoreSession(sessionId, classifications, compoundCategories, workDirectory, outputDirectory);
+    return sessionId;
+  }
+
+  /** Creates a session with a known id, used when sessions are restored from persistent storage */
+  public void restoreSession(
+      UUID sessionId,
+      List<ClassificationCategory> classifications,
+      List<CompoundClassificationCategory> compoundCategories,
+      Path workDirectory,
+      Path outputDirectory) {
     ClassificationSession session =
         new ClassificationSession(
-            classifications, compoundCategories, workDirectory, outputDirectory);
-    UUID sessionId = UUID.randomUUID();
+            classifications,
+            compoundCategories,
+            CategoryMatcher.compile(classifications, compoundCategories),
+            workDirectory,
+            outputDirectory);
     storage.put(sessionId, session);
-    return sessionId;
+  }
+
+  public ClassificationSession getSession(UUID sessionId) {
+    return getOrThrow(sessionId);
   }
 
   @Override
@@ -40,6 +58,16 @@ public class InMemoryStorage implements SessionStorage {
     getOrThrow(sessionId).setProcessingState(processingState);
   }
 
+  @Override
+  public SessionProgress getProgress(UUID sessionId) {
+    ClassificationSession session = getOrThrow(sessionId);
+    return new SessionProgress(
+        session.getProcessingState(),
+        session.getRequestCount().sum(),
+        session.getResultCount().sum(),
+        session.getFailureCount().sum());
+  }
+
   @Override
   public Path getWorkDir(UUID sessionId) {
     return getOrThrow(sessionId).getWorkDirectory();
@@ -61,18 +89,72 @@ public class InMemoryStorage implements SessionStorage {
   }
 
   @Override
-  public void storeResult(UUID sessionId, ClassificationResult result) {
+  public CategoryMatcher getCategoryMatcher(UUID sessionId) {
+    return getOrThrow(sessionId).getCategoryMatcher();
+  }
+
+  @Override
+  public void storeResult(UUID sessionId, Path imagePath, ClassificationResult result) {
     ClassificationSession session = getOrThrow(sessionId);
-    Collection<ClassificationResult> results = session.getResults();
-    results.add(result);
-    if (session.getRequests().size() == results.size()) {
-      log.info("Processed all requests from session, got {} results!", results.size());
+    if (session.addResult(imagePath, result)) {
+      log.info(
+          "Processed all requests from session, got {} results!", session.getResultCount().sum());
+      session.setProcessingState(ProcessingState.COMPLETED);
+    }
+  }
+
+  @Override
+  public void storeFailure(UUID sessionId, Path imagePath) {
+    ClassificationSession session = getOrThrow(sessionId);
+    if (session.addFailure(imagePath)) {
+      log.info(
+          "Processed all requests from session, got {} results and {} failures!",
+          session.getResultCount().sum(),
+          session.getFailureCount().sum());
+      session.setProcessingState(ProcessingState.COMPLETED);
     }
   }
 
   @Override
   public void addRequest(UUID sessionId, PromptRequest request) {
-    getOrThrow(sessionId).getRequests().add(request);
+    getOrThrow(sessionId).addRequest(request);
+  }
+
+  @Override
+  public Optional<UUID> findUnfinishedSession(Path workDirectory, Path outputDirectory) {
+    Path workDir = workDirectory.toAbsolutePath().normalize();
+    Path outputDir = outputDirectory.toAbsolutePath().normalize();
+    return storage.entrySet().stream()
+        .filter(entry -> entry.getValue().getProcessingState() != ProcessingState.COMPLETED)
+        .filter(entry -> isSameDir(entry.getValue().getWorkDirectory(), workDir))
+        .filter(entry -> isSameDir(entry.getValue().getOutputDirectory(), outputDir))
+        .map(Map.Entry::getKey)
+        .findFirst();
+  }
+
+  @Override
+  public Collection<Path> getRequestedImagePaths(UUID sessionId) {
+    List<Path> imagePaths = new ArrayList<>();
+    for (PromptRequest request : getOrThrow(sessionId).getRequests()) {
+      if (request instanceof PromptRequestWithImage imageRequest) {
+        imagePaths.add(imageRequest.imagePath());
+      }
+    }
+    return imagePaths;
+  }
+
+  @Override
+  public Collection<Path> getPendingImagePaths(UUID sessionId) {
+    ClassificationSession session = getOrThrow(sessionId);
+    Set<Path> finished = new HashSet<>(session.getFailedImages());
+    session.getResults().imagePaths().forEach(finished::add);
+    return getRequestedImagePaths(sessionId).stream()
+        .filter(imagePath -> !finished.contains(imagePath))
+        .toList();
+  }
+
+  private static boolean isSameDir(Path dir, Path normalizedDir) {
+    return dir.toAbsolutePath().normalize().equals(normalizedDir);
   }
 
   private ClassificationSession getOrThrow(UUID sessionId) {
@@ -0,0 +1,67 @@
+package de.bytewright.sticker_classifier.adapter.storageJournal;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import de.bytewright.sticker_classifier.domain.model.ClassificationCategory;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import de.bytewright.sticker_classifier.domain.model.CompoundClassificationCategory;
+import de.bytewright.sticker_classifier.domain.session.ProcessingState;
+import java.util.List;
+import java.util.UUID;
+
+/** One line of a session journal, only the fields of its type are set */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+record JournalEntry(
+    Type type,
+    SessionMeta session,
+    ProcessingState state,
+    String imagePath,
+    ClassificationResult result) {
+
+  enum Type {
+    SESSION_CREATED,
+    STATE_CHANGED,
+    REQUEST_ADDED,
+    RESULT_STORED,
+    REQUEST_FAILED
+  }
+
+  record SessionMeta(
+      UUID sessionId,
+      String workDirectory,
+      String outputDirectory,
+      List<ClassificationCategory> classifications,
+      List<CompoundClassificationCategory> compoundCategories) {}
+
+  record StoredResult(String imagePath, ClassificationResult result) {}
+
+  /**
+   * Complete state of a session, replaces all journal entries written before it. Snapshots written
+   * before failures were recorded have no failed images.
+   */
+  record Snapshot(
+      SessionMeta session,
+      ProcessingState state,
+      List<String> requestedImages,
+      List<StoredResult> results,
+      List<String> failedImages) {}
+
+  static JournalEntry sessionCreated(SessionMeta session) {
+    return new JournalEntry(Type.SESSION_CREATED, session, null, null, null);
+  }
+
+  static JournalEntry stateChanged(ProcessingState state) {
+    return new JournalEntry(Type.STATE_CHANGED, null, state, null, null);
+  }
+
+  static JournalEntry requestAdded(String imagePath) {
+    return new JournalEntry(Type.REQUEST_ADDED, null, null, imagePath, null);
+  }
+
+  static JournalEntry resultStored(String imagePath, ClassificationResult result) {
+    return new JournalEntry(Type.RESULT_STORED, null, null, imagePath, result);
+  }
+
+  static JournalEntry requestFailed(String imagePath) {
+    return new JournalEntry(Type.REQUEST_FAILED, null, null, imagePath, null);
+  }
+}
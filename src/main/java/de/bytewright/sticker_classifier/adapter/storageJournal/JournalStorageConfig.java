@@ -0,0 +1,20 @@
+package de.bytewright.sticker_classifier.adapter.storageJournal;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Setter(AccessLevel.PACKAGE)
+@Configuration
+@RequiredArgsConstructor
+@ConfigurationProperties("app.adapter.journal")
+public class JournalStorageConfig {
+  private boolean enabled;
+  private String directory = ".sessions";
+  /** Journal entries before the first snapshot, later snapshots wait for the session size */
+  private int minSnapshotInterval = 10_000;
+}
@@ -0,0 +1,302 @@
+package de.bytewright.sticker_classifier.adapter.storageJournal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bytewright.sticker_classifier.adapter.storageInMemory.ClassificationSession;
+import de.bytewright.sticker_classifier.adapter.storageInMemory.InMemoryStorage;
+import de.bytewright.sticker_classifier.domain.ShutdownPhase;
+import de.bytewright.sticker_classifier.domain.llm.PromptRequest;
+import de.bytewright.sticker_classifier.domain.llm.PromptRequestWithImage;
+import de.bytewright.sticker_classifier.domain.llm.PromptType;
+import de.bytewright.sticker_classifier.domain.model.CategoryMatcher;
+import de.bytewright.sticker_classifier.domain.model.ClassificationCategory;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import de.bytewright.sticker_classifier.domain.model.CompoundClassificationCategory;
+import de.bytewright.sticker_classifier.domain.session.ProcessingState;
+import de.bytewright.sticker_classifier.domain.session.SessionProgress;
+import de.bytewright.sticker_classifier.domain.storage.SessionStorage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+/**
+ * Durable {@link SessionStorage}: keeps the working state in an {@link InMemoryStorage} and
+ * records every change in a per session {@link SessionJournal}. Sessions found in the journal
+ * directory are restored on startup, so an interrupted run can continue with the requests that
+ * have no result yet. Journals of completed sessions are moved to {@value #ARCHIVE_DIRECTORY}
+ * instead of being restored. Journals are closed last on shutdown, after the stages writing
+ * results.
+ */
+@Slf4j
+@Primary
+@Service
+@ConditionalOnProperty(prefix = "app.adapter.journal", name = "enabled", havingValue = "true")
+public class JournalingSessionStorage implements SessionStorage, SmartLifecycle {
+  static final String ARCHIVE_DIRECTORY = "completed";
+  private final InMemoryStorage delegate;
+  private final ObjectMapper objectMapper;
+  private final Path journalDirectory;
+  private final int minSnapshotInterval;
+  private final ConcurrentMap<UUID, SessionJournal> journals = new ConcurrentHashMap<>();
+  private volatile boolean running;
+
+  public JournalingSessionStorage(
+      InMemoryStorage delegate, ObjectMapper objectMapper, JournalStorageConfig config)
+      throws IOException {
+    this.delegate = delegate;
+    this.objectMapper = objectMapper;
+    this.journalDirectory = Path.of(config.getDirectory());
+    this.minSnapshotInterval = config.getMinSnapshotInterval();
+    Files.createDirectories(journalDirectory);
+    restoreSessions();
+  }
+
+  @Override
+  public UUID createSession(
+      List<ClassificationCategory> classifications,
+      List<CompoundClassificationCategory> compoundCategories,
+      Path workDirectory,
+      Path outputDirectory) {
+    UUID sessionId =
+        delegate.createSession(classifications, compoundCategories, workDirectory, outputDirectory);
+    try {
+      journals.put(
+          sessionId,
+          new SessionJournal(journalDirectory, sessionId, objectMapper, minSnapshotInterval));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not create journal for session " + sessionId, e);
+    }
+    append(sessionId, JournalEntry.sessionCreated(metaOf(sessionId)));
+    return sessionId;
+  }
+
+  @Override
+  public void updateState(UUID sessionId, ProcessingState processingState) {
+    delegate.updateState(sessionId, processingState);
+    append(sessionId, JournalEntry.stateChanged(processingState));
+  }
+
+  @Override
+  public SessionProgress getProgress(UUID sessionId) {
+    return delegate.getProgress(sessionId);
+  }
+
+  @Override
+  public Path getWorkDir(UUID sessionId) {
+    return delegate.getWorkDir(sessionId);
+  }
+
+  @Override
+  public Path getResultRootDir(UUID sessionId) {
+    return delegate.getResultRootDir(sessionId);
+  }
+
+  @Override
+  public List<ClassificationCategory> getClassificationCategories(UUID sessionId) {
+    return delegate.getClassificationCategories(sessionId);
+  }
+
+  @Override
+  public List<CompoundClassificationCategory> getCompoundCategories(UUID sessionId) {
+    return delegate.getCompoundCategories(sessionId);
+  }
+
+  @Override
+  public CategoryMatcher getCategoryMatcher(UUID sessionId) {
+    return delegate.getCategoryMatcher(sessionId);
+  }
+
+  @Override
+  public void storeResult(UUID sessionId, Path imagePath, ClassificationResult result) {
+    delegate.storeResult(sessionId, imagePath, result);
+    append(sessionId, JournalEntry.resultStored(imagePath.toString(), result));
+  }
+
+  @Override
+  public void storeFailure(UUID sessionId, Path imagePath) {
+    delegate.storeFailure(sessionId, imagePath);
+    append(sessionId, JournalEntry.requestFailed(imagePath.toString()));
+  }
+
+  @Override
+  public void addRequest(UUID sessionId, PromptRequest request) {
+    delegate.addRequest(sessionId, request);
+    // Only image requests are resumable, their prompt is rebuilt from the session configuration
+    if (request instanceof PromptRequestWithImage imageRequest) {
+      append(sessionId, JournalEntry.requestAdded(imageRequest.imagePath().toString()));
+    }
+  }
+
+  @Override
+  public Optional<UUID> findUnfinishedSession(Path workDirectory, Path outputDirectory) {
+    return delegate.findUnfinishedSession(workDirectory, outputDirectory);
+  }
+
+  @Override
+  public Collection<Path> getRequestedImagePaths(UUID sessionId) {
+    return delegate.getRequestedImagePaths(sessionId);
+  }
+
+  @Override
+  public Collection<Path> getPendingImagePaths(UUID sessionId) {
+    return delegate.getPendingImagePaths(sessionId);
+  }
+
+  @Override
+  public void start() {
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    close();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public int getPhase() {
+    return ShutdownPhase.JOURNAL;
+  }
+
+  public void close() {
+    for (SessionJournal journal : journals.values()) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        log.warn("Could not close session journal", e);
+      }
+    }
+  }
+
+  private void append(UUID sessionId, JournalEntry entry) {
+    SessionJournal journal = journals.get(sessionId);
+    try {
+      journal.append(entry, () -> snapshotOf(sessionId));
+    } catch (IOException e) {
+      log.error("Could not write {} to journal of session {}", entry.type(), sessionId, e);
+    }
+  }
+
+  private JournalEntry.SessionMeta metaOf(UUID sessionId) {
+    return new JournalEntry.SessionMeta(
+        sessionId,
+        delegate.getWorkDir(sessionId).toString(),
+        delegate.getResultRootDir(sessionId).toString(),
+        delegate.getClassificationCategories(sessionId),
+        delegate.getCompoundCategories(sessionId));
+  }
+
+  private JournalEntry.Snapshot snapshotOf(UUID sessionId) {
+    ClassificationSession session = delegate.getSession(sessionId);
+    List<String> requestedImages =
+        delegate.getRequestedImagePaths(sessionId).stream().map(Path::toString).toList();
+    List<JournalEntry.StoredResult> results =
+        session.getResults().stream()
+            .map(
+                result ->
+                    new JournalEntry.StoredResult(result.imagePath().toString(), result.result()))
+            .toList();
+    List<String> failedImages = session.getFailedImages().stream().map(Path::toString).toList();
+    return new JournalEntry.Snapshot(
+        metaOf(sessionId), session.getProcessingState(), requestedImages, results, failedImages);
+  }
+
+  private void restoreSessions() throws IOException {
+    Set<UUID> sessionIds = new HashSet<>();
+    try (Stream<Path> files = Files.list(journalDirectory)) {
+      files.map(file -> file.getFileName().toString()).forEach(name -> parseId(name, sessionIds));
+    }
+    for (UUID sessionId : sessionIds) {
+      Optional<SessionJournal.Replay> replay =
+          SessionJournal.replay(journalDirectory, sessionId, objectMapper);
+      if (replay.isEmpty()) {
+        log.warn("No session metadata found in journal of session {}, ignoring it", sessionId);
+        continue;
+      }
+      if (replay.get().isCompleted()) {
+        archive(sessionId);
+        continue;
+      }
+      restore(sessionId, replay.get());
+      journals.put(
+          sessionId,
+          new SessionJournal(journalDirectory, sessionId, objectMapper, minSnapshotInterval));
+    }
+  }
+
+  private void archive(UUID sessionId) throws IOException {
+    Path archiveDirectory = Files.createDirectories(journalDirectory.resolve(ARCHIVE_DIRECTORY));
+    for (String suffix : List.of(SessionJournal.JOURNAL_SUFFIX, SessionJournal.SNAPSHOT_SUFFIX)) {
+      Path file = journalDirectory.resolve(sessionId + suffix);
+      if (Files.exists(file)) {
+        Path archived = archiveDirectory.resolve(file.getFileName());
+        Files.move(file, archived, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    log.info("Session {} is completed, archived its journal to {}", sessionId, archiveDirectory);
+  }
+
+  private void restore(UUID sessionId, SessionJournal.Replay replay) {
+    JournalEntry.SessionMeta meta = replay.session;
+    delegate.restoreSession(
+        sessionId,
+        meta.classifications(),
+        meta.compoundCategories(),
+        Path.of(meta.workDirectory()),
+        Path.of(meta.outputDirectory()));
+    // Restore the state first, the last finished request of a session marks it completed again
+    if (replay.state != null) {
+      delegate.updateState(sessionId, replay.state);
+    }
+    for (String imagePath : replay.requestedImages) {
+      delegate.addRequest(
+          sessionId,
+          PromptRequestWithImage.builder()
+              .imagePath(Path.of(imagePath))
+              .promptType(PromptType.STICKER_CLASSIFICATION)
+              .requestParameter(sessionId)
+              .build());
+    }
+    replay.results.forEach(
+        (imagePath, result) -> delegate.storeResult(sessionId, Path.of(imagePath), result));
+    replay.failedImages.forEach(imagePath -> delegate.storeFailure(sessionId, Path.of(imagePath)));
+    log.info(
+        "Restored session {} ({}) with {} requests, {} results and {} failures",
+        sessionId,
+        replay.state,
+        replay.requestedImages.size(),
+        replay.results.size(),
+        replay.failedImages.size());
+  }
+
+  private static void parseId(String fileName, Set<UUID> sessionIds) {
+    String id;
+    if (fileName.endsWith(SessionJournal.JOURNAL_SUFFIX)) {
+      id = fileName.substring(0, fileName.length() - SessionJournal.JOURNAL_SUFFIX.length());
+    } else if (fileName.endsWith(SessionJournal.SNAPSHOT_SUFFIX)) {
+      id = fileName.substring(0, fileName.length() - SessionJournal.SNAPSHOT_SUFFIX.length());
+    } else {
+      return;
+    }
+    try {
+      sessionIds.add(UUID.fromString(id));
+    } catch (IllegalArgumentException e) {
+      log.debug("Ignoring unrelated file {} in journal directory", fileName);
+    }
+  }
+}
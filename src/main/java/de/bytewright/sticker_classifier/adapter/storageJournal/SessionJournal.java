@@ -0,0 +1,186 @@
+package de.bytewright.sticker_classifier.adapter.storageJournal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import de.bytewright.sticker_classifier.domain.session.ProcessingState;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of one session plus its latest snapshot. Every change is written as one JSON
+ * line. Once the journal has grown as large as the last snapshot, a new snapshot is written and the
+ * journal starts over, so replay time and disk usage stay proportional to the session size.
+ */
+@Slf4j
+final class SessionJournal implements Closeable {
+  static final String JOURNAL_SUFFIX = ".journal";
+  static final String SNAPSHOT_SUFFIX = ".snapshot.json";
+
+  private final Path journalFile;
+  private final Path snapshotFile;
+  private final ObjectMapper objectMapper;
+  private final int minSnapshotInterval;
+  private BufferedWriter writer;
+  private long entriesSinceSnapshot;
+  private long lastSnapshotSize;
+
+  SessionJournal(Path directory, UUID sessionId, ObjectMapper objectMapper, int minSnapshotInterval)
+      throws IOException {
+    this.journalFile = directory.resolve(sessionId + JOURNAL_SUFFIX);
+    this.snapshotFile = directory.resolve(sessionId + SNAPSHOT_SUFFIX);
+    this.objectMapper = objectMapper;
+    this.minSnapshotInterval = minSnapshotInterval;
+    this.writer = openJournal(StandardOpenOption.APPEND);
+    if (endsWithTornLine(journalFile)) {
+      // Terminate a line torn by a crash, otherwise the next entry would be appended to it
+      writer.newLine();
+      writer.flush();
+    }
+  }
+
+  private static boolean endsWithTornLine(Path file) throws IOException {
+    try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+      if (channel.size() == 0) {
+        return false;
+      }
+      ByteBuffer lastByte = ByteBuffer.allocate(1);
+      channel.position(channel.size() - 1).read(lastByte);
+      return lastByte.get(0) != '\n';
+    }
+  }
+
+  /**
+   * Appends the entry. Must be called after the change has been applied to the in-memory state, so
+   * a snapshot taken concurrently either contains the change or is followed by its entry.
+   *
+   * @param snapshot current state of the session, only evaluated when a snapshot is due
+   */
+  synchronized void append(JournalEntry entry, Supplier<JournalEntry.Snapshot> snapshot)
+      throws IOException {
+    writer.write(objectMapper.writeValueAsString(entry));
+    writer.newLine();
+    writer.flush();
+    entriesSinceSnapshot++;
+    if (entriesSinceSnapshot >= Math.max(minSnapshotInterval, lastSnapshotSize)) {
+      writeSnapshot(snapshot.get());
+    }
+  }
+
+  private void writeSnapshot(JournalEntry.Snapshot snapshot) throws IOException {
+    Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+    try (OutputStream out = Files.newOutputStream(tempFile)) {
+      objectMapper.writeValue(out, snapshot);
+    }
+    Files.move(
+        tempFile,
+        snapshotFile,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    writer.close();
+    writer = openJournal(StandardOpenOption.TRUNCATE_EXISTING);
+    entriesSinceSnapshot = 0;
+    lastSnapshotSize =
+        snapshot.requestedImages().size()
+            + snapshot.results().size()
+            + snapshot.failedImages().size();
+    log.debug("Wrote snapshot {} with {} entries", snapshotFile, lastSnapshotSize);
+  }
+
+  private BufferedWriter openJournal(StandardOpenOption mode) throws IOException {
+    return Files.newBufferedWriter(
+        journalFile,
+        StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        mode);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    writer.close();
+  }
+
+  /** Session state rebuilt from a snapshot and the journal written after it */
+  static final class Replay {
+    JournalEntry.SessionMeta session;
+    ProcessingState state;
+    final Set<String> requestedImages = new LinkedHashSet<>();
+    final Map<String, ClassificationResult> results = new LinkedHashMap<>();
+    final Set<String> failedImages = new LinkedHashSet<>();
+
+    /**
+     * Same rule as the in memory session, every request has a result or failed. The state is not
+     * used, completion is never journaled and requests added later reopen a session.
+     */
+    boolean isCompleted() {
+      int finished = results.size() + failedImages.size();
+      return finished > 0 && finished >= requestedImages.size();
+    }
+
+    // Entries may be contained in the snapshot already, so applying them has to be idempotent
+    private void apply(JournalEntry entry) {
+      switch (entry.type()) {
+        case SESSION_CREATED -> session = entry.session();
+        case STATE_CHANGED -> state = entry.state();
+        case REQUEST_ADDED -> requestedImages.add(entry.imagePath());
+        case RESULT_STORED -> results.putIfAbsent(entry.imagePath(), entry.result());
+        case REQUEST_FAILED -> failedImages.add(entry.imagePath());
+      }
+    }
+  }
+
+  /**
+   * @return the replayed session, empty if neither snapshot nor journal contain its metadata
+   */
+  static Optional<Replay> replay(Path directory, UUID sessionId, ObjectMapper objectMapper)
+      throws IOException {
+    Replay replay = new Replay();
+    Path snapshotFile = directory.resolve(sessionId + SNAPSHOT_SUFFIX);
+    if (Files.isRegularFile(snapshotFile)) {
+      JournalEntry.Snapshot snapshot =
+          objectMapper.readValue(snapshotFile.toFile(), JournalEntry.Snapshot.class);
+      replay.session = snapshot.session();
+      replay.state = snapshot.state();
+      replay.requestedImages.addAll(snapshot.requestedImages());
+      for (JournalEntry.StoredResult result : snapshot.results()) {
+        replay.results.put(result.imagePath(), result.result());
+      }
+      if (snapshot.failedImages() != null) {
+        replay.failedImages.addAll(snapshot.failedImages());
+      }
+    }
+    Path journalFile = directory.resolve(sessionId + JOURNAL_SUFFIX);
+    if (Files.isRegularFile(journalFile)) {
+      try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+          lineNumber++;
+          if (line.isBlank()) {
+            continue;
+          }
+          try {
+            replay.apply(objectMapper.readValue(line, JournalEntry.class));
+          } catch (IOException e) {
+            // Usually the last line, torn by a crash while it was written
+            log.warn("Skipping unreadable line {} of {}", lineNumber, journalFile, e);
+          }
+        }
+      }
+    }
+    return Optional.ofNullable(replay.session).map(session -> replay);
+  }
+}
@@ -0,0 +1,24 @@
+package de.bytewright.sticker_classifier.adapter.web;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/** Progress page of the running session, updated by server-sent events */
+@Controller
+@RequiredArgsConstructor
+public class DashboardController {
+  private final ProgressBroadcaster progressBroadcaster;
+
+  @GetMapping("/")
+  public String dashboard() {
+    return "dashboard";
+  }
+
+  @GetMapping(path = "/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter progress() {
+    return progressBroadcaster.subscribe();
+  }
+}
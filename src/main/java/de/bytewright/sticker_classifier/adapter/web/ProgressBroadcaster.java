@@ -0,0 +1,191 @@
+package de.bytewright.sticker_classifier.adapter.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bytewright.sticker_classifier.domain.event.ClassificationSessionStartedEvent;
+import de.bytewright.sticker_classifier.domain.llm.*;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import de.bytewright.sticker_classifier.domain.session.ProcessingState;
+import de.bytewright.sticker_classifier.domain.session.SessionProgress;
+import de.bytewright.sticker_classifier.domain.storage.SessionStorage;
+import de.bytewright.sticker_classifier.orchestration.StatsPromptResultConsumer;
+import de.bytewright.sticker_classifier.orchestration.llm.PromptRequestCoordinator;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes a {@link ProgressSnapshot} to all dashboard subscribers once per second. Results only
+ * append to two small bounded buffers, the snapshot is aggregated and serialized once per tick on
+ * the broadcaster thread, so the dashboard costs nothing per result beyond that.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProgressBroadcaster implements PromptResultConsumer {
+  private static final Duration TICK = Duration.ofSeconds(1);
+  private static final int SAMPLE_SIZE = 20;
+
+  private final SessionStorage sessionStorage;
+  private final StatsPromptResultConsumer statsPromptResultConsumer;
+  private final PromptRequestCoordinator coordinator;
+  private final ObjectMapper objectMapper;
+  private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+  private final Deque<ProgressSnapshot.RecentClassification> recentClassifications =
+      new ArrayDeque<>(SAMPLE_SIZE);
+  private final Deque<ProgressSnapshot.ErrorSample> errorSamples = new ArrayDeque<>(SAMPLE_SIZE);
+  private volatile UUID activeSessionId;
+  private ScheduledExecutorService scheduler;
+
+  @Override
+  public int consumerPriority() {
+    // Must see results before the ClassificationResultProcessor consumes them
+    return 1;
+  }
+
+  @Override
+  public boolean processPromtResult(PromptType promtType, PromptResult promptResult) {
+    switch (promptResult) {
+      case ClassificationPromptResult classification -> {
+        ClassificationResult result = classification.getClassificationResult();
+        if (result != null) {
+          addSample(
+              recentClassifications,
+              new ProgressSnapshot.RecentClassification(
+                  Instant.now(),
+                  fileName(classification.getPromptRequestWithImage().imagePath()),
+                  Set.copyOf(result.getDetectedTags()),
+                  result.getEmoji(),
+                  result.getKeyword()));
+        }
+      }
+      case ErrorPromptResult error ->
+          addSample(
+              errorSamples,
+              new ProgressSnapshot.ErrorSample(
+                  Instant.now(),
+                  fileName(imagePathOf(error.request())),
+                  "gave up after retries"));
+      case StringPromptResult ignored -> {}
+    }
+    return false;
+  }
+
+  @EventListener
+  public void handleSessionStarted(ClassificationSessionStartedEvent event) {
+    activeSessionId = event.sessionId();
+  }
+
+  /** Registers a new dashboard client, it receives the current snapshot right away */
+  public synchronized SseEmitter subscribe() {
+    SseEmitter emitter = new SseEmitter(0L);
+    emitter.onCompletion(() -> emitters.remove(emitter));
+    emitter.onTimeout(() -> emitters.remove(emitter));
+    emitter.onError(e -> emitters.remove(emitter));
+    emitters.add(emitter);
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor();
+      scheduler.scheduleAtFixedRate(this::broadcast, 0, TICK.toMillis(), TimeUnit.MILLISECONDS);
+    } else {
+      scheduler.execute(this::broadcast);
+    }
+    return emitter;
+  }
+
+  @EventListener(ContextClosedEvent.class)
+  public synchronized void shutdown() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+    emitters.forEach(SseEmitter::complete);
+    emitters.clear();
+  }
+
+  private void broadcast() {
+    if (emitters.isEmpty()) {
+      return;
+    }
+    String json;
+    try {
+      json = objectMapper.writeValueAsString(snapshot());
+    } catch (JsonProcessingException | RuntimeException e) {
+      log.warn("Could not build progress snapshot", e);
+      return;
+    }
+    for (SseEmitter emitter : emitters) {
+      try {
+        emitter.send(SseEmitter.event().name("progress").data(json));
+      } catch (IOException | IllegalStateException e) {
+        log.debug("Dropping disconnected dashboard client", e);
+        emitters.remove(emitter);
+      }
+    }
+  }
+
+  ProgressSnapshot snapshot() {
+    UUID sessionId = activeSessionId;
+    SessionProgress progress =
+        sessionId == null
+            ? new SessionProgress(ProcessingState.IDLE, 0, 0, 0)
+            : sessionStorage.getProgress(sessionId);
+    Duration eta = statsPromptResultConsumer.calculateETA();
+    return new ProgressSnapshot(
+        Instant.now(),
+        sessionId,
+        progress.state(),
+        progress.requestCount(),
+        progress.resultCount(),
+        progress.failedCount(),
+        coordinator.getQueueSize(),
+        coordinator.getInFlightCount(),
+        statsPromptResultConsumer.getCurrentThroughput(),
+        statsPromptResultConsumer.getErrorRate(5),
+        eta == null ? null : eta.toSeconds(),
+        samplesOf(recentClassifications),
+        samplesOf(errorSamples));
+  }
+
+  private static <T> void addSample(Deque<T> samples, T sample) {
+    synchronized (samples) {
+      if (samples.size() == SAMPLE_SIZE) {
+        samples.removeLast();
+      }
+      samples.addFirst(sample);
+    }
+  }
+
+  private static <T> List<T> samplesOf(Deque<T> samples) {
+    synchronized (samples) {
+      return new ArrayList<>(samples);
+    }
+  }
+
+  private static Path imagePathOf(PromptRequest request) {
+    return switch (request) {
+      case PromptRequestWithImage withImage -> withImage.imagePath();
+      case PromptRetry retry -> imagePathOf(retry.delegate());
+      case PromptRequestUnstructured unstructured -> null;
+    };
+  }
+
+  private static String fileName(Path path) {
+    return path == null || path.getFileName() == null ? "-" : path.getFileName().toString();
+  }
+}
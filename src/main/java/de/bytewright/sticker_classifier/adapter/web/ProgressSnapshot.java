@@ -0,0 +1,29 @@
+package de.bytewright.sticker_classifier.adapter.web;
+
+import de.bytewright.sticker_classifier.domain.session.ProcessingState;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/** Everything the dashboard shows, built once per tick and sent to all subscribers */
+record ProgressSnapshot(
+    Instant timestamp,
+    UUID sessionId,
+    ProcessingState state,
+    long requested,
+    long classified,
+    long failed,
+    int queued,
+    int inFlight,
+    double throughputPerMinute,
+    double errorRate,
+    Long etaSeconds,
+    List<RecentClassification> recentClassifications,
+    List<ErrorSample> errorSamples) {
+
+  record RecentClassification(
+      Instant timestamp, String fileName, Set<String> tags, String emoji, String keyword) {}
+
+  record ErrorSample(Instant timestamp, String fileName, String reason) {}
+}
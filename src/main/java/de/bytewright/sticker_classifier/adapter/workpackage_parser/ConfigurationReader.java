@@ -18,14 +18,25 @@ import java.util.List;
 import java.util.Set;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+/**
+ * Loads {@code line-sticker.yaml} from the working directory once the context is up and starts a
+ * session with it. Set {@code app.adapter.workpackage.loadOnStartup=false} to start the context
+ * without a session, e.g. when sessions are started by publishing the event directly.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
+@ConditionalOnProperty(
+    prefix = "app.adapter.workpackage",
+    name = "loadOnStartup",
+    havingValue = "true",
+    matchIfMissing = true)
 public class ConfigurationReader implements ConfigParser {
 
   private final ApplicationEventPublisher eventPublisher;
@@ -38,6 +49,10 @@ public class ConfigurationReader implements ConfigParser {
 
   public void loadAndPublishConfiguration(String configPath) {
     ConfigurationLoadedEvent event = loadConfiguration(Path.of(configPath));
+    if (event == null) {
+      log.warn("No configuration found, no session is started");
+      return;
+    }
     eventPublisher.publishEvent(event);
   }
 
@@ -1,5 +1,8 @@
 package de.bytewright.sticker_classifier.domain;
 
+import de.bytewright.sticker_classifier.domain.llm.PromptFailure;
+import java.util.EnumMap;
+import java.util.Map;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -15,6 +18,8 @@ import org.springframework.context.annotation.Configuration;
 public class AppOrchestrationConfig {
   private ClassificationConfig classification;
   private PromptConfig prompts;
+  private WatchConfig watch = new WatchConfig();
+  private OutputConfig output = new OutputConfig();
 
   @Getter
   @Setter(AccessLevel.PACKAGE)
@@ -28,5 +33,61 @@ public class AppOrchestrationConfig {
   public static class PromptConfig {
     private int workerCount;
     private int threadCount;
+    /** Results buffered per consumer before workers have to wait for room */
+    private int resultQueueSize = 1024;
+    /** Time running prompts get to finish on shutdown before their workers are interrupted */
+    private long shutdownTimeoutSeconds = 300;
+    private RetryConfig retry = new RetryConfig();
+  }
+
+  @Getter
+  @Setter(AccessLevel.PACKAGE)
+  public static class RetryConfig {
+    /** Attempts after the first one before a request is moved to the error directory */
+    private int maxRetries = 3;
+    /** Overrides maxRetries for single kinds of failure */
+    private Map<PromptFailure, Integer> maxRetriesByFailure = new EnumMap<>(PromptFailure.class);
+    /** Delay before the first retry, doubled by the multiplier for every further one */
+    private long initialBackoffMillis = 1_000;
+    private long maxBackoffMillis = 60_000;
+    private double backoffMultiplier = 2;
+    /** Share of the delay that is random, spreads out requests that failed together */
+    private double jitter = 0.5;
+  }
+
+  @Getter
+  @Setter(AccessLevel.PACKAGE)
+  public static class WatchConfig {
+    /** Keep watching the work directory after the initial run and classify new files */
+    private boolean enabled;
+    /** Quiet period after the last event of a file before it is ingested */
+    private long debounceMillis = 2000;
+    /** Full rescan of the work directory to catch events lost by the watch service */
+    private long reconciliationIntervalSeconds = 300;
+  }
+
+  @Getter
+  @Setter(AccessLevel.PACKAGE)
+  public static class OutputConfig {
+    /** Threads writing classified files into the result tree */
+    private int threadCount = 2;
+    /** Pending output jobs before prompt workers have to write files themselves */
+    private int queueSize = 256;
+    /** How a classified file is placed into each of its category directories */
+    private Mode mode = Mode.COPY;
+
+    public enum Mode {
+      /** Independent byte copy per category */
+      COPY,
+      /**
+       * Hard links to one inode, a copy is made when crossing filesystems. The placements share
+       * the inode with the file moved to {@code _processed}, editing one of them edits all.
+       */
+      HARDLINK,
+      /** Symbolic links to the processed original */
+      SYMLINK,
+      /** Copy-on-write clones via cp, needs btrfs, XFS, APFS or similar */
+      REFLINK
+    }
   }
 }
@@ -0,0 +1,16 @@
+package de.bytewright.sticker_classifier.domain;
+
+/**
+ * {@link org.springframework.context.SmartLifecycle} phases of the pipeline. Higher phases stop
+ * first, so each stage is drained before the stage it feeds is stopped: the work directory watcher,
+ * the prompt workers and their result dispatcher, then the output stage, then the session journal.
+ */
+public final class ShutdownPhase {
+  public static final int WATCHER = 4000;
+  public static final int WORKERS = 3000;
+  public static final int OUTPUT = 2000;
+  public static final int METRICS = 1500;
+  public static final int JOURNAL = 1000;
+
+  private ShutdownPhase() {}
+}
@@ -0,0 +1,7 @@
+package de.bytewright.sticker_classifier.domain.event;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+/** Published once the initial discovery of a session has scheduled all its files */
+public record ClassificationSessionStartedEvent(UUID sessionId, Path workDirectory) {}
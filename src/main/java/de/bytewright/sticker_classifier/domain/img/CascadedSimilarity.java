@@ -0,0 +1,46 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import de.bytewright.sticker_classifier.domain.img.StickerDeduplicationBySimilarityService.Config;
+
+/**
+ * Two stage comparison of {@link StickerSignature}s. The dHash is checked first and prunes most
+ * pairs with a single bit count, only survivors pay for the pHash, which is calculated on first
+ * use, and the colour comparison. The resulting distances are fused by the weights of the {@link
+ * Config}, so {@link Config#getSimilarityThreshold()} is a threshold on the fused distance.
+ */
+final class CascadedSimilarity {
+  private final double prefilterThreshold;
+  private final double perceptualHashWeight;
+  private final double differenceHashWeight;
+  private final double colorWeight;
+
+  CascadedSimilarity(Config config) {
+    double weightSum =
+        config.getPerceptualHashWeight()
+            + config.getDifferenceHashWeight()
+            + config.getColorWeight();
+    if (weightSum <= 0) {
+      throw new IllegalArgumentException("At least one similarity weight must be positive");
+    }
+    this.prefilterThreshold = config.getPrefilterThreshold();
+    this.perceptualHashWeight = config.getPerceptualHashWeight() / weightSum;
+    this.differenceHashWeight = config.getDifferenceHashWeight() / weightSum;
+    this.colorWeight = config.getColorWeight() / weightSum;
+  }
+
+  /** Max number of differing dHash bits for a pair to pass the pre-filter */
+  int prefilterRadius() {
+    return (int) Math.floor(prefilterThreshold * 64);
+  }
+
+  boolean passesPrefilter(StickerSignature a, StickerSignature b) {
+    return a.differenceHashDistance(b) <= prefilterThreshold;
+  }
+
+  /** Weighted distance in [0, 1], 0 means identical */
+  double fusedDistance(StickerSignature a, StickerSignature b) {
+    return perceptualHashWeight * a.perceptualHashDistance(b)
+        + differenceHashWeight * a.differenceHashDistance(b)
+        + colorWeight * a.colorDistance(b);
+  }
+}
@@ -2,14 +2,26 @@ package de.bytewright.sticker_classifier.domain.img;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 /**
  * Utility class to detect and convert Apple CgBI PNG images to standard PNGs. CgBI PNGs have BGR
  * color order instead of RGB, causing color channel issues.
+ *
+ * <p>Conversion is streaming: chunks are read one after another from a channel, the IDAT payload
+ * is fed into a single {@link Inflater}, unfiltered, swapped and unpremultiplied row by row and
+ * recompressed through a {@link Deflater} directly into the output channel. Apart from fixed size
+ * buffers only the current and the previous scanline are held in memory.
  */
 public class CgBIPNGConverter {
 
@@ -19,6 +31,11 @@ public class CgBIPNGConverter {
 
   private static final byte[] CGBI_CHUNK = {0x43, 0x67, 0x42, 0x49}; // "CgBI"
 
+  /** Number of leading bytes needed to detect the CgBI format */
+  public static final int HEADER_SIZE = 32;
+  private static final int READ_BUFFER_SIZE = 16 * 1024;
+  private static final int IDAT_CHUNK_SIZE = 64 * 1024;
+
   /** Detects if PNG byte array is in Apple's CgBI format */
   public static boolean isCgBIPNG(byte[] imageData) throws IOException {
     return isCgBIPNG(new ByteArrayInputStream(imageData));
@@ -26,10 +43,27 @@ public class CgBIPNGConverter {
 
   /** Detects if PNG input stream is in Apple's CgBI format */
   public static boolean isCgBIPNG(InputStream is) throws IOException {
-    byte[] header = new byte[32];
-    int bytesRead = is.read(header);
+    byte[] header = is.readNBytes(HEADER_SIZE);
+    return isCgBIHeader(header, header.length);
+  }
+
+  /**
+   * Detects if a PNG file is in Apple's CgBI format by reading only its first bytes.
+   *
+   * @param headerBuffer heap buffer of at least {@link #HEADER_SIZE} bytes, reused by the caller
+   */
+  public static boolean isCgBIPNG(Path file, ByteBuffer headerBuffer) throws IOException {
+    headerBuffer.clear().limit(HEADER_SIZE);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      while (headerBuffer.hasRemaining() && channel.read(headerBuffer) >= 0) {
+        // keep reading until the header is complete or the file ends
+      }
+    }
+    return isCgBIHeader(headerBuffer.array(), headerBuffer.position());
+  }
 
-    if (bytesRead < 32) {
+  private static boolean isCgBIHeader(byte[] header, int bytesRead) {
+    if (bytesRead < HEADER_SIZE) {
       return false;
     }
 
@@ -41,7 +75,7 @@ public class CgBIPNGConverter {
     }
 
     // Look for CgBI chunk (usually right after PNG signature)
-    for (int i = 8; i < header.length - 4; i++) {
+    for (int i = 8; i < HEADER_SIZE - 4; i++) {
       if (header[i] == CGBI_CHUNK[0]
           && header[i + 1] == CGBI_CHUNK[1]
           && header[i + 2] == CGBI_CHUNK[2]
@@ -53,233 +87,204 @@ public class CgBIPNGConverter {
     return false;
   }
 
-  /** Converts CgBI PNG byte array to standard PNG by chunk manipulation */
+  /** Converts CgBI PNG byte array to standard PNG */
   public static byte[] convertCgBIToStandardPNG(byte[] imageData) throws IOException {
-    ByteArrayOutputStream output = new ByteArrayOutputStream();
-
-    // Write PNG signature
-    output.write(PNG_SIGNATURE);
-
-    ByteBuffer buffer = ByteBuffer.wrap(imageData);
-    buffer.order(ByteOrder.BIG_ENDIAN);
-
-    // Skip original signature
-    buffer.position(8);
-
-    byte[] idatData = null;
-    int width = 0, height = 0;
-    byte bitDepth = 0, colorType = 0;
-
-    // Read and process chunks
-    label:
-    while (buffer.remaining() >= 12) {
-      int length = buffer.getInt();
-      byte[] type = new byte[4];
-      buffer.get(type);
-      String chunkType = new String(type);
-
-      byte[] data = new byte[length];
-      buffer.get(data);
-      int crc = buffer.getInt();
+    ByteArrayOutputStream output = new ByteArrayOutputStream(imageData.length);
+    convertCgBIToStandardPNG(
+        Channels.newChannel(new ByteArrayInputStream(imageData)), Channels.newChannel(output));
+    return output.toByteArray();
+  }
 
-      switch (chunkType) {
-        case "CgBI":
-          // Skip CgBI chunk entirely
-          continue;
-        case "IHDR":
-          // Parse IHDR
-          ByteBuffer ihdr = ByteBuffer.wrap(data);
-          ihdr.order(ByteOrder.BIG_ENDIAN);
-          width = ihdr.getInt();
-          height = ihdr.getInt();
-          bitDepth = ihdr.get();
-          colorType = ihdr.get();
-
-          // Write corrected IHDR
-          writeChunk(output, "IHDR", data);
-          break;
-        case "IDAT":
-          // Collect IDAT data for later processing
-          if (idatData == null) {
-            idatData = data;
-          } else {
-            // Concatenate multiple IDAT chunks
-            byte[] combined = new byte[idatData.length + data.length];
-            System.arraycopy(idatData, 0, combined, 0, idatData.length);
-            System.arraycopy(data, 0, combined, idatData.length, data.length);
-            idatData = combined;
-          }
-          break;
-        case "IEND":
-          // Process and write IDAT before IEND
-          if (idatData != null) {
-            byte[] correctedIDAT = swapBGRtoRGB(idatData, width, height, colorType, bitDepth);
-            writeChunk(output, "IDAT", correctedIDAT);
-          }
-          // Write IEND
-          writeChunk(output, "IEND", new byte[0]);
-          break label;
-        default:
-          // Copy other chunks as-is
-          writeChunk(output, chunkType, data);
-          break;
-      }
+  /**
+   * Converts a CgBI PNG file to a standard PNG file. The files are accessed through plain channel
+   * reads instead of memory mapping, so the source can be deleted or replaced right afterwards
+   * (mapped files stay locked on Windows until the mapping is garbage collected).
+   *
+   * @param source CgBI PNG to read
+   * @param target file to write, created or truncated; must not be the same file as {@code source}
+   */
+  public static void convertCgBIToStandardPNG(Path source, Path target) throws IOException {
+    try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+        FileChannel out =
+            FileChannel.open(
+                target,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+      convertCgBIToStandardPNG(in, out);
     }
-
-    return output.toByteArray();
   }
 
-  /** Swap BGR to RGB in decompressed image data */
-  private static byte[] swapBGRtoRGB(
-      byte[] compressedData, int width, int height, byte colorType, byte bitDepth)
+  /** Converts a CgBI PNG read from {@code in} to a standard PNG written to {@code out} */
+  public static void convertCgBIToStandardPNG(ReadableByteChannel in, WritableByteChannel out)
       throws IOException {
-    // CgBI PNGs use raw deflate without zlib wrapper
-    // We need to use Inflater with nowrap=true
-    Inflater inflater = new Inflater(true); // true = nowrap mode (raw deflate)
-    inflater.setInput(compressedData);
-    ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+    ByteBuffer chunkHeader = ByteBuffer.allocate(8);
+    if (!readFully(in, chunkHeader)) {
+      throw new EOFException("Missing PNG signature");
+    }
+    writeFully(out, ByteBuffer.wrap(PNG_SIGNATURE));
 
-    byte[] buffer = new byte[1024];
+    byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    ImageHeader imageHeader = null;
+    IdatTranscoder transcoder = null;
+    boolean idatDone = false;
     try {
-      while (!inflater.finished()) {
-        int count = inflater.inflate(buffer);
-        if (count == 0) {
-          // Check if we need more input or if we're done
-          if (inflater.needsInput()) {
-            break;
-          }
+      while (true) {
+        chunkHeader.clear();
+        if (!readFully(in, chunkHeader)) {
+          throw new EOFException("Missing IEND chunk");
+        }
+        int length = chunkHeader.getInt(0);
+        String chunkType = new String(chunkHeader.array(), 4, 4, StandardCharsets.US_ASCII);
+        if (length < 0) {
+          throw new IOException("Invalid length %d of chunk %s".formatted(length, chunkType));
         }
-        decompressed.write(buffer, 0, count);
-      }
-    } catch (Exception e) {
-      throw new IOException("Failed to decompress image data: " + e.getMessage(), e);
-    } finally {
-      inflater.end();
-    }
 
-    byte[] rawData = decompressed.toByteArray();
-
-    // Unfilter the PNG data before processing
-    rawData = unfilterPNG(rawData, width, height, colorType);
-
-    // Swap BGR to RGB and handle premultiplied alpha (for RGBA/RGB images)
-    if (colorType == 6 || colorType == 2) { // RGBA or RGB
-      int bytesPerPixel = (colorType == 6) ? 4 : 3;
-      int stride = width * bytesPerPixel;
-
-      for (int y = 0; y < height; y++) {
-        int rowStart = y * stride;
-        for (int x = 0; x < width; x++) {
-          int pixelStart = rowStart + x * bytesPerPixel;
-          if (pixelStart + 2 < rawData.length) {
-            // Swap R and B (BGR -> RGB)
-            byte temp = rawData[pixelStart];
-            rawData[pixelStart] = rawData[pixelStart + 2];
-            rawData[pixelStart + 2] = temp;
-
-            // If RGBA, unpremultiply alpha
-            if (colorType == 6 && pixelStart + 3 < rawData.length) {
-              int alpha = rawData[pixelStart + 3] & 0xFF;
-              if (alpha > 0 && alpha < 255) {
-                for (int c = 0; c < 3; c++) {
-                  int value = rawData[pixelStart + c] & 0xFF;
-                  int unpremultiplied = (value * 255) / alpha;
-                  rawData[pixelStart + c] = (byte) Math.min(255, unpremultiplied);
-                }
-              }
+        if (chunkType.equals("IDAT")) {
+          if (idatDone) {
+            throw new IOException("IDAT chunks are not consecutive");
+          }
+          if (transcoder == null) {
+            if (imageHeader == null) {
+              throw new IOException("IDAT chunk before IHDR");
             }
+            transcoder = new IdatTranscoder(imageHeader, out);
           }
+          transcoder.consume(in, length, readBuffer);
+          skip(in, 4, readBuffer); // CRC of the original, compressed data
+          continue;
+        }
+        if (transcoder != null) {
+          // First chunk after the IDAT run: flush all recompressed image data
+          transcoder.finish();
+          transcoder.end();
+          transcoder = null;
+          idatDone = true;
         }
-      }
-    }
-
-    // Re-add filter bytes (using filter type 0 = None for simplicity)
-    rawData = addFilterBytes(rawData, width, height, colorType);
-
-    // Recompress with zlib format (standard PNG)
-    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
-    java.util.zip.Deflater deflater = new java.util.zip.Deflater();
-    deflater.setInput(rawData);
-    deflater.finish();
 
-    byte[] buf = new byte[1024];
-    while (!deflater.finished()) {
-      int count = deflater.deflate(buf);
-      compressed.write(buf, 0, count);
+        switch (chunkType) {
+          case "CgBI":
+            // Skip CgBI chunk entirely
+            skip(in, length + 4L, readBuffer);
+            break;
+          case "IHDR":
+            byte[] data = new byte[length];
+            readExactly(in, ByteBuffer.wrap(data));
+            skip(in, 4, readBuffer);
+            imageHeader = ImageHeader.parse(data);
+            writeChunk(out, "IHDR", data, data.length);
+            break;
+          case "IEND":
+            writeChunk(out, "IEND", new byte[0], 0);
+            return;
+          default:
+            // Copy other chunks as-is, including their CRC
+            chunkHeader.flip();
+            writeFully(out, chunkHeader);
+            copy(in, length + 4L, out, readBuffer);
+            break;
+        }
+      }
+    } finally {
+      if (transcoder != null) {
+        transcoder.end();
+      }
     }
-    deflater.end();
-
-    return compressed.toByteArray();
   }
 
   /** Write a PNG chunk with proper CRC */
-  private static void writeChunk(OutputStream out, String type, byte[] data) throws IOException {
-    ByteBuffer lengthBuf = ByteBuffer.allocate(4);
-    lengthBuf.order(ByteOrder.BIG_ENDIAN);
-    lengthBuf.putInt(data.length);
-    out.write(lengthBuf.array());
-
-    byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
-    out.write(typeBytes);
-    out.write(data);
+  private static void writeChunk(WritableByteChannel out, String type, byte[] data, int length)
+      throws IOException {
+    byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    ByteBuffer header = ByteBuffer.allocate(8);
+    header.putInt(length).put(typeBytes).flip();
+    writeFully(out, header);
+    writeFully(out, ByteBuffer.wrap(data, 0, length));
 
-    // Calculate CRC
     CRC32 crc = new CRC32();
     crc.update(typeBytes);
-    crc.update(data);
+    crc.update(data, 0, length);
     ByteBuffer crcBuf = ByteBuffer.allocate(4);
-    crcBuf.order(ByteOrder.BIG_ENDIAN);
-    crcBuf.putInt((int) crc.getValue());
-    out.write(crcBuf.array());
+    crcBuf.putInt((int) crc.getValue()).flip();
+    writeFully(out, crcBuf);
   }
 
-  /** Unfilter PNG scan lines */
-  private static byte[] unfilterPNG(byte[] data, int width, int height, byte colorType) {
-    int bytesPerPixel = (colorType == 6) ? 4 : (colorType == 2) ? 3 : 1;
-    int stride = width * bytesPerPixel + 1; // +1 for filter byte
-    byte[] unfiltered = new byte[height * width * bytesPerPixel];
-
-    for (int y = 0; y < height; y++) {
-      int filterType = data[y * stride] & 0xFF;
-      int rowStart = y * stride + 1;
-      int unfilteredRowStart = y * width * bytesPerPixel;
-
-      for (int x = 0; x < width * bytesPerPixel; x++) {
-        int raw = data[rowStart + x] & 0xFF;
-        int left =
-            (x >= bytesPerPixel) ? (unfiltered[unfilteredRowStart + x - bytesPerPixel] & 0xFF) : 0;
-        int up = (y > 0) ? (unfiltered[(y - 1) * width * bytesPerPixel + x] & 0xFF) : 0;
-        int upLeft =
-            (y > 0 && x >= bytesPerPixel)
-                ? (unfiltered[(y - 1) * width * bytesPerPixel + x - bytesPerPixel] & 0xFF)
-                : 0;
-
-        int reconstructed;
-        switch (filterType) {
-          case 0: // None
-            reconstructed = raw;
-            break;
-          case 1: // Sub
-            reconstructed = (raw + left) & 0xFF;
-            break;
-          case 2: // Up
-            reconstructed = (raw + up) & 0xFF;
-            break;
-          case 3: // Average
-            reconstructed = (raw + ((left + up) / 2)) & 0xFF;
-            break;
-          case 4: // Paeth
-            reconstructed = (raw + paethPredictor(left, up, upLeft)) & 0xFF;
-            break;
-          default:
-            reconstructed = raw;
-            break;
+  /**
+   * Fills the buffer completely.
+   *
+   * @return false if the channel was already at its end
+   * @throws EOFException if the channel ended after only part of the buffer was filled
+   */
+  private static boolean readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+    boolean readAny = false;
+    while (buffer.hasRemaining()) {
+      if (in.read(buffer) < 0) {
+        if (!readAny) {
+          return false;
         }
-        unfiltered[unfilteredRowStart + x] = (byte) reconstructed;
+        throw new EOFException("Unexpected end of PNG data");
+      }
+      readAny = true;
+    }
+    return true;
+  }
+
+  private static void readExactly(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+    if (!readFully(in, buffer)) {
+      throw new EOFException("Unexpected end of PNG data");
+    }
+  }
+
+  private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+
+  private static void skip(ReadableByteChannel in, long count, byte[] scratch)
+      throws IOException {
+    if (in instanceof FileChannel fileChannel) {
+      long target = fileChannel.position() + count;
+      if (target > fileChannel.size()) {
+        throw new EOFException("Unexpected end of PNG data");
       }
+      fileChannel.position(target);
+      return;
+    }
+    long remaining = count;
+    while (remaining > 0) {
+      int length = (int) Math.min(remaining, scratch.length);
+      readExactly(in, ByteBuffer.wrap(scratch, 0, length));
+      remaining -= length;
     }
+  }
 
-    return unfiltered;
+  /** Copies {@code count} bytes, file channels transfer without passing through the heap */
+  private static void copy(
+      ReadableByteChannel in, long count, WritableByteChannel out, byte[] scratch)
+      throws IOException {
+    if (in instanceof FileChannel fileChannel) {
+      long position = fileChannel.position();
+      long done = 0;
+      while (done < count) {
+        long transferred = fileChannel.transferTo(position + done, count - done, out);
+        if (transferred <= 0 && position + done >= fileChannel.size()) {
+          throw new EOFException("Unexpected end of PNG data");
+        }
+        done += transferred;
+      }
+      fileChannel.position(position + count);
+      return;
+    }
+    long remaining = count;
+    while (remaining > 0) {
+      int length = (int) Math.min(remaining, scratch.length);
+      ByteBuffer buffer = ByteBuffer.wrap(scratch, 0, length);
+      readExactly(in, buffer);
+      buffer.flip();
+      writeFully(out, buffer);
+      remaining -= length;
+    }
   }
 
   /** Paeth predictor for PNG filtering */
@@ -298,18 +303,198 @@ public class CgBIPNGConverter {
     }
   }
 
-  /** Add filter bytes back to unfiltered data (using filter type 0 = None) */
-  private static byte[] addFilterBytes(byte[] unfiltered, int width, int height, byte colorType) {
-    int bytesPerPixel = (colorType == 6) ? 4 : (colorType == 2) ? 3 : 1;
-    int stride = width * bytesPerPixel + 1;
-    byte[] filtered = new byte[height * stride];
+  private record ImageHeader(
+      int width, int height, int bitDepth, int colorType, int rowBytes, int bytesPerPixel) {
 
-    for (int y = 0; y < height; y++) {
-      filtered[y * stride] = 0; // Filter type 0 (None)
-      System.arraycopy(
-          unfiltered, y * width * bytesPerPixel, filtered, y * stride + 1, width * bytesPerPixel);
+    static ImageHeader parse(byte[] data) throws IOException {
+      if (data.length < 13) {
+        throw new IOException("IHDR chunk too short: " + data.length);
+      }
+      ByteBuffer ihdr = ByteBuffer.wrap(data);
+      int width = ihdr.getInt();
+      int height = ihdr.getInt();
+      int bitDepth = ihdr.get() & 0xFF;
+      int colorType = ihdr.get() & 0xFF;
+      int interlace = data[12] & 0xFF;
+      if (interlace != 0) {
+        throw new IOException("Interlaced CgBI images are not supported");
+      }
+      int channels =
+          switch (colorType) {
+            case 2 -> 3;
+            case 4 -> 2;
+            case 6 -> 4;
+            default -> 1;
+          };
+      long bitsPerPixel = (long) channels * bitDepth;
+      long rowBytes = ((long) width * bitsPerPixel + 7) / 8;
+      if (width <= 0 || height <= 0 || rowBytes >= Integer.MAX_VALUE) {
+        throw new IOException("Invalid image size %dx%d".formatted(width, height));
+      }
+      int bytesPerPixel = (int) Math.max(1, bitsPerPixel / 8);
+      return new ImageHeader(width, height, bitDepth, colorType, (int) rowBytes, bytesPerPixel);
+    }
+  }
+
+  /**
+   * Turns the raw deflate CgBI image data into zlib compressed, unfiltered RGB(A) scanlines and
+   * writes them as IDAT chunks of at most {@link #IDAT_CHUNK_SIZE} bytes.
+   */
+  private static final class IdatTranscoder {
+    private final ImageHeader header;
+    private final WritableByteChannel out;
+    // CgBI PNGs use raw deflate without zlib wrapper, hence nowrap
+    private final Inflater inflater = new Inflater(true);
+    private final Deflater deflater = new Deflater();
+    private final boolean swapChannels;
+    // Index 0 holds the filter byte, the previous row keeps its unfiltered BGR values
+    private byte[] currentRow;
+    private byte[] previousRow;
+    private final byte[] outputRow;
+    private final byte[] idatBuffer = new byte[IDAT_CHUNK_SIZE];
+    private int rowFill;
+    private int rowsDone;
+    private int idatFill;
+
+    IdatTranscoder(ImageHeader header, WritableByteChannel out) {
+      this.header = header;
+      this.out = out;
+      this.swapChannels =
+          header.bitDepth() == 8 && (header.colorType() == 6 || header.colorType() == 2);
+      this.currentRow = new byte[header.rowBytes() + 1];
+      this.previousRow = new byte[header.rowBytes() + 1];
+      this.outputRow = new byte[header.rowBytes() + 1];
+    }
+
+    void consume(ReadableByteChannel in, int length, byte[] readBuffer) throws IOException {
+      int remaining = length;
+      while (remaining > 0) {
+        int count = Math.min(remaining, readBuffer.length);
+        readExactly(in, ByteBuffer.wrap(readBuffer, 0, count));
+        remaining -= count;
+        if (inflater.finished() || rowsDone == header.height()) {
+          continue; // trailing data after the image, ignore like the decoder would
+        }
+        inflater.setInput(readBuffer, 0, count);
+        inflateAvailable();
+      }
     }
 
-    return filtered;
+    private void inflateAvailable() throws IOException {
+      try {
+        while (rowsDone < header.height() && !inflater.finished()) {
+          int inflated = inflater.inflate(currentRow, rowFill, currentRow.length - rowFill);
+          if (inflated == 0) {
+            if (inflater.needsDictionary()) {
+              throw new IOException("Image data requires a preset dictionary");
+            }
+            if (inflater.needsInput() || inflater.finished()) {
+              return;
+            }
+          }
+          rowFill += inflated;
+          if (rowFill == currentRow.length) {
+            emitRow();
+            rowFill = 0;
+          }
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("Failed to decompress image data: " + e.getMessage(), e);
+      }
+    }
+
+    private void emitRow() throws IOException {
+      unfilter();
+      outputRow[0] = 0; // Filter type 0 (None)
+      System.arraycopy(currentRow, 1, outputRow, 1, header.rowBytes());
+      if (swapChannels) {
+        swapAndUnpremultiply(outputRow);
+      }
+      deflater.setInput(outputRow);
+      while (!deflater.needsInput()) {
+        deflate();
+      }
+      byte[] done = previousRow;
+      previousRow = currentRow;
+      currentRow = done;
+      rowsDone++;
+    }
+
+    /** Unfilter the current scanline in place, using the already unfiltered previous one */
+    private void unfilter() {
+      int filterType = currentRow[0] & 0xFF;
+      int bpp = header.bytesPerPixel();
+      boolean firstRow = rowsDone == 0;
+      for (int x = 1; x <= header.rowBytes(); x++) {
+        int raw = currentRow[x] & 0xFF;
+        int left = x > bpp ? currentRow[x - bpp] & 0xFF : 0;
+        int up = firstRow ? 0 : previousRow[x] & 0xFF;
+        int upLeft = !firstRow && x > bpp ? previousRow[x - bpp] & 0xFF : 0;
+        int reconstructed =
+            switch (filterType) {
+              case 1 -> raw + left; // Sub
+              case 2 -> raw + up; // Up
+              case 3 -> raw + ((left + up) / 2); // Average
+              case 4 -> raw + paethPredictor(left, up, upLeft); // Paeth
+              default -> raw; // None
+            };
+        currentRow[x] = (byte) reconstructed;
+      }
+    }
+
+    /** Swap BGR to RGB and, for RGBA, undo the premultiplied alpha */
+    private void swapAndUnpremultiply(byte[] row) {
+      int bytesPerPixel = header.colorType() == 6 ? 4 : 3;
+      for (int pixelStart = 1;
+          pixelStart + bytesPerPixel <= row.length;
+          pixelStart += bytesPerPixel) {
+        byte temp = row[pixelStart];
+        row[pixelStart] = row[pixelStart + 2];
+        row[pixelStart + 2] = temp;
+
+        if (bytesPerPixel == 4) {
+          int alpha = row[pixelStart + 3] & 0xFF;
+          if (alpha > 0 && alpha < 255) {
+            for (int c = 0; c < 3; c++) {
+              int value = row[pixelStart + c] & 0xFF;
+              int unpremultiplied = (value * 255) / alpha;
+              row[pixelStart + c] = (byte) Math.min(255, unpremultiplied);
+            }
+          }
+        }
+      }
+    }
+
+    private void deflate() throws IOException {
+      idatFill += deflater.deflate(idatBuffer, idatFill, idatBuffer.length - idatFill);
+      if (idatFill == idatBuffer.length) {
+        flushIdat();
+      }
+    }
+
+    private void flushIdat() throws IOException {
+      if (idatFill > 0) {
+        writeChunk(out, "IDAT", idatBuffer, idatFill);
+        idatFill = 0;
+      }
+    }
+
+    /** Completes the compressed stream and writes the last IDAT chunk */
+    void finish() throws IOException {
+      if (rowsDone < header.height()) {
+        throw new EOFException(
+            "Image data ended after %d of %d rows".formatted(rowsDone, header.height()));
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        deflate();
+      }
+      flushIdat();
+    }
+
+    void end() {
+      inflater.end();
+      deflater.end();
+    }
   }
 }
@@ -0,0 +1,102 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Burkhard-Keller tree over fixed width bit hashes using the hamming distance as metric. Nodes are
+ * addressed by their insertion index and stored in primitive arrays, each element costs its hash
+ * words plus three ints. Once all hashes are added the tree is read only, so {@link #query} can be
+ * called from many threads at once.
+ */
+final class HammingBkTree {
+  private final int wordsPerHash;
+  private final long[] hashWords;
+  private final int[] firstChild;
+  private final int[] nextSibling;
+  private final int[] distanceToParent;
+  private int size;
+
+  HammingBkTree(int capacity, int bitResolution) {
+    this.wordsPerHash = (bitResolution + 63) / 64;
+    this.hashWords = new long[capacity * wordsPerHash];
+    this.firstChild = new int[capacity];
+    this.nextSibling = new int[capacity];
+    this.distanceToParent = new int[capacity];
+    Arrays.fill(firstChild, -1);
+    Arrays.fill(nextSibling, -1);
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Adds a hash, the returned index is the position of the element in insertion order.
+   *
+   * @param words hash bits, least significant word first
+   */
+  int add(long[] words) {
+    int index = size++;
+    System.arraycopy(words, 0, hashWords, index * wordsPerHash, wordsPerHash);
+    if (index == 0) {
+      return index;
+    }
+    int node = 0;
+    while (true) {
+      int distance = distance(node, index);
+      int child = childWithDistance(node, distance);
+      if (child < 0) {
+        distanceToParent[index] = distance;
+        nextSibling[index] = firstChild[node];
+        firstChild[node] = index;
+        return index;
+      }
+      node = child;
+    }
+  }
+
+  /** Reports every element within {@code radius} bits of element {@code index}, itself included */
+  void query(int index, int radius, IntConsumer consumer) {
+    if (size == 0) {
+      return;
+    }
+    int[] stack = new int[16];
+    int stackSize = 0;
+    stack[stackSize++] = 0;
+    while (stackSize > 0) {
+      int node = stack[--stackSize];
+      int distance = distance(node, index);
+      if (distance <= radius) {
+        consumer.accept(node);
+      }
+      for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+        if (Math.abs(distanceToParent[child] - distance) <= radius) {
+          if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+          }
+          stack[stackSize++] = child;
+        }
+      }
+    }
+  }
+
+  int distance(int a, int b) {
+    int offsetA = a * wordsPerHash;
+    int offsetB = b * wordsPerHash;
+    int distance = 0;
+    for (int w = 0; w < wordsPerHash; w++) {
+      distance += Long.bitCount(hashWords[offsetA + w] ^ hashWords[offsetB + w]);
+    }
+    return distance;
+  }
+
+  private int childWithDistance(int node, int distance) {
+    for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+      if (distanceToParent[child] == distance) {
+        return child;
+      }
+    }
+    return -1;
+  }
+}
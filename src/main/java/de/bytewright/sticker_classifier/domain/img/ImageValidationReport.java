@@ -0,0 +1,68 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Per file outcome of a validation batch.
+ *
+ * @param outcomes outcome for every file that was passed in
+ */
+public record ImageValidationReport(Map<Path, FileOutcome> outcomes) {
+
+  public enum Status {
+    /** File is a regular PNG and needed no change */
+    VALID,
+    /** File was a CgBI PNG and has been converted in place */
+    REPAIRED,
+    /** File does not exist (anymore) or is no regular file */
+    MISSING,
+    /** File could not be read or repaired, it must not be classified */
+    FAILED,
+    /** File is structurally broken and has been moved to quarantine */
+    INVALID
+  }
+
+  /**
+   * @param detail human readable reason, null for successful outcomes
+   * @param defect structural defect found in the file, only set for {@link Status#INVALID}
+   */
+  public record FileOutcome(Status status, String detail, PngStructureValidator.Defect defect) {
+    public FileOutcome(Status status, String detail) {
+      this(status, detail, null);
+    }
+
+    public boolean isUsable() {
+      return status == Status.VALID || status == Status.REPAIRED;
+    }
+  }
+
+  public Collection<Path> usableFiles() {
+    return outcomes.entrySet().stream()
+        .filter(entry -> entry.getValue().isUsable())
+        .map(Map.Entry::getKey)
+        .toList();
+  }
+
+  /** Aggregated reasons of all files found structurally invalid */
+  public Map<PngStructureValidator.Defect, Integer> countByDefect() {
+    Map<PngStructureValidator.Defect, Integer> counts =
+        new EnumMap<>(PngStructureValidator.Defect.class);
+    for (FileOutcome outcome : outcomes.values()) {
+      if (outcome.defect() != null) {
+        counts.merge(outcome.defect(), 1, Integer::sum);
+      }
+    }
+    return counts;
+  }
+
+  public Map<Status, Integer> countByStatus() {
+    Map<Status, Integer> counts = new EnumMap<>(Status.class);
+    for (FileOutcome outcome : outcomes.values()) {
+      counts.merge(outcome.status(), 1, Integer::sum);
+    }
+    return counts;
+  }
+}
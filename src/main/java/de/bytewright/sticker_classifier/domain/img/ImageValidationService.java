@@ -1,39 +1,192 @@
 package de.bytewright.sticker_classifier.domain.img;
 
+import de.bytewright.sticker_classifier.domain.img.ImageValidationReport.FileOutcome;
+import de.bytewright.sticker_classifier.domain.img.ImageValidationReport.Status;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Optional;
-import java.util.Set;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 @Slf4j
 @Service
 public class ImageValidationService {
+  private static final int VALIDATION_THREADS = Runtime.getRuntime().availableProcessors();
+
   public Collection<Path> validateAndFixImages(Collection<Path> values) throws IOException {
-    Set<Path> files = new HashSet<>();
+    return validate(values).usableFiles();
+  }
+
+  /**
+   * Validates a batch of images. Detection only reads the first {@link
+   * CgBIPNGConverter#HEADER_SIZE} bytes of each file through one reused buffer, confirmed CgBI files
+   * are converted first. Every file is then checked by the {@link PngStructureValidator} on a
+   * parallel pool, structurally broken files are moved to a {@code _invalid} directory next to
+   * their source directory so they never reach the prompt queue.
+   *
+   * @return outcome for every given file
+   */
+  public ImageValidationReport validate(Collection<Path> values) {
+    Map<Path, FileOutcome> outcomes = new LinkedHashMap<>();
+    Map<Path, Callable<FileOutcome>> tasks = new LinkedHashMap<>();
+    int cgbiCount = 0;
+    ByteBuffer headerBuffer = ByteBuffer.allocate(CgBIPNGConverter.HEADER_SIZE);
     for (Path filePath : values) {
-      validateAndFixImage(filePath).ifPresent(files::add);
+      if (!Files.isRegularFile(filePath)) {
+        outcomes.put(filePath, new FileOutcome(Status.MISSING, "not a regular file"));
+        continue;
+      }
+      try {
+        if (CgBIPNGConverter.isCgBIPNG(filePath, headerBuffer)) {
+          cgbiCount++;
+          tasks.put(filePath, () -> repairAndCheck(filePath));
+        } else {
+          tasks.put(filePath, () -> checkStructure(filePath, Status.VALID));
+        }
+      } catch (IOException e) {
+        log.error("Could not read header of {}", filePath, e);
+        outcomes.put(filePath, new FileOutcome(Status.FAILED, e.getMessage()));
+      }
+    }
+
+    if (cgbiCount > 0) {
+      log.info("Detected {} Apple formated pngs, attempting fix", cgbiCount);
+    }
+    outcomes.putAll(runInParallel(tasks));
+    ImageValidationReport report = new ImageValidationReport(outcomes);
+    log.info("Validated {} images: {}", outcomes.size(), report.countByStatus());
+    Map<PngStructureValidator.Defect, Integer> defects = report.countByDefect();
+    if (!defects.isEmpty()) {
+      log.warn("Quarantined invalid images by reason: {}", defects);
+    }
+    return report;
+  }
+
+  private Map<Path, FileOutcome> runInParallel(Map<Path, Callable<FileOutcome>> tasks) {
+    Map<Path, FileOutcome> outcomes = new LinkedHashMap<>();
+    if (tasks.isEmpty()) {
+      return outcomes;
+    }
+    int threads = Math.min(VALIDATION_THREADS, tasks.size());
+    try (ExecutorService validationPool = Executors.newFixedThreadPool(threads)) {
+      Map<Path, Future<FileOutcome>> pending = new LinkedHashMap<>();
+      for (Map.Entry<Path, Callable<FileOutcome>> task : tasks.entrySet()) {
+        pending.put(task.getKey(), validationPool.submit(task.getValue()));
+      }
+      for (Map.Entry<Path, Future<FileOutcome>> entry : pending.entrySet()) {
+        try {
+          outcomes.put(entry.getKey(), entry.getValue().get());
+        } catch (ExecutionException e) {
+          log.error("Error while validating {}", entry.getKey(), e.getCause());
+          outcomes.put(entry.getKey(), new FileOutcome(Status.FAILED, e.getMessage()));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          outcomes.put(entry.getKey(), new FileOutcome(Status.FAILED, "interrupted"));
+        }
+      }
+    }
+    return outcomes;
+  }
+
+  private FileOutcome repairAndCheck(Path filePath) {
+    FileOutcome repaired = repairCgBIImage(filePath);
+    return repaired.isUsable() ? checkStructure(filePath, Status.REPAIRED) : repaired;
+  }
+
+  private FileOutcome checkStructure(Path filePath, Status statusIfValid) {
+    Optional<PngStructureValidator.Result> result;
+    try {
+      result = PngStructureValidator.check(filePath);
+    } catch (IOException e) {
+      log.error("Could not read {}", filePath, e);
+      return new FileOutcome(Status.FAILED, e.getMessage());
+    }
+    if (result.isEmpty()) {
+      return new FileOutcome(statusIfValid, null);
+    }
+    PngStructureValidator.Result defect = result.get();
+    quarantine(filePath, defect);
+    return new FileOutcome(Status.INVALID, defect.message(), defect.defect());
+  }
+
+  private void quarantine(Path filePath, PngStructureValidator.Result defect) {
+    try {
+      String orgDirName = filePath.getParent().toFile().getName();
+      Path invalidDir = filePath.getParent().getParent().resolve(orgDirName + "_invalid");
+      Files.createDirectories(invalidDir);
+      Path moveTarget = invalidDir.resolve(filePath.toFile().getName());
+      log.warn(
+          "Invalid png ({}: {}), moving '{}' to: {}",
+          defect.defect(),
+          defect.message(),
+          filePath.toFile().getName(),
+          moveTarget);
+      Files.move(filePath, moveTarget);
+    } catch (IOException e) {
+      log.error("Error while quarantining {}", filePath, e);
+    }
+  }
+
+  private FileOutcome repairCgBIImage(Path filePath) {
+    log.info("Detected Apple formated png, attempting fix for: {}", filePath);
+    Path savedOrgCopy;
+    try {
+      savedOrgCopy = saveOriginal(filePath);
+    } catch (IOException e) {
+      log.error("Could not save original of {}", filePath, e);
+      return new FileOutcome(Status.FAILED, "backup failed: " + e.getMessage());
+    }
+    try {
+      // Stream from the saved copy back into the original location
+      CgBIPNGConverter.convertCgBIToStandardPNG(savedOrgCopy, filePath);
+      return new FileOutcome(Status.REPAIRED, null);
+    } catch (IOException e) {
+      log.error("Could not convert {}, restoring original", filePath, e);
+      try {
+        Files.copy(savedOrgCopy, filePath, StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException restoreError) {
+        log.error("Could not restore original of {}", filePath, restoreError);
+      }
+      return new FileOutcome(Status.FAILED, "conversion failed: " + e.getMessage());
     }
-    return files;
   }
 
-  private Optional<Path> validateAndFixImage(Path filePath) throws IOException {
-    if (!Files.isRegularFile(filePath)) return Optional.empty();
-    byte[] imgBytes = Files.readAllBytes(filePath);
-    if (CgBIPNGConverter.isCgBIPNG(imgBytes)) {
-      log.info("Detected Apple formated png, attempting fix for: {}", filePath);
-      byte[] fixedImg = CgBIPNGConverter.convertCgBIToStandardPNG(imgBytes);
-      String fileName = filePath.toFile().getName();
-      Path savedOrgCopy = filePath.getParent().getParent().resolve("broken_imgs").resolve(fileName);
-      Files.createDirectories(savedOrgCopy.getParent());
-      Files.copy(filePath, savedOrgCopy);
-      Files.write(filePath, fixedImg, StandardOpenOption.TRUNCATE_EXISTING);
+  /**
+   * Copies the original into {@code broken_imgs} next to its pack directory, named after pack and
+   * file so packs with the same file names do not collide. A backup with the same content, e.g.
+   * from an earlier run, is reused, a different one gets a numbered name.
+   */
+  static Path saveOriginal(Path filePath) throws IOException {
+    Path packDir = filePath.toAbsolutePath().getParent();
+    Path backupDir = packDir.getParent().resolve("broken_imgs");
+    Files.createDirectories(backupDir);
+    String name = packDir.getFileName() + "_" + filePath.getFileName();
+    int extension = name.lastIndexOf('.');
+    for (int attempt = 0; ; attempt++) {
+      String candidateName =
+          attempt == 0
+              ? name
+              : extension < 0
+                  ? name + "_" + attempt
+                  : name.substring(0, extension) + "_" + attempt + name.substring(extension);
+      Path candidate = backupDir.resolve(candidateName);
+      try {
+        Files.copy(filePath, candidate);
+        return candidate;
+      } catch (FileAlreadyExistsException e) {
+        if (Files.mismatch(candidate, filePath) == -1) {
+          return candidate;
+        }
+      }
     }
-    return Optional.of(filePath);
   }
 }
@@ -0,0 +1,299 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Fast structural check of standard PNG files, without decoding pixels. Walks all chunks, verifies
+ * their CRCs, checks the IHDR values against sane limits and trial-inflates the IDAT stream to make
+ * sure it is complete and every scanline starts with a valid filter byte. Catches truncated and
+ * corrupted files before they are sent to the LLM.
+ */
+public class PngStructureValidator {
+  public static final int MAX_DIMENSION = 16_384;
+  public static final long MAX_PIXELS = 64L * 1024 * 1024;
+  private static final byte[] PNG_SIGNATURE = {
+    (byte) 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A
+  };
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  public enum Defect {
+    NOT_PNG,
+    TRUNCATED,
+    INVALID_CHUNK,
+    CRC_MISMATCH,
+    INVALID_IHDR,
+    IMAGE_TOO_LARGE,
+    MISSING_IMAGE_DATA,
+    CORRUPT_IMAGE_DATA,
+    INCOMPLETE_IMAGE_DATA
+  }
+
+  public record Result(Defect defect, String message) {}
+
+  /**
+   * @return the first defect found, or empty if the file is structurally valid
+   */
+  public static Optional<Result> check(Path file) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+      return check(in);
+    }
+  }
+
+  static Optional<Result> check(DataInputStream in) throws IOException {
+    byte[] signature = in.readNBytes(PNG_SIGNATURE.length);
+    if (!Arrays.equals(signature, PNG_SIGNATURE)) {
+      return defect(Defect.NOT_PNG, "missing PNG signature");
+    }
+
+    byte[] buffer = new byte[BUFFER_SIZE];
+    byte[] typeBytes = new byte[4];
+    CRC32 crc = new CRC32();
+    ImageDataCheck imageData = null;
+    boolean idatSeen = false;
+    boolean idatDone = false;
+    boolean firstChunk = true;
+    try {
+      while (true) {
+        int length = in.readInt();
+        in.readFully(typeBytes);
+        String chunkType = new String(typeBytes, StandardCharsets.US_ASCII);
+        if (length < 0 || !isValidChunkType(typeBytes)) {
+          return defect(Defect.INVALID_CHUNK, "invalid chunk header '%s'".formatted(chunkType));
+        }
+        if (firstChunk && !chunkType.equals("IHDR")) {
+          return defect(Defect.INVALID_IHDR, "first chunk is %s".formatted(chunkType));
+        }
+        firstChunk = false;
+        if (chunkType.equals("IHDR") && length != 13) {
+          return defect(Defect.INVALID_IHDR, "IHDR length %d".formatted(length));
+        }
+        boolean isIdat = chunkType.equals("IDAT");
+        if (isIdat) {
+          if (idatDone) {
+            return defect(Defect.CORRUPT_IMAGE_DATA, "IDAT chunks are not consecutive");
+          }
+          idatSeen = true;
+        } else if (idatSeen) {
+          idatDone = true;
+        }
+
+        crc.reset();
+        crc.update(typeBytes);
+        byte[] ihdrData = chunkType.equals("IHDR") ? new byte[length] : null;
+        int remaining = length;
+        while (remaining > 0) {
+          int count = Math.min(remaining, buffer.length);
+          in.readFully(buffer, 0, count);
+          crc.update(buffer, 0, count);
+          if (ihdrData != null) {
+            System.arraycopy(buffer, 0, ihdrData, length - remaining, count);
+          }
+          if (isIdat && !imageData.feed(buffer, count)) {
+            return defect(Defect.CORRUPT_IMAGE_DATA, imageData.error);
+          }
+          remaining -= count;
+        }
+        if ((int) crc.getValue() != in.readInt()) {
+          return defect(Defect.CRC_MISMATCH, "CRC mismatch in %s chunk".formatted(chunkType));
+        }
+
+        switch (chunkType) {
+          case "IHDR" -> {
+            if (imageData != null) {
+              return defect(Defect.INVALID_IHDR, "duplicate IHDR chunk");
+            }
+            Optional<Result> ihdrDefect = checkHeader(ihdrData);
+            if (ihdrDefect.isPresent()) {
+              return ihdrDefect;
+            }
+            imageData = new ImageDataCheck(ihdrData);
+          }
+          case "IEND" -> {
+            if (imageData == null || imageData.inflatedBytes == 0) {
+              return defect(Defect.MISSING_IMAGE_DATA, "no image data before IEND");
+            }
+            if (!imageData.isComplete()) {
+              return defect(
+                  Defect.INCOMPLETE_IMAGE_DATA,
+                  "got %d of %d bytes of image data"
+                      .formatted(imageData.inflatedBytes, imageData.expectedBytes));
+            }
+            return Optional.empty();
+          }
+          default -> {}
+        }
+      }
+    } catch (EOFException e) {
+      return defect(Defect.TRUNCATED, "file ends before IEND chunk");
+    } finally {
+      if (imageData != null) {
+        imageData.end();
+      }
+    }
+  }
+
+  private static Optional<Result> checkHeader(byte[] data) {
+    long width = readUnsignedInt(data, 0);
+    long height = readUnsignedInt(data, 4);
+    int bitDepth = data[8] & 0xFF;
+    int colorType = data[9] & 0xFF;
+    if (width == 0 || height == 0) {
+      return defect(Defect.INVALID_IHDR, "image size %dx%d".formatted(width, height));
+    }
+    if (width > MAX_DIMENSION || height > MAX_DIMENSION || width * height > MAX_PIXELS) {
+      return defect(Defect.IMAGE_TOO_LARGE, "image size %dx%d".formatted(width, height));
+    }
+    boolean validDepth =
+        switch (colorType) {
+          case 0 -> bitDepth <= 16 && Integer.bitCount(bitDepth) == 1;
+          case 3 -> bitDepth <= 8 && Integer.bitCount(bitDepth) == 1;
+          case 2, 4, 6 -> bitDepth == 8 || bitDepth == 16;
+          default -> false;
+        };
+    if (!validDepth) {
+      return defect(
+          Defect.INVALID_IHDR, "color type %d with bit depth %d".formatted(colorType, bitDepth));
+    }
+    if (data[10] != 0 || data[11] != 0 || (data[12] & 0xFF) > 1) {
+      return defect(Defect.INVALID_IHDR, "unknown compression, filter or interlace method");
+    }
+    return Optional.empty();
+  }
+
+  private static boolean isValidChunkType(byte[] type) {
+    for (byte b : type) {
+      if (!(b >= 'A' && b <= 'Z' || b >= 'a' && b <= 'z')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long readUnsignedInt(byte[] data, int offset) {
+    return ((data[offset] & 0xFFL) << 24)
+        | ((data[offset + 1] & 0xFFL) << 16)
+        | ((data[offset + 2] & 0xFFL) << 8)
+        | (data[offset + 3] & 0xFFL);
+  }
+
+  private static Optional<Result> defect(Defect defect, String message) {
+    return Optional.of(new Result(defect, message));
+  }
+
+  /** Inflates the IDAT stream into a scratch buffer, counting bytes and checking filter types */
+  private static final class ImageDataCheck {
+    private final Inflater inflater = new Inflater();
+    private final byte[] scratch = new byte[BUFFER_SIZE];
+    private final long expectedBytes;
+    // Scanline length including the filter byte, 0 for interlaced images
+    private final long scanlineBytes;
+    private long inflatedBytes;
+    private String error;
+
+    ImageDataCheck(byte[] ihdr) {
+      long width = readUnsignedInt(ihdr, 0);
+      long height = readUnsignedInt(ihdr, 4);
+      int bitDepth = ihdr[8] & 0xFF;
+      int channels =
+          switch (ihdr[9] & 0xFF) {
+            case 2 -> 3;
+            case 4 -> 2;
+            case 6 -> 4;
+            default -> 1;
+          };
+      int bitsPerPixel = channels * bitDepth;
+      if ((ihdr[12] & 0xFF) == 0) {
+        scanlineBytes = (width * bitsPerPixel + 7) / 8 + 1;
+        expectedBytes = scanlineBytes * height;
+      } else {
+        scanlineBytes = 0;
+        expectedBytes = adam7Bytes(width, height, bitsPerPixel);
+      }
+    }
+
+    /**
+     * @return false if the data can not be inflated or contains an invalid filter type
+     */
+    boolean feed(byte[] data, int length) {
+      if (inflater.finished()) {
+        return true; // trailing garbage after the zlib stream is tolerated by decoders
+      }
+      inflater.setInput(data, 0, length);
+      try {
+        while (!inflater.finished()) {
+          int inflated = inflater.inflate(scratch);
+          if (inflated == 0) {
+            if (inflater.needsDictionary()) {
+              error = "image data requires a preset dictionary";
+              return false;
+            }
+            if (inflater.needsInput()) {
+              return true;
+            }
+          }
+          if (!checkFilterBytes(inflated)) {
+            return false;
+          }
+          inflatedBytes += inflated;
+        }
+      } catch (DataFormatException e) {
+        error = "image data can not be inflated: " + e.getMessage();
+        return false;
+      }
+      return true;
+    }
+
+    private boolean checkFilterBytes(int inflated) {
+      if (scanlineBytes == 0) {
+        return true;
+      }
+      long remainder = inflatedBytes % scanlineBytes;
+      long rowStart = remainder == 0 ? inflatedBytes : inflatedBytes + scanlineBytes - remainder;
+      for (long position = rowStart;
+          position < inflatedBytes + inflated && position < expectedBytes;
+          position += scanlineBytes) {
+        int filterType = scratch[(int) (position - inflatedBytes)] & 0xFF;
+        if (filterType > 4) {
+          long row = position / scanlineBytes;
+          error = "invalid filter type %d in row %d".formatted(filterType, row);
+          return false;
+        }
+      }
+      return true;
+    }
+
+    boolean isComplete() {
+      return inflatedBytes >= expectedBytes;
+    }
+
+    void end() {
+      inflater.end();
+    }
+
+    private static long adam7Bytes(long width, long height, int bitsPerPixel) {
+      // x offset, y offset, x step, y step of the seven passes
+      int[][] passes = {
+        {0, 0, 8, 8}, {4, 0, 8, 8}, {0, 4, 4, 8}, {2, 0, 4, 4},
+        {0, 2, 2, 4}, {1, 0, 2, 2}, {0, 1, 1, 2}
+      };
+      long total = 0;
+      for (int[] pass : passes) {
+        long passWidth = (width - pass[0] + pass[2] - 1) / pass[2];
+        long passHeight = (height - pass[1] + pass[3] - 1) / pass[3];
+        if (passWidth > 0 && passHeight > 0) {
+          total += ((passWidth * bitsPerPixel + 7) / 8 + 1) * passHeight;
+        }
+      }
+      return total;
+    }
+  }
+}
@@ -1,18 +1,20 @@
 package de.bytewright.sticker_classifier.domain.img;
 
-import dev.brachtendorf.jimagehash.hash.Hash;
 import dev.brachtendorf.jimagehash.hashAlgorithms.PerceptiveHash;
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import javax.imageio.ImageIO;
 import lombok.Builder;
@@ -63,6 +65,198 @@ public class StickerDeduplicationBySimilarityService {
     return renamedFiles;
   }
 
+  /**
+   * Builds one similarity index over every PNG below {@code rootPath} and reports clusters whose
+   * members live in more than one directory. Only the {@link StickerSignature} of each file is kept
+   * in memory, images are decoded one at a time per thread. The index is built over the cheap
+   * difference hash, candidates found within the pre-filter radius are verified with the fused
+   * distance, their image is decoded once more for the pHash. If {@link
+   * Config#isMergeCrossDirectoryClusters()} is set and this is no dry run, the members of each
+   * cluster are moved into a directory named by {@link #combinedDirectoryName(Path, Set)}.
+   *
+   * @param rootPath root of the output tree, all subdirectories are included
+   * @return clusters that span more than one directory, most similar first
+   */
+  public List<CrossDirectoryCluster> processGlobally(Path rootPath, Config config)
+      throws IOException {
+    if (!Files.isDirectory(rootPath)) {
+      throw new IllegalArgumentException("Path must be a directory: " + rootPath.toAbsolutePath());
+    }
+    List<Path> pngFiles = findPngFiles(rootPath);
+    log.info("Found {} PNG files below {} for global deduplication", pngFiles.size(), rootPath);
+
+    List<SignedFile> signedFiles = signFilesInParallel(pngFiles, config);
+    if (signedFiles.isEmpty()) {
+      log.warn("No readable PNG files found at: {}", rootPath.toAbsolutePath());
+      return Collections.emptyList();
+    }
+    int fileCount = signedFiles.size();
+    HammingBkTree index = new HammingBkTree(fileCount, 64);
+    for (SignedFile signedFile : signedFiles) {
+      index.add(new long[] {signedFile.signature().differenceHash()});
+    }
+    log.info("Built similarity index over {} hashes", fileCount);
+
+    CascadedSimilarity similarity = new CascadedSimilarity(config);
+    UnionFind unionFind = new UnionFind(fileCount);
+    double[] scoreSums = new double[fileCount];
+    int[] edgeCounts = new int[fileCount];
+    int batchSize = Math.max(1, config.getQueryBatchSize());
+    for (int batchStart = 0; batchStart < fileCount; batchStart += batchSize) {
+      int start = batchStart;
+      int end = Math.min(fileCount, batchStart + batchSize);
+      // Queries only read the index, edges are merged single threaded once the batch is done
+      Neighbours[] neighbours = new Neighbours[end - start];
+      IntStream.range(start, end)
+          .parallel()
+          .forEach(
+              i ->
+                  neighbours[i - start] =
+                      findHigherNeighbours(index, signedFiles, i, similarity, config));
+      for (int i = start; i < end; i++) {
+        Neighbours found = neighbours[i - start];
+        for (int n = 0; n < found.indices().length; n++) {
+          unionFind.union(i, found.indices()[n]);
+          scoreSums[i] += found.distances()[n];
+          edgeCounts[i]++;
+        }
+      }
+      log.info("Queried {}/{} hashes", end, fileCount);
+    }
+
+    List<Path> hashedPaths = signedFiles.stream().map(SignedFile::path).toList();
+    List<CrossDirectoryCluster> crossDirectoryClusters = new ArrayList<>();
+    for (ClusteredFiles cluster : createClusters(hashedPaths, unionFind, scoreSums, edgeCounts)) {
+      Set<Path> directories =
+          cluster.filePaths().stream().map(Path::getParent).collect(Collectors.toSet());
+      if (directories.size() > 1) {
+        crossDirectoryClusters.add(
+            new CrossDirectoryCluster(cluster.avgScore(), cluster.filePaths(), directories));
+      }
+    }
+    log.info("Found {} clusters spanning multiple directories", crossDirectoryClusters.size());
+    for (CrossDirectoryCluster cluster : crossDirectoryClusters) {
+      log.info(
+          "Cross directory cluster with avgScore {}: {}",
+          "%04.4f".formatted(cluster.avgScore()),
+          cluster.filePaths());
+      if (config.isMergeCrossDirectoryClusters()) {
+        mergeIntoCombinedDirectory(rootPath, cluster, config);
+      }
+    }
+    return crossDirectoryClusters;
+  }
+
+  private List<SignedFile> signFilesInParallel(List<Path> files, Config config) {
+    PerceptiveHash pHash = StickerSignature.createPerceptiveHash(config.getHashPrecision());
+    SignedFile[] signed = new SignedFile[files.size()];
+    IntStream.range(0, files.size())
+        .parallel()
+        .forEach(
+            i -> {
+              Path file = files.get(i);
+              try {
+                BufferedImage img = ImageIO.read(file.toFile());
+                if (img != null) {
+                  signed[i] =
+                      new SignedFile(file, StickerSignature.of(img, pHash, () -> reload(file)));
+                } else {
+                  log.warn("Could not read image: {}", file);
+                }
+              } catch (IOException e) {
+                log.error("Error reading image: {}", file, e);
+              }
+            });
+    return Arrays.stream(signed).filter(Objects::nonNull).toList();
+  }
+
+  private static BufferedImage reload(Path file) {
+    try {
+      return ImageIO.read(file.toFile());
+    } catch (IOException e) {
+      log.error("Error reading image again: {}", file, e);
+      return null;
+    }
+  }
+
+  private static Neighbours findHigherNeighbours(
+      HammingBkTree index,
+      List<SignedFile> signedFiles,
+      int element,
+      CascadedSimilarity similarity,
+      Config config) {
+    StickerSignature signature = signedFiles.get(element).signature();
+    int[][] found = {new int[4]};
+    double[][] distances = {new double[4]};
+    int[] count = {0};
+    index.query(
+        element,
+        similarity.prefilterRadius(),
+        other -> {
+          if (other <= element) {
+            return;
+          }
+          double distance = similarity.fusedDistance(signature, signedFiles.get(other).signature());
+          if (distance <= config.getSimilarityThreshold()) {
+            if (count[0] == found[0].length) {
+              found[0] = Arrays.copyOf(found[0], count[0] * 2);
+              distances[0] = Arrays.copyOf(distances[0], count[0] * 2);
+            }
+            found[0][count[0]] = other;
+            distances[0][count[0]++] = distance;
+          }
+        });
+    return new Neighbours(
+        Arrays.copyOf(found[0], count[0]), Arrays.copyOf(distances[0], count[0]));
+  }
+
+  private void mergeIntoCombinedDirectory(
+      Path rootPath, CrossDirectoryCluster cluster, Config config) {
+    Path targetDir = rootPath.resolve(combinedDirectoryName(rootPath, cluster.directories()));
+    log.info("Merging cluster of {} into {}", cluster.directories(), targetDir);
+    for (Path filePath : cluster.filePaths()) {
+      Path targetPath = targetDir.resolve(filePath.getFileName());
+      if (Files.exists(targetPath)) {
+        log.warn("File already exists: {}, skipping merge for {}", targetPath, filePath);
+        continue;
+      }
+      if (config.isDryRun()) {
+        log.info("Would move: {} to {}", filePath, targetPath);
+        continue;
+      }
+      try {
+        Files.createDirectories(targetDir);
+        Files.move(filePath, targetPath);
+      } catch (IOException e) {
+        log.error("Error moving file: {}", filePath, e);
+      }
+    }
+  }
+
+  /**
+   * Names the directory a cross directory cluster is merged into after a hash of the sorted paths
+   * of its source directories relative to {@code rootPath}. Leaf names alone collide for
+   * directories with the same name under different parents, and joining them exceeds the file
+   * name limit for large clusters. The same directories always get the same name.
+   */
+  static String combinedDirectoryName(Path rootPath, Set<Path> directories) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+    directories.stream()
+        .map(directory -> rootPath.relativize(directory).toString().replace('\\', '/'))
+        .sorted()
+        .forEach(
+            relativePath -> {
+              digest.update(relativePath.getBytes(StandardCharsets.UTF_8));
+              digest.update((byte) 0);
+            });
+    return "merged_" + HexFormat.of().formatHex(digest.digest(), 0, 8);
+  }
+
   private List<ClusteredFiles> autoDeleteFullMatches(List<ClusteredFiles> clusters, Config dryRun)
       throws IOException {
     List<ClusteredFiles> resultList = new ArrayList<>(clusters.size());
@@ -130,58 +324,57 @@ public class StickerDeduplicationBySimilarityService {
     }
   }
 
-  /** Clusters files by perceptual hash similarity */
+  /**
+   * Clusters files by visual similarity. Pairs are first compared by their difference hash, only
+   * pairs passing the pre-filter are scored with the fused pHash, dHash and colour distance.
+   */
   private List<ClusteredFiles> clusterByContent(List<Path> files, Config config)
       throws IOException {
-    PerceptiveHash pHash = new PerceptiveHash(config.getHashPrecision());
-    pHash.setOpaqueHandling(Color.BLACK, 253);
-    Map<Path, Hash> fileHashes = new HashMap<>();
+    PerceptiveHash pHash = StickerSignature.createPerceptiveHash(config.getHashPrecision());
+    CascadedSimilarity cascade = new CascadedSimilarity(config);
+    List<Path> hashedFiles = new ArrayList<>(files.size());
+    List<StickerSignature> signatures = new ArrayList<>(files.size());
 
-    // Calculate hashes for all files
+    // Calculate signatures for all files
     for (Path file : files) {
       BufferedImage img = ImageIO.read(file.toFile());
       if (img != null) {
-        Hash hash = pHash.hash(img);
-        fileHashes.put(file, hash);
+        hashedFiles.add(file);
+        // Most pairs never pass the pre-filter, keeping every image for its pHash would hold the
+        // whole directory in memory
+        signatures.add(StickerSignature.of(img, pHash, () -> reload(file)));
       } else {
         log.warn("Could not read image: {}", file);
       }
     }
-    log.info("Created {} hashes", fileHashes.size());
-    // Cluster files by similarity
-    Set<SimilarityScore> scored = new HashSet<>();
-    Set<ComputedPairs> computedPairs = new HashSet<>();
-    int i = 0;
-    for (Map.Entry<Path, Hash> entry1 : fileHashes.entrySet()) {
-      for (Map.Entry<Path, Hash> entry2 : fileHashes.entrySet()) {
-        if (entry1.getKey().equals(entry2.getKey())) {
-          continue;
-        }
-        ComputedPairs pairs = new ComputedPairs(entry1.getKey(), entry2.getKey());
-        if (computedPairs.contains(pairs)) {
+    int fileCount = hashedFiles.size();
+    log.info("Created {} hashes", fileCount);
+    // Cluster files by similarity, edges are merged into the union-find as they are found
+    UnionFind unionFind = new UnionFind(fileCount);
+    double[] scoreSums = new double[fileCount];
+    int[] edgeCounts = new int[fileCount];
+    for (int i = 0; i < fileCount; i++) {
+      StickerSignature signature1 = signatures.get(i);
+      for (int j = i + 1; j < fileCount; j++) {
+        StickerSignature signature2 = signatures.get(j);
+        if (!cascade.passesPrefilter(signature1, signature2)) {
           continue;
         }
-        double similarity = entry1.getValue().normalizedHammingDistance(entry2.getValue());
-        computedPairs.add(pairs);
+        double similarity = cascade.fusedDistance(signature1, signature2);
         if (similarity <= config.getSimilarityThreshold()) {
           log.info(
               "{} - {} - {} vs {}",
               "%.4f".formatted(similarity),
-              "%04d/%04d".formatted(i, fileHashes.size()),
-              entry1.getKey().getFileName(),
-              entry2.getKey().getFileName());
-          scored.add(
-              new SimilarityScore(
-                  similarity,
-                  entry1.getKey(),
-                  entry1.getValue(),
-                  entry2.getKey(),
-                  entry2.getValue()));
+              "%04d/%04d".formatted(i, fileCount),
+              hashedFiles.get(i).getFileName(),
+              hashedFiles.get(j).getFileName());
+          unionFind.union(i, j);
+          scoreSums[i] += similarity;
+          edgeCounts[i]++;
         }
       }
-      i++;
     }
-    List<ClusteredFiles> clusters = createClusters(scored);
+    List<ClusteredFiles> clusters = createClusters(hashedFiles, unionFind, scoreSums, edgeCounts);
     return reAddUnique(files, clusters);
   }
 
@@ -201,80 +394,42 @@ public class StickerDeduplicationBySimilarityService {
         .toList();
   }
 
-  private List<ClusteredFiles> createClusters(Set<SimilarityScore> scored) {
-    if (scored.isEmpty()) {
-      return Collections.emptyList();
-    }
-
-    // Build union-find structure to group connected files
-    Map<Path, Path> parent = new HashMap<>();
-    Map<Path, Integer> rank = new HashMap<>();
-
-    // Initialize: each file is its own parent
-    for (SimilarityScore score : scored) {
-      parent.putIfAbsent(score.p1(), score.p1());
-      parent.putIfAbsent(score.p2(), score.p2());
-      rank.putIfAbsent(score.p1(), 0);
-      rank.putIfAbsent(score.p2(), 0);
-    }
-
-    // Union operation: merge sets for similar files
-    for (SimilarityScore score : scored) {
-      union(parent, rank, score.p1(), score.p2());
+  /**
+   * Groups all files connected by at least one similarity edge. Edge scores are accumulated on one
+   * endpoint per edge, summing them per root yields the average score over all edges of a cluster.
+   */
+  static List<ClusteredFiles> createClusters(
+      List<Path> files, UnionFind unionFind, double[] scoreSums, int[] edgeCounts) {
+    int fileCount = unionFind.size();
+    double[] rootScoreSums = new double[fileCount];
+    int[] rootEdgeCounts = new int[fileCount];
+    int[] roots = new int[fileCount];
+    for (int i = 0; i < fileCount; i++) {
+      int root = unionFind.find(i);
+      roots[i] = root;
+      rootScoreSums[root] += scoreSums[i];
+      rootEdgeCounts[root] += edgeCounts[i];
     }
 
-    // Group files by their root parent (cluster representative)
-    Map<Path, List<Path>> clusters = new HashMap<>();
-    Map<Path, List<Double>> clusterScores = new HashMap<>();
-
-    for (SimilarityScore score : scored) {
-      Path root = find(parent, score.p1());
-
-      clusters.computeIfAbsent(root, k -> new ArrayList<>()).add(score.p1());
-      clusters.computeIfAbsent(root, k -> new ArrayList<>()).add(score.p2());
-
-      clusterScores.computeIfAbsent(root, k -> new ArrayList<>()).add(score.score());
+    // Files without any edge end up in singleton sets and are re-added as uniques later
+    Map<Integer, List<Path>> clusters = new HashMap<>();
+    for (int i = 0; i < fileCount; i++) {
+      int root = roots[i];
+      if (rootEdgeCounts[root] > 0) {
+        clusters.computeIfAbsent(root, k -> new ArrayList<>()).add(files.get(i));
+      }
     }
 
-    // Convert to ClusteredFiles with unique file paths and average scores
-    List<ClusteredFiles> result = new ArrayList<>();
-    for (Map.Entry<Path, List<Path>> entry : clusters.entrySet()) {
-      List<Path> uniquePaths = entry.getValue().stream().distinct().toList();
-      List<Double> scores = clusterScores.get(entry.getKey());
-      double avgScore = scores.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-
-      result.add(new ClusteredFiles(avgScore, uniquePaths));
+    List<ClusteredFiles> result = new ArrayList<>(clusters.size());
+    for (Map.Entry<Integer, List<Path>> entry : clusters.entrySet()) {
+      int root = entry.getKey();
+      double avgScore = rootScoreSums[root] / rootEdgeCounts[root];
+      result.add(new ClusteredFiles(avgScore, entry.getValue()));
     }
 
     return result.stream().sorted(Comparator.comparing(ClusteredFiles::avgScore)).toList();
   }
 
-  private Path find(Map<Path, Path> parent, Path path) {
-    if (!parent.get(path).equals(path)) {
-      parent.put(path, find(parent, parent.get(path))); // Path compression
-    }
-    return parent.get(path);
-  }
-
-  private void union(Map<Path, Path> parent, Map<Path, Integer> rank, Path p1, Path p2) {
-    Path root1 = find(parent, p1);
-    Path root2 = find(parent, p2);
-
-    if (root1.equals(root2)) {
-      return; // Already in same set
-    }
-
-    // Union by rank: attach smaller tree under larger tree
-    if (rank.get(root1) < rank.get(root2)) {
-      parent.put(root1, root2);
-    } else if (rank.get(root1) > rank.get(root2)) {
-      parent.put(root2, root1);
-    } else {
-      parent.put(root2, root1);
-      rank.put(root1, rank.get(root1) + 1);
-    }
-  }
-
   /** Renames files with 5-digit zero-padded group ID prefix */
   private Map<String, List<Path>> renameFilesWithGroupId(
       List<ClusteredFiles> clusters, Config config) {
@@ -337,26 +492,32 @@ public class StickerDeduplicationBySimilarityService {
     return result;
   }
 
-  record SimilarityScore(double score, Path p1, Hash h1, Path p2, Hash h2) {}
-
   record ClusteredFiles(double avgScore, List<Path> filePaths) {}
 
-  private record ComputedPairs(Path p1, Path p2) {
-    @Override
-    public boolean equals(Object o) {
-      if (o == null || getClass() != o.getClass()) return false;
-      ComputedPairs that = (ComputedPairs) o;
-      return Objects.equals(p1, that.p1) && Objects.equals(p2, that.p2)
-          || Objects.equals(p1, that.p2) && Objects.equals(p2, that.p1);
-    }
-  }
+  public record CrossDirectoryCluster(
+      double avgScore, List<Path> filePaths, Set<Path> directories) {}
+
+  private record SignedFile(Path path, StickerSignature signature) {}
+
+  private record Neighbours(int[] indices, double[] distances) {}
 
   @Data
   @Builder
   public static class Config {
     @Builder.Default private final boolean dryRun = true;
+    // Both thresholds apply to the fused distance of CascadedSimilarity, they used to apply to the
+    // pHash distance alone. Thresholds tuned for that need checking again, or restore its meaning
+    // with perceptualHashWeight = 1, the other weights 0 and prefilterThreshold = 1
     @Builder.Default private final double exactCopyThreshold = 0.01;
     @Builder.Default private final double similarityThreshold = 0.16; // 0.1 = 90% similar
     @Builder.Default private final int hashPrecision = 64;
+    // max dHash distance for a pair to be scored at all, pairs above it never need a pHash
+    @Builder.Default private final double prefilterThreshold = 0.3;
+    // weights of the fused distance, normalized by their sum
+    @Builder.Default private final double perceptualHashWeight = 0.5;
+    @Builder.Default private final double differenceHashWeight = 0.2;
+    @Builder.Default private final double colorWeight = 0.3;
+    @Builder.Default private final int queryBatchSize = 4096;
+    @Builder.Default private final boolean mergeCrossDirectoryClusters = false;
   }
 }
@@ -0,0 +1,174 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import dev.brachtendorf.jimagehash.hash.Hash;
+import dev.brachtendorf.jimagehash.hashAlgorithms.PerceptiveHash;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.math.BigInteger;
+import java.util.function.Supplier;
+
+/**
+ * Compact visual fingerprint of one sticker, used by the similarity cascade. The 64 bit dHash of
+ * the alpha composited luminance and the alpha weighted RGB histogram with {@link #COLOR_BINS}
+ * bins are calculated in one pass over the pixels. The pHash needs a DCT and is only calculated
+ * once a pair with this sticker passed the dHash pre-filter, most stickers never get one.
+ */
+final class StickerSignature {
+  static final int COLOR_BINS = 64;
+  // Transparent pixels are composited against mid grey, so neither black outlines nor white fills
+  // collapse into the background
+  private static final int BACKGROUND_LUMINANCE = 128;
+  private static final Color BACKGROUND_COLOR = new Color(128, 128, 128);
+  private static final int DHASH_WIDTH = 9;
+  private static final int DHASH_HEIGHT = 8;
+
+  private final long differenceHash;
+  private final float[] colorHistogram;
+  private final PerceptiveHash pHash;
+  // Source of the pHash, released once it is calculated
+  private Supplier<BufferedImage> image;
+  // pHash bits, least significant word first, empty if the image could not be read again
+  private long[] perceptualHash;
+  private int perceptualHashBits;
+
+  private StickerSignature(
+      long differenceHash,
+      float[] colorHistogram,
+      PerceptiveHash pHash,
+      Supplier<BufferedImage> image) {
+    this.differenceHash = differenceHash;
+    this.colorHistogram = colorHistogram;
+    this.pHash = pHash;
+    this.image = image;
+  }
+
+  static PerceptiveHash createPerceptiveHash(int hashPrecision) {
+    PerceptiveHash pHash = new PerceptiveHash(hashPrecision);
+    pHash.setOpaqueHandling(BACKGROUND_COLOR, 253);
+    return pHash;
+  }
+
+  /**
+   * Keeps the image until the pHash is needed, for images that stay in memory anyway.
+   *
+   * @param pHash must be safe to share across threads
+   */
+  static StickerSignature of(BufferedImage img, PerceptiveHash pHash) {
+    return of(img, pHash, () -> img);
+  }
+
+  /**
+   * Keeps only the hashes, the image is loaded again if the pHash is needed.
+   *
+   * @param reload source of the pHash, may return null if the image cannot be read anymore
+   */
+  static StickerSignature of(
+      BufferedImage img, PerceptiveHash pHash, Supplier<BufferedImage> reload) {
+    int width = img.getWidth();
+    int height = img.getHeight();
+    long[] cellSums = new long[DHASH_WIDTH * DHASH_HEIGHT];
+    int[] cellCounts = new int[DHASH_WIDTH * DHASH_HEIGHT];
+    double[] histogram = new double[COLOR_BINS];
+    double totalAlpha = 0;
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      img.getRGB(0, y, width, 1, row, 0, width);
+      int cellRow = y * DHASH_HEIGHT / height * DHASH_WIDTH;
+      for (int x = 0; x < width; x++) {
+        int argb = row[x];
+        int alpha = argb >>> 24;
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        int luminance = (r * 299 + g * 587 + b * 114) / 1000;
+        int composited = (luminance * alpha + BACKGROUND_LUMINANCE * (255 - alpha)) / 255;
+        int cell = cellRow + x * DHASH_WIDTH / width;
+        cellSums[cell] += composited;
+        cellCounts[cell]++;
+        if (alpha > 0) {
+          histogram[(r >> 6) << 4 | (g >> 6) << 2 | (b >> 6)] += alpha;
+          totalAlpha += alpha;
+        }
+      }
+    }
+
+    long differenceHash = 0;
+    int bit = 0;
+    for (int cy = 0; cy < DHASH_HEIGHT; cy++) {
+      for (int cx = 0; cx < DHASH_WIDTH - 1; cx++) {
+        int left = cy * DHASH_WIDTH + cx;
+        // Compare cell means without division: a/n < b/m <=> a*m < b*n
+        if (cellSums[left] * cellCounts[left + 1] < cellSums[left + 1] * cellCounts[left]) {
+          differenceHash |= 1L << bit;
+        }
+        bit++;
+      }
+    }
+
+    float[] colorHistogram = new float[COLOR_BINS];
+    if (totalAlpha > 0) {
+      for (int i = 0; i < COLOR_BINS; i++) {
+        colorHistogram[i] = (float) (histogram[i] / totalAlpha);
+      }
+    }
+    return new StickerSignature(differenceHash, colorHistogram, pHash, reload);
+  }
+
+  long differenceHash() {
+    return differenceHash;
+  }
+
+  /**
+   * @return pHash bits, least significant word first, calculated on first use
+   */
+  synchronized long[] perceptualHash() {
+    if (perceptualHash == null) {
+      BufferedImage img = image.get();
+      if (img == null) {
+        perceptualHash = new long[0];
+      } else {
+        Hash hash = pHash.hash(img);
+        perceptualHashBits = hash.getBitResolution();
+        perceptualHash = toWords(hash.getHashValue(), perceptualHashBits);
+      }
+      image = null;
+    }
+    return perceptualHash;
+  }
+
+  static long[] toWords(BigInteger hashValue, int bits) {
+    long[] words = new long[(bits + 63) / 64];
+    for (int w = 0; w < words.length; w++) {
+      words[w] = hashValue.shiftRight(w * 64).longValue();
+    }
+    return words;
+  }
+
+  /** Normalized hamming distance of the difference hashes */
+  double differenceHashDistance(StickerSignature other) {
+    return Long.bitCount(differenceHash ^ other.differenceHash) / 64.0;
+  }
+
+  /** Normalized hamming distance of the perceptual hashes, 1 if one of them is missing */
+  double perceptualHashDistance(StickerSignature other) {
+    long[] words = perceptualHash();
+    long[] otherWords = other.perceptualHash();
+    if (words.length == 0 || words.length != otherWords.length) {
+      return 1;
+    }
+    int distance = 0;
+    for (int w = 0; w < words.length; w++) {
+      distance += Long.bitCount(words[w] ^ otherWords[w]);
+    }
+    return distance / (double) perceptualHashBits;
+  }
+
+  /** Total variation distance of the colour histograms, 0 for identical and 1 for disjoint */
+  double colorDistance(StickerSignature other) {
+    double sum = 0;
+    for (int i = 0; i < COLOR_BINS; i++) {
+      sum += Math.abs(colorHistogram[i] - other.colorHistogram[i]);
+    }
+    return sum / 2;
+  }
+}
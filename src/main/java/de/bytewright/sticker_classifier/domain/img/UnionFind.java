@@ -0,0 +1,56 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+/**
+ * Int-indexed disjoint-set forest used to group similar images. Elements are addressed by their
+ * index in the caller's file list, so the whole structure is two primitive arrays. {@link
+ * #find(int)} is iterative with path halving, deep chains cannot overflow the stack.
+ */
+final class UnionFind {
+  private final int[] parent;
+  private final byte[] rank;
+
+  UnionFind(int size) {
+    parent = new int[size];
+    rank = new byte[size];
+    for (int i = 0; i < size; i++) {
+      parent[i] = i;
+    }
+  }
+
+  int size() {
+    return parent.length;
+  }
+
+  /** Returns the representative of the set containing {@code element} */
+  int find(int element) {
+    int current = element;
+    while (parent[current] != current) {
+      // Path halving: point every other node on the path to its grandparent
+      parent[current] = parent[parent[current]];
+      current = parent[current];
+    }
+    return current;
+  }
+
+  /**
+   * Merges the sets containing {@code a} and {@code b} using union by rank.
+   *
+   * @return true if the two elements were in different sets before the call
+   */
+  boolean union(int a, int b) {
+    int rootA = find(a);
+    int rootB = find(b);
+    if (rootA == rootB) {
+      return false;
+    }
+    if (rank[rootA] < rank[rootB]) {
+      parent[rootA] = rootB;
+    } else if (rank[rootA] > rank[rootB]) {
+      parent[rootB] = rootA;
+    } else {
+      parent[rootB] = rootA;
+      rank[rootA]++;
+    }
+    return true;
+  }
+}
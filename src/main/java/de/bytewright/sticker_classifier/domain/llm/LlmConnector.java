@@ -4,5 +4,9 @@ import java.util.Optional;
 
 public interface LlmConnector {
 
+  /**
+   * @return the result, empty if the request failed for an unknown reason
+   * @throws PromptFailedException if the request failed for a reason the retry policy can act on
+   */
   Optional<PromptResult> processRequest(PromptRequest promptRequest);
 }
@@ -1,6 +1,8 @@
 package de.bytewright.sticker_classifier.domain.llm;
 
+import java.time.Duration;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
@@ -13,6 +15,17 @@ public class PromptExecutorService {
     executorService.submit(processingLoop);
   }
 
+  public void shutdown() {
+    executorService.shutdown();
+  }
+
+  /**
+   * @return false if the timeout passed before all submitted loops returned
+   */
+  public boolean awaitTermination(Duration timeout) throws InterruptedException {
+    return executorService.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
   public void shutdownNow() {
     executorService.shutdownNow();
   }
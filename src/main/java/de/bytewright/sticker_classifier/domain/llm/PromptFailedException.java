@@ -0,0 +1,28 @@
+package de.bytewright.sticker_classifier.domain.llm;
+
+import java.time.Duration;
+import lombok.Getter;
+
+/** Thrown by an {@link LlmConnector} when a request failed for a known reason */
+@Getter
+public class PromptFailedException extends RuntimeException {
+  private final PromptFailure failure;
+  /** Earliest time another attempt makes sense, null to leave it to the retry policy */
+  private final Duration retryAfter;
+
+  public PromptFailedException(PromptFailure failure, String message) {
+    this(failure, message, (Throwable) null);
+  }
+
+  public PromptFailedException(PromptFailure failure, String message, Throwable cause) {
+    super(message, cause);
+    this.failure = failure;
+    this.retryAfter = null;
+  }
+
+  public PromptFailedException(PromptFailure failure, String message, Duration retryAfter) {
+    super(message);
+    this.failure = failure;
+    this.retryAfter = retryAfter;
+  }
+}
@@ -0,0 +1,19 @@
+package de.bytewright.sticker_classifier.domain.llm;
+
+/** Why a prompt request produced no result, decides how and whether it is retried */
+public enum PromptFailure {
+  /** The model did not answer in time */
+  TIMEOUT,
+  /** The endpoint refused or dropped the connection, e.g. while it restarts */
+  CONNECTION_REFUSED,
+  /** The model is not pulled or could not be loaded */
+  MODEL_NOT_LOADED,
+  /** The endpoint answered with a server error */
+  SERVER_ERROR,
+  /** The model answered, but nothing usable could be read from the response */
+  PARSE_FAILURE,
+  /** The request was not sent because the endpoint is known to be failing, costs no attempt */
+  CIRCUIT_OPEN,
+  /** Any other failure */
+  UNKNOWN
+}
@@ -0,0 +1,121 @@
+package de.bytewright.sticker_classifier.domain.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with microsecond resolution. Like an HDR histogram, values are
+ * counted in buckets that grow with powers of two but are split into 64
+ * linear sub-buckets each, so every reported percentile is at most about 1.6% above the recorded
+ * value, independent of its magnitude.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+  // 2^40 microseconds are about 12 days, longer values are clamped
+  private static final long MAX_TRACKABLE_MICROS = (1L << 40) - 1;
+  private static final int BUCKET_COUNT = indexOf(MAX_TRACKABLE_MICROS) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder totalCount = new LongAdder();
+  private final LongAdder totalMicros = new LongAdder();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  public void record(Duration duration) {
+    recordNanos(duration.toNanos());
+  }
+
+  public void recordNanos(long nanos) {
+    long micros = Math.clamp(nanos / 1000, 0, MAX_TRACKABLE_MICROS);
+    counts.incrementAndGet(indexOf(micros));
+    totalCount.increment();
+    totalMicros.add(micros);
+    maxMicros.accumulateAndGet(micros, Math::max);
+  }
+
+  /** Bucket index, values below {@link #SUB_BUCKETS} have a bucket of their own */
+  static int indexOf(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(micros) - (SUB_BUCKET_BITS - 1);
+    return shift * HALF_SUB_BUCKETS + (int) (micros >>> shift);
+  }
+
+  /** Largest value counted in the bucket */
+  static long highestValueOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index >>> (SUB_BUCKET_BITS - 1)) - 1;
+    long subBucket = index - (long) shift * HALF_SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * @param quantile between 0 and 1
+   * @return the highest value of the bucket that contains the quantile, never above the maximum
+   */
+  public Duration percentile(double quantile) {
+    long[] snapshot = snapshotCounts();
+    return micros(percentileMicros(snapshot, sum(snapshot), quantile));
+  }
+
+  private long percentileMicros(long[] snapshot, long count, double quantile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * count));
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(highestValueOf(i), maxMicros.get());
+      }
+    }
+    return maxMicros.get();
+  }
+
+  /**
+   * @return count, mean and the usual percentiles, all percentiles taken from the same counts
+   */
+  public Summary summary() {
+    long[] snapshot = snapshotCounts();
+    long count = sum(snapshot);
+    long recorded = totalCount.sum();
+    long mean = recorded == 0 ? 0 : totalMicros.sum() / recorded;
+    return new Summary(
+        count,
+        micros(mean),
+        micros(percentileMicros(snapshot, count, 0.50)),
+        micros(percentileMicros(snapshot, count, 0.95)),
+        micros(percentileMicros(snapshot, count, 0.99)),
+        micros(maxMicros.get()));
+  }
+
+  private long[] snapshotCounts() {
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = counts.get(i);
+    }
+    return snapshot;
+  }
+
+  private static long sum(long[] values) {
+    long sum = 0;
+    for (long value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+
+  private static Duration micros(long micros) {
+    return Duration.ofNanos(micros * 1000);
+  }
+
+  public record Summary(
+      long count, Duration mean, Duration p50, Duration p95, Duration p99, Duration max) {}
+}
@@ -0,0 +1,14 @@
+package de.bytewright.sticker_classifier.domain.metrics;
+
+/** Timed steps of a prompt, from reading the image to acting on the result */
+public enum PipelineStage {
+  IMAGE_ENCODING,
+  LLM_CALL,
+  RESPONSE_PARSING,
+  RESULT_PROCESSING,
+  /** Durations reported by Ollama itself */
+  OLLAMA_TOTAL,
+  OLLAMA_LOAD,
+  OLLAMA_PROMPT_EVAL,
+  OLLAMA_EVAL
+}
@@ -0,0 +1,126 @@
+package de.bytewright.sticker_classifier.domain.metrics;
+
+import de.bytewright.sticker_classifier.domain.ShutdownPhase;
+import de.bytewright.sticker_classifier.domain.llm.PromptType;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+/**
+ * In-process latency metrics of the prompt pipeline, one {@link LatencyHistogram} per stage, model
+ * and prompt type. A summary is logged on shutdown once the pipeline has been drained.
+ */
+@Slf4j
+@Service
+public class StageMetrics implements SmartLifecycle {
+  /** Model of stages that do not depend on a model */
+  public static final String NO_MODEL = "-";
+
+  private final Map<StageKey, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+  private final List<BiConsumer<StageKey, LatencyHistogram>> stageListeners =
+      new CopyOnWriteArrayList<>();
+  private volatile boolean running;
+
+  public record StageKey(PipelineStage stage, String model, PromptType promptType) {}
+
+  public record StageLatency(StageKey key, LatencyHistogram.Summary summary) {}
+
+  /**
+   * @param startNanos value of {@link System#nanoTime()} when the stage started
+   */
+  public void recordSince(
+      PipelineStage stage, String model, PromptType promptType, long startNanos) {
+    histogram(stage, model, promptType).recordNanos(System.nanoTime() - startNanos);
+  }
+
+  /** Records a duration measured elsewhere, absent durations are ignored */
+  public void record(PipelineStage stage, String model, PromptType promptType, Duration duration) {
+    if (duration != null) {
+      histogram(stage, model, promptType).record(duration);
+    }
+  }
+
+  public LatencyHistogram histogram(PipelineStage stage, String model, PromptType promptType) {
+    StageKey key = new StageKey(stage, model == null ? NO_MODEL : model, promptType);
+    LatencyHistogram histogram = histograms.get(key);
+    if (histogram != null) {
+      return histogram;
+    }
+    LatencyHistogram created = new LatencyHistogram();
+    histogram = histograms.putIfAbsent(key, created);
+    if (histogram != null) {
+      return histogram;
+    }
+    stageListeners.forEach(listener -> listener.accept(key, created));
+    return created;
+  }
+
+  /**
+   * Calls the listener for every existing histogram and for each one created later, e.g. to
+   * publish them to a metrics registry.
+   */
+  public void onStage(BiConsumer<StageKey, LatencyHistogram> listener) {
+    stageListeners.add(listener);
+    histograms.forEach(listener);
+  }
+
+  /**
+   * @return summaries of all stages seen so far, ordered by stage, model and prompt type
+   */
+  public List<StageLatency> snapshot() {
+    return histograms.entrySet().stream()
+        .map(entry -> new StageLatency(entry.getKey(), entry.getValue().summary()))
+        .sorted(
+            Comparator.comparing((StageLatency latency) -> latency.key().stage())
+                .thenComparing(latency -> latency.key().model())
+                .thenComparing(latency -> latency.key().promptType()))
+        .toList();
+  }
+
+  @Override
+  public void start() {
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    logSummary();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public int getPhase() {
+    return ShutdownPhase.METRICS;
+  }
+
+  public void logSummary() {
+    if (!log.isInfoEnabled()) {
+      return;
+    }
+    for (StageLatency latency : snapshot()) {
+      LatencyHistogram.Summary summary = latency.summary();
+      log.info(
+          "{} [{}, {}]: n={}, p50={}ms, p95={}ms, p99={}ms, max={}ms",
+          latency.key().stage(),
+          latency.key().model(),
+          latency.key().promptType(),
+          summary.count(),
+          summary.p50().toMillis(),
+          summary.p95().toMillis(),
+          summary.p99().toMillis(),
+          summary.max().toMillis());
+    }
+  }
+}
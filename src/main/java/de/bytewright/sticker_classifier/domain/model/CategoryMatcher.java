@@ -0,0 +1,99 @@
+package de.bytewright.sticker_classifier.domain.model;
+
+import java.util.*;
+
+/**
+ * Resolves detected tags to category names of a session. Compiled once per session: categories
+ * are looked up by lower case name, compound categories by a bit set of their member categories,
+ * so resolving a result only costs a lookup per tag. Tags without exact match are passed through a
+ * {@link TagNormalizer} to tolerate spelling variants like "brown_bear" or plurals.
+ */
+public final class CategoryMatcher {
+  private final Map<String, List<IndexedCategory>> categoriesByLowerName;
+  private final Map<BitSet, List<String>> compoundNamesByKey;
+  private final TagNormalizer tagNormalizer;
+
+  private CategoryMatcher(
+      Map<String, List<IndexedCategory>> categoriesByLowerName,
+      Map<BitSet, List<String>> compoundNamesByKey,
+      TagNormalizer tagNormalizer) {
+    this.categoriesByLowerName = categoriesByLowerName;
+    this.compoundNamesByKey = compoundNamesByKey;
+    this.tagNormalizer = tagNormalizer;
+  }
+
+  public static CategoryMatcher compile(
+      List<ClassificationCategory> categories,
+      List<CompoundClassificationCategory> compoundCategories) {
+    Map<ClassificationCategory, Integer> bitByCategory = new HashMap<>();
+    Map<String, List<IndexedCategory>> categoriesByLowerName = new HashMap<>();
+    List<ClassificationCategory> byPriority =
+        categories.stream().sorted(Comparator.comparing(ClassificationCategory::priority)).toList();
+    for (ClassificationCategory category : byPriority) {
+      int bit = bitByCategory.size();
+      bitByCategory.putIfAbsent(category, bit);
+      categoriesByLowerName
+          .computeIfAbsent(category.name().toLowerCase(), name -> new ArrayList<>())
+          .add(new IndexedCategory(category.name(), bitByCategory.get(category)));
+    }
+
+    Map<BitSet, List<String>> compoundNamesByKey = new HashMap<>();
+    for (CompoundClassificationCategory compound : compoundCategories) {
+      BitSet key = new BitSet(bitByCategory.size());
+      boolean matchable = true;
+      for (ClassificationCategory member : compound.categorySet()) {
+        Integer bit = bitByCategory.get(member);
+        if (bit == null) {
+          // A member that is no category of the session can never be detected
+          matchable = false;
+          break;
+        }
+        key.set(bit);
+      }
+      if (matchable) {
+        compoundNamesByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(compound.name());
+      }
+    }
+    TagNormalizer tagNormalizer =
+        new TagNormalizer(byPriority.stream().map(ClassificationCategory::name).toList());
+    return new CategoryMatcher(categoriesByLowerName, compoundNamesByKey, tagNormalizer);
+  }
+
+  /**
+   * @param detectedTags lower case tags of a classification result
+   * @return names of all matching categories plus compound categories whose members are exactly
+   *     the matched categories, empty if nothing matched
+   */
+  public Set<String> match(Collection<String> detectedTags) {
+    Set<String> names = new LinkedHashSet<>();
+    BitSet found = new BitSet();
+    for (String tag : detectedTags) {
+      List<IndexedCategory> categories = categoriesByLowerName.get(tag);
+      if (categories == null) {
+        categories =
+            tagNormalizer
+                .resolve(tag)
+                .map(name -> categoriesByLowerName.get(name.toLowerCase()))
+                .orElse(null);
+      }
+      if (categories != null) {
+        for (IndexedCategory category : categories) {
+          found.set(category.bit());
+          names.add(category.name());
+        }
+      }
+    }
+    List<String> compoundNames = compoundNamesByKey.get(found);
+    if (compoundNames != null) {
+      names.addAll(compoundNames);
+    }
+    return names;
+  }
+
+  /** Hit ratio of the alias table used for tags without exact match */
+  public double tagAliasCacheHitRatio() {
+    return tagNormalizer.aliasCacheHitRatio();
+  }
+
+  private record IndexedCategory(String name, int bit) {}
+}
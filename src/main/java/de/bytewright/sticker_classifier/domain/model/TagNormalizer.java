@@ -0,0 +1,180 @@
+package de.bytewright.sticker_classifier.domain.model;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Maps free-form tags of the model to category names that differ only in spelling. A tag is
+ * reduced to a normalized key (lower case, separators unified, simple plurals singularized), then
+ * looked up by key, by its set of tokens and by its separator-free form. Remaining tags are
+ * compared by edit distance, a match is only accepted if it is unambiguous. Resolved tags are
+ * remembered in an alias table, so every distinct tag is resolved only once per session.
+ */
+public final class TagNormalizer {
+  private static final int MAX_LEARNED_ALIASES = 10_000;
+  private static final String NO_MATCH = "";
+
+  private final Map<String, String> namesByKey = new HashMap<>();
+  private final Map<String, String> namesByTokenSet = new HashMap<>();
+  private final Map<String, String> namesByCompactKey = new HashMap<>();
+  private final List<String> keys = new ArrayList<>();
+  private final Map<String, String> learnedAliases = new ConcurrentHashMap<>();
+  private final LongAdder aliasHits = new LongAdder();
+  private final LongAdder aliasMisses = new LongAdder();
+
+  /**
+   * @param names category names in order of preference, names sharing a key resolve to the first
+   */
+  public TagNormalizer(Collection<String> names) {
+    for (String name : names) {
+      String key = normalize(name);
+      if (key.isEmpty()) {
+        continue;
+      }
+      if (namesByKey.putIfAbsent(key, name) == null) {
+        keys.add(key);
+      }
+      namesByTokenSet.putIfAbsent(tokenSetKey(key), name);
+      namesByCompactKey.putIfAbsent(compactKey(key), name);
+    }
+  }
+
+  /**
+   * @return the category name the tag refers to, empty if there is none or it is ambiguous
+   */
+  public Optional<String> resolve(String tag) {
+    String known = learnedAliases.get(tag);
+    if (known == null) {
+      aliasMisses.increment();
+      known = lookup(tag);
+      if (learnedAliases.size() < MAX_LEARNED_ALIASES) {
+        learnedAliases.put(tag, known);
+      }
+    } else {
+      aliasHits.increment();
+    }
+    return known.equals(NO_MATCH) ? Optional.empty() : Optional.of(known);
+  }
+
+  /**
+   * @return share of resolved tags answered from the alias table, 0 before the first tag
+   */
+  public double aliasCacheHitRatio() {
+    long hits = aliasHits.sum();
+    long total = hits + aliasMisses.sum();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  private String lookup(String tag) {
+    String key = normalize(tag);
+    if (key.isEmpty()) {
+      return NO_MATCH;
+    }
+    String name = namesByKey.get(key);
+    if (name == null) {
+      name = namesByTokenSet.get(tokenSetKey(key));
+    }
+    if (name == null) {
+      name = namesByCompactKey.get(compactKey(key));
+    }
+    if (name == null) {
+      name = closestByEditDistance(key);
+    }
+    return name == null ? NO_MATCH : name;
+  }
+
+  private String closestByEditDistance(String key) {
+    int maxDistance = key.length() <= 4 ? 0 : key.length() <= 8 ? 1 : 2;
+    if (maxDistance == 0) {
+      return null;
+    }
+    String best = null;
+    int bestDistance = maxDistance + 1;
+    boolean ambiguous = false;
+    for (String candidate : keys) {
+      if (Math.abs(candidate.length() - key.length()) > maxDistance) {
+        continue;
+      }
+      int distance = editDistance(key, candidate, maxDistance);
+      if (distance > maxDistance) {
+        continue;
+      }
+      if (distance < bestDistance) {
+        best = candidate;
+        bestDistance = distance;
+        ambiguous = false;
+      } else if (distance == bestDistance) {
+        ambiguous = true;
+      }
+    }
+    return best == null || ambiguous ? null : namesByKey.get(best);
+  }
+
+  /** Lower case words separated by a single space, plural suffixes removed */
+  static String normalize(String value) {
+    StringBuilder key = new StringBuilder(value.length());
+    for (String token : value.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+      if (!token.isEmpty()) {
+        if (!key.isEmpty()) {
+          key.append(' ');
+        }
+        key.append(singularize(token));
+      }
+    }
+    return key.toString();
+  }
+
+  private static String singularize(String token) {
+    if (token.length() > 4 && token.endsWith("ies")) {
+      return token.substring(0, token.length() - 3) + "y";
+    }
+    if (token.length() > 4
+        && (token.endsWith("ses")
+            || token.endsWith("xes")
+            || token.endsWith("ches")
+            || token.endsWith("shes"))) {
+      return token.substring(0, token.length() - 2);
+    }
+    if (token.length() > 3 && token.endsWith("s") && !token.endsWith("ss")) {
+      return token.substring(0, token.length() - 1);
+    }
+    return token;
+  }
+
+  private static String tokenSetKey(String key) {
+    return String.join(" ", new TreeSet<>(Arrays.asList(key.split(" "))));
+  }
+
+  private static String compactKey(String key) {
+    return key.replace(" ", "");
+  }
+
+  /**
+   * Levenshtein distance with a single row, gives up once the distance exceeds the limit.
+   *
+   * @return the distance, or {@code limit + 1} if it is larger than the limit
+   */
+  static int editDistance(String a, String b, int limit) {
+    int[] row = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++) {
+      row[j] = j;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      int diagonal = row[0];
+      row[0] = i;
+      int rowMinimum = row[0];
+      for (int j = 1; j <= b.length(); j++) {
+        int above = row[j];
+        int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+        row[j] = Math.min(Math.min(row[j - 1] + 1, above + 1), diagonal + cost);
+        diagonal = above;
+        rowMinimum = Math.min(rowMinimum, row[j]);
+      }
+      if (rowMinimum > limit) {
+        return limit + 1;
+      }
+    }
+    return Math.min(row[b.length()], limit + 1);
+  }
+}
@@ -0,0 +1,8 @@
+package de.bytewright.sticker_classifier.domain.session;
+
+/**
+ * Counters of a session, cheap enough to be read every second. A request is finished once it has
+ * a result or was given up as failed.
+ */
+public record SessionProgress(
+    ProcessingState state, long requestCount, long resultCount, long failedCount) {}
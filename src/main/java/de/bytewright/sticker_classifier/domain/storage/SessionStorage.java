@@ -1,12 +1,16 @@
 package de.bytewright.sticker_classifier.domain.storage;
 
 import de.bytewright.sticker_classifier.domain.llm.PromptRequest;
+import de.bytewright.sticker_classifier.domain.model.CategoryMatcher;
 import de.bytewright.sticker_classifier.domain.model.ClassificationCategory;
 import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
 import de.bytewright.sticker_classifier.domain.model.CompoundClassificationCategory;
 import de.bytewright.sticker_classifier.domain.session.ProcessingState;
+import de.bytewright.sticker_classifier.domain.session.SessionProgress;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface SessionStorage {
@@ -18,6 +22,8 @@ public interface SessionStorage {
 
   void updateState(UUID sessionId, ProcessingState processingState);
 
+  SessionProgress getProgress(UUID sessionId);
+
   Path getWorkDir(UUID sessionId);
 
   Path getResultRootDir(UUID sessionId);
@@ -26,7 +32,22 @@ public interface SessionStorage {
 
   List<CompoundClassificationCategory> getCompoundCategories(UUID sessionId);
 
-  void storeResult(UUID sessionId, ClassificationResult result);
+  /** Matcher compiled from the categories of the session when it was created */
+  CategoryMatcher getCategoryMatcher(UUID sessionId);
+
+  void storeResult(UUID sessionId, Path imagePath, ClassificationResult result);
+
+  /** Finishes the request of an image without a result, e.g. once it ran out of retries */
+  void storeFailure(UUID sessionId, Path imagePath);
 
   void addRequest(UUID sessionId, PromptRequest request);
+
+  /** A session for these directories that has not completed yet, e.g. after a crash */
+  Optional<UUID> findUnfinishedSession(Path workDirectory, Path outputDirectory);
+
+  /** Images of all requests added to the session */
+  Collection<Path> getRequestedImagePaths(UUID sessionId);
+
+  /** Images of requests that have neither a stored result nor failed yet */
+  Collection<Path> getPendingImagePaths(UUID sessionId);
 }
@@ -3,12 +3,10 @@ package de.bytewright.sticker_classifier.orchestration;
 import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig;
 import de.bytewright.sticker_classifier.domain.llm.*;
 import de.bytewright.sticker_classifier.domain.llm.utils.LanguageCodeCleanerService;
-import de.bytewright.sticker_classifier.domain.model.ClassificationCategory;
+import de.bytewright.sticker_classifier.domain.metrics.PipelineStage;
+import de.bytewright.sticker_classifier.domain.metrics.StageMetrics;
 import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
-import de.bytewright.sticker_classifier.domain.model.CompoundClassificationCategory;
 import de.bytewright.sticker_classifier.domain.storage.SessionStorage;
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import lombok.RequiredArgsConstructor;
@@ -22,6 +20,8 @@ public class ClassificationResultProcessor implements PromptResultConsumer {
   private final SessionStorage sessionStorage;
   private final LanguageCodeCleanerService languageCodeCleanerService;
   private final AppOrchestrationConfig appOrchestrationConfig;
+  private final FileOutputStage fileOutputStage;
+  private final StageMetrics stageMetrics;
 
   @Override
   public boolean processPromtResult(PromptType promtType, PromptResult promptResult) {
@@ -29,7 +29,20 @@ public class ClassificationResultProcessor implements PromptResultConsumer {
       case ClassificationPromptResult classificationPromptResult ->
           processClassificationResult(classificationPromptResult);
       case StringPromptResult stringPromptResult -> false;
-      case ErrorPromptResult errorPromptResult -> false;
+      case ErrorPromptResult errorPromptResult -> processFailure(errorPromptResult.request());
+    };
+  }
+
+  // The coordinator already moved the image to the error directory, the session only counts it
+  private boolean processFailure(PromptRequest request) {
+    return switch (request) {
+      case PromptRetry promptRetry -> processFailure(promptRetry.delegate());
+      case PromptRequestWithImage requestWithImage -> {
+        sessionStorage.storeFailure(
+            requestWithImage.requestParameter(), requestWithImage.imagePath());
+        yield true;
+      }
+      case PromptRequestUnstructured unstructured -> false;
     };
   }
 
@@ -37,9 +50,16 @@ public class ClassificationResultProcessor implements PromptResultConsumer {
       ClassificationPromptResult classificationPromptResult) {
     PromptRequestWithImage request = (PromptRequestWithImage) classificationPromptResult.request();
     ClassificationResult result = classificationPromptResult.getClassificationResult();
-    sessionStorage.storeResult(request.requestParameter(), result);
-    if (result != null) {
-      return actOnClassification(request, result);
+    if (result == null) {
+      sessionStorage.storeResult(request.requestParameter(), request.imagePath(), null);
+    } else {
+      long start = System.nanoTime();
+      try {
+        return actOnClassification(request, result);
+      } finally {
+        stageMetrics.recordSince(
+            PipelineStage.RESULT_PROCESSING, StageMetrics.NO_MODEL, request.promptType(), start);
+      }
     }
     return false;
   }
@@ -56,61 +76,31 @@ public class ClassificationResultProcessor implements PromptResultConsumer {
                 result.getEmoji(),
                 languageCodeCleanerService.sanitizeForFilename(result.getKeyword()),
                 name);
-    Set<String> categoryNamesFromTags = getCategoryNamesFromTags(request, result);
-    for (String categoryNameFromTag : categoryNamesFromTags) {
-      Path dir = resultRootDir.resolve(categoryNameFromTag);
-      Path outPath = dir.resolve(targetFileName);
-      try {
-        log.debug("Moving '{}' to: {}", name, outPath);
-        copyFile(orgPath, outPath);
-      } catch (IOException e) {
-        log.error("Error while copying {}", orgPath, e);
-      }
-    }
+    List<Path> targets =
+        getCategoryNamesFromTags(request, result).stream()
+            .map(categoryName -> resultRootDir.resolve(categoryName).resolve(targetFileName))
+            .toList();
+    Path processedTarget = null;
     if (appOrchestrationConfig.getClassification().isRemoveOriginalFile()) {
-      try {
-        String orgDirName = orgPath.getParent().toFile().getName();
-        Path processingFinishedDir =
-            orgPath.getParent().getParent().resolve(orgDirName + "_processed");
-        Files.createDirectories(processingFinishedDir);
-        Path moveTarget = processingFinishedDir.resolve(orgPath.toFile().getName());
-        Files.move(orgPath, moveTarget);
-      } catch (IOException e) {
-        log.error("Error while removing {}", orgPath, e);
-      }
+      String orgDirName = orgPath.getParent().toFile().getName();
+      Path processingFinishedDir =
+          orgPath.getParent().getParent().resolve(orgDirName + "_processed");
+      processedTarget = processingFinishedDir.resolve(orgPath.toFile().getName());
     }
+    // Journal the result only once its files are in place, so a crash in between redoes the image
+    Runnable storeResult =
+        () -> sessionStorage.storeResult(request.requestParameter(), request.imagePath(), result);
+    fileOutputStage.submit(
+        new FileOutputStage.OutputJob(orgPath, targets, processedTarget, storeResult));
     return true;
   }
 
-  private void copyFile(Path orgPath, Path outPath) throws IOException {
-    Files.createDirectories(outPath.getParent());
-    if (!Files.isRegularFile(outPath)) {
-      Files.copy(orgPath, outPath);
-    } else {
-      log.info("Skipping copy of file because it already exists! {}", outPath);
-    }
-  }
-
   private Set<String> getCategoryNamesFromTags(
       PromptRequestWithImage request, ClassificationResult result) {
-    Set<String> nameStrings = new HashSet<>();
-    List<ClassificationCategory> classificationCategories =
-        sessionStorage.getClassificationCategories(request.requestParameter()).stream()
-            .sorted(Comparator.comparing(ClassificationCategory::priority))
-            .toList();
-    Set<ClassificationCategory> foundCategories = new HashSet<>();
-    for (ClassificationCategory category : classificationCategories) {
-      if (result.getDetectedTags().contains(category.name().toLowerCase())) {
-        foundCategories.add(category);
-        nameStrings.add(category.name());
-      }
-    }
-    List<CompoundClassificationCategory> compoundCategories =
-        sessionStorage.getCompoundCategories(request.requestParameter());
-    compoundCategories.stream()
-        .filter(ccc -> ccc.categorySet().equals(foundCategories))
-        .map(CompoundClassificationCategory::name)
-        .forEach(nameStrings::add);
+    Set<String> nameStrings =
+        sessionStorage
+            .getCategoryMatcher(request.requestParameter())
+            .match(result.getDetectedTags());
     if (nameStrings.isEmpty()) {
       nameStrings.add("other");
     }
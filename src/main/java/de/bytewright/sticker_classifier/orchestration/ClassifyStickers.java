@@ -1,15 +1,19 @@
 package de.bytewright.sticker_classifier.orchestration;
 
+import de.bytewright.sticker_classifier.domain.event.ClassificationSessionStartedEvent;
 import de.bytewright.sticker_classifier.domain.event.ConfigurationLoadedEvent;
 import de.bytewright.sticker_classifier.domain.llm.*;
 import de.bytewright.sticker_classifier.domain.model.ClassificationCategory;
 import de.bytewright.sticker_classifier.domain.session.ProcessingState;
 import de.bytewright.sticker_classifier.domain.storage.SessionStorage;
 import de.bytewright.sticker_classifier.orchestration.llm.PromptRequestCoordinator;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
@@ -20,6 +24,7 @@ public class ClassifyStickers {
   private final SessionStorage sessionStorage;
   private final PromptRequestCoordinator coordinator;
   private final FileDiscovery fileDiscovery;
+  private final ApplicationEventPublisher eventPublisher;
   private ConfigurationLoadedEvent currentConfig;
 
   @EventListener
@@ -28,13 +33,26 @@ public class ClassifyStickers {
     log.info("Work directory: {}", event.workDirectory());
     log.info("Output directory: {}", event.outputDirectory());
     log.info("Classifications: {}", event.classifications().size());
+    this.currentConfig = event;
+    Optional<UUID> unfinishedSession =
+        sessionStorage.findUnfinishedSession(event.workDirectory(), event.outputDirectory());
+    if (unfinishedSession.isPresent()) {
+      UUID sessionId = unfinishedSession.get();
+      // Requests are only complete once discovery has finished, otherwise discover again
+      if (sessionStorage.getProgress(sessionId).state() == ProcessingState.CLASSIFYING) {
+        resumeProcessing(sessionId);
+      } else {
+        log.info("Session {} was interrupted before classification, discovering again", sessionId);
+        startProcessing(sessionId);
+      }
+      return;
+    }
     UUID sessionId =
         sessionStorage.createSession(
             event.classifications(),
             event.compoundCategories(),
             event.workDirectory(),
             event.outputDirectory());
-    this.currentConfig = event;
     startProcessing(sessionId);
   }
 
@@ -46,28 +64,121 @@ public class ClassifyStickers {
       Collection<Path> fileMetadata = fileDiscovery.discoverUniqueFiles(sessionId);
       // Phase 3: Classification
       sessionStorage.updateState(sessionId, ProcessingState.CLASSIFYING);
-      classifyFiles(sessionId, fileMetadata);
+      if (classifyDiscoveredFiles(sessionId, fileMetadata) == 0) {
+        sessionStorage.updateState(sessionId, ProcessingState.COMPLETED);
+      }
+      eventPublisher.publishEvent(
+          new ClassificationSessionStartedEvent(sessionId, sessionStorage.getWorkDir(sessionId)));
     } catch (Exception e) {
       log.error("Error during processing", e);
       sessionStorage.updateState(sessionId, ProcessingState.FAILED);
     }
   }
 
+  /** Schedules the requests of an interrupted session that have no result yet */
+  private void resumeProcessing(UUID sessionId) {
+    Collection<Path> pending = sessionStorage.getPendingImagePaths(sessionId);
+    List<Path> existing = pending.stream().filter(Files::isRegularFile).toList();
+    log.info(
+        "Resuming session {}: {} of {} pending files still exist",
+        sessionId,
+        existing.size(),
+        pending.size());
+    failUnavailable(sessionId, pending, new HashSet<>(existing));
+    fileDiscovery.registerKnownFiles(sessionId, sessionStorage.getRequestedImagePaths(sessionId));
+    if (existing.isEmpty()) {
+      sessionStorage.updateState(sessionId, ProcessingState.COMPLETED);
+    } else {
+      sessionStorage.updateState(sessionId, ProcessingState.CLASSIFYING);
+      buildRequests(sessionId, existing).forEach(coordinator::schedule);
+    }
+    eventPublisher.publishEvent(
+        new ClassificationSessionStartedEvent(sessionId, sessionStorage.getWorkDir(sessionId)));
+  }
+
+  /** Classifies files that appeared in the work directory after the initial discovery */
+  public void ingestNewFiles(UUID sessionId, Collection<Path> candidates) {
+    try {
+      Collection<Path> newFiles = fileDiscovery.discoverNewFiles(sessionId, candidates);
+      if (newFiles.isEmpty()) {
+        return;
+      }
+      sessionStorage.updateState(sessionId, ProcessingState.CLASSIFYING);
+      classifyFiles(sessionId, newFiles);
+    } catch (IOException e) {
+      log.error("Error while ingesting {} new files", candidates.size(), e);
+    }
+  }
+
+  /**
+   * Schedules discovered files that have no result yet. A session discovered again after an
+   * interruption keeps the results of its earlier run and its requests are not added twice.
+   *
+   * @return number of scheduled requests
+   */
+  private int classifyDiscoveredFiles(UUID sessionId, Collection<Path> filePaths) {
+    Set<Path> requested = new HashSet<>(sessionStorage.getRequestedImagePaths(sessionId));
+    if (requested.isEmpty()) {
+      classifyFiles(sessionId, filePaths);
+      return filePaths.size();
+    }
+    Set<Path> pending = new HashSet<>(sessionStorage.getPendingImagePaths(sessionId));
+    failUnavailable(sessionId, pending, new HashSet<>(filePaths));
+    List<Path> unclassified =
+        filePaths.stream()
+            .filter(path -> !requested.contains(path) || pending.contains(path))
+            .toList();
+    log.info(
+        "Phase 2: Classifying {} of {} unique files, the others have a result already",
+        unclassified.size(),
+        filePaths.size());
+    List<PromptRequestWithImage> requests = buildRequests(sessionId, unclassified);
+    requests.stream()
+        .filter(request -> !requested.contains(request.imagePath()))
+        .forEach(request -> sessionStorage.addRequest(sessionId, request));
+    requests.forEach(coordinator::schedule);
+    return requests.size();
+  }
+
+  /**
+   * Finishes pending requests whose image can not be scheduled again. The output stage moves the
+   * source to {@code _processed} before the result is stored, a crash in between leaves the request
+   * pending without its file. Those requests fail, otherwise the session never completes.
+   */
+  private void failUnavailable(UUID sessionId, Collection<Path> pending, Set<Path> available) {
+    List<Path> unavailable = pending.stream().filter(path -> !available.contains(path)).toList();
+    if (unavailable.isEmpty()) {
+      return;
+    }
+    log.warn(
+        "{} pending files of session {} are gone, their requests are counted as failed",
+        unavailable.size(),
+        sessionId);
+    unavailable.forEach(path -> sessionStorage.storeFailure(sessionId, path));
+  }
+
   private void classifyFiles(UUID sessionId, Collection<Path> filePaths) {
     log.info("Phase 2: Classifying {} unique files", filePaths.size());
 
+    List<PromptRequestWithImage> requests = buildRequests(sessionId, filePaths);
+    // Register all requests before scheduling, so early results can not complete the session
+    requests.forEach(request -> sessionStorage.addRequest(sessionId, request));
+    requests.forEach(coordinator::schedule);
+  }
+
+  private List<PromptRequestWithImage> buildRequests(UUID sessionId, Collection<Path> filePaths) {
     String classificationPrompt = buildClassificationPrompt();
+    List<PromptRequestWithImage> requests = new ArrayList<>(filePaths.size());
     for (Path filePath : filePaths) {
-      PromptRequestWithImage request =
+      requests.add(
           PromptRequestWithImage.builder()
               .imagePath(filePath)
               .prompt(classificationPrompt)
               .promptType(PromptType.STICKER_CLASSIFICATION)
               .requestParameter(sessionId)
-              .build();
-      coordinator.schedule(request);
-      sessionStorage.addRequest(sessionId, request);
+              .build());
     }
+    return requests;
   }
 
   private String buildClassificationPrompt() {
@@ -10,7 +10,8 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -19,41 +20,66 @@ import org.springframework.stereotype.Service;
 @Service
 @RequiredArgsConstructor
 public class FileDiscovery {
+  // Walking and hashing is IO bound, especially on network shares
+  private static final int DISCOVERY_THREADS =
+      Math.max(4, Runtime.getRuntime().availableProcessors());
   private final SessionStorage sessionStorage;
   private final ImageValidationService imageService;
   private final AppOrchestrationConfig appOrchestrationConfig;
+  private final ConcurrentMap<UUID, SessionFiles> filesBySession = new ConcurrentHashMap<>();
 
   public Collection<Path> discoverUniqueFiles(UUID sessionId) throws IOException {
     Path workDir = sessionStorage.getWorkDir(sessionId);
     log.info("Phase 1: Discovering files in {}", workDir);
 
-    List<Path> allFiles = getAllImageFiles(workDir);
-    int totalFileCount = allFiles.size();
-    log.info("Found {} PNG files", totalFileCount);
-    Set<DuplicateMetaInfo> duplicates = new HashSet<>();
-    Map<String, ClassifyStickers.FileMetadata> filesByHash = new ConcurrentHashMap<>();
-    // Calculate hashes and deduplicate
-    for (Path filePath : allFiles) {
-      try {
-        String hash = calculateFileHash(filePath);
-        long size = Files.size(filePath);
+    // Files are hashed by the walker threads while the walk is still running
+    DeduplicationRun run = new DeduplicationRun(getSessionFiles(sessionId));
+    long fileCount =
+        ParallelFileWalker.walk(workDir, DISCOVERY_THREADS, this::isPngFile, run::add);
+    log.info("Found {} PNG files", fileCount);
+    return finish(run, fileCount);
+  }
 
-        if (filesByHash.containsKey(hash)) {
-          ClassifyStickers.FileMetadata existing = filesByHash.get(hash);
-          log.debug("Duplicate found: {} (original: {})", filePath, existing.originalPath());
-          duplicates.add(new DuplicateMetaInfo(existing.originalPath(), filePath));
-        } else {
-          ClassifyStickers.FileMetadata metadata =
-              new ClassifyStickers.FileMetadata(filePath, hash, size);
-          filesByHash.put(hash, metadata);
-        }
-      } catch (Exception e) {
-        log.error("Error processing file {}", filePath, e);
-      }
+  /**
+   * Incremental discovery for files that showed up after the initial run. Files already seen in
+   * this session are skipped, new files are deduplicated against every file hashed so far.
+   */
+  public Collection<Path> discoverNewFiles(UUID sessionId, Collection<Path> candidates)
+      throws IOException {
+    SessionFiles sessionFiles = getSessionFiles(sessionId);
+    List<Path> newFiles =
+        candidates.stream().filter(path -> !sessionFiles.knownPaths().contains(path)).toList();
+    if (newFiles.isEmpty()) {
+      return List.of();
     }
+    log.info("Discovered {} new PNG files", newFiles.size());
+    DeduplicationRun run = new DeduplicationRun(sessionFiles);
+    newFiles.forEach(run::add);
+    return finish(run, newFiles.size());
+  }
+
+  /** Marks files handled by an earlier run of a resumed session, they are not discovered again */
+  public void registerKnownFiles(UUID sessionId, Collection<Path> paths) {
+    getSessionFiles(sessionId).knownPaths().addAll(paths);
+  }
+
+  /** @return true if the file was already handled by a discovery run of this session */
+  public boolean isKnownFile(UUID sessionId, Path path) {
+    return getSessionFiles(sessionId).knownPaths().contains(path);
+  }
 
+  private SessionFiles getSessionFiles(UUID sessionId) {
+    return filesBySession.computeIfAbsent(
+        sessionId,
+        id -> new SessionFiles(new ConcurrentHashMap<>(), ConcurrentHashMap.newKeySet()));
+  }
+
+  private Collection<Path> finish(DeduplicationRun run, long totalFileCount) throws IOException {
+    Map<String, ClassifyStickers.FileMetadata> filesByHash = new LinkedHashMap<>();
+    List<DuplicateMetaInfo> duplicates = new ArrayList<>();
+    run.deduplicate(filesByHash, duplicates);
     int uniqueFiles = filesByHash.size();
-    int duplicateFiles = totalFileCount - uniqueFiles;
+    long duplicateFiles = totalFileCount - uniqueFiles;
     log.info("Deduplication complete: {} unique files, {} duplicates", uniqueFiles, duplicateFiles);
     if (appOrchestrationConfig.getClassification().isRemoveDuplicates()) {
       try {
@@ -81,18 +107,12 @@ public class FileDiscovery {
     return paths;
   }
 
-  private List<Path> getAllImageFiles(Path path) throws IOException {
-    try (Stream<Path> paths = Files.walk(path)) {
-      return paths.filter(Files::isRegularFile).filter(this::isPngFile).toList();
-    }
-  }
-
   private boolean isPngFile(Path path) {
     String fileName = path.getFileName().toString().toLowerCase();
     return fileName.endsWith(".png");
   }
 
-  private String calculateFileHash(Path file) throws IOException, NoSuchAlgorithmException {
+  static String calculateFileHash(Path file) throws IOException, NoSuchAlgorithmException {
     MessageDigest digest = MessageDigest.getInstance("SHA-256");
     byte[] fileBytes = Files.readAllBytes(file);
     byte[] hashBytes = digest.digest(fileBytes);
@@ -107,4 +127,46 @@ public class FileDiscovery {
   }
 
   private record DuplicateMetaInfo(Path original, Path duplicate) {}
+
+  private record SessionFiles(Map<String, Path> pathsByHash, Set<Path> knownPaths) {}
+
+  /**
+   * Hashes the files of one discovery run, {@link #add} is thread safe. Files are deduplicated once
+   * all are hashed, in path order, so the same file of a set of copies is kept whatever order the
+   * walker threads found them in.
+   */
+  private record DeduplicationRun(
+      SessionFiles sessionFiles, Queue<ClassifyStickers.FileMetadata> hashedFiles) {
+    DeduplicationRun(SessionFiles sessionFiles) {
+      this(sessionFiles, new ConcurrentLinkedQueue<>());
+    }
+
+    void add(Path filePath) {
+      try {
+        String hash = calculateFileHash(filePath);
+        long size = Files.size(filePath);
+        sessionFiles.knownPaths().add(filePath);
+        hashedFiles.add(new ClassifyStickers.FileMetadata(filePath, hash, size));
+      } catch (Exception e) {
+        log.error("Error processing file {}", filePath, e);
+      }
+    }
+
+    // Deduplicates against files of earlier runs in this session as well
+    void deduplicate(
+        Map<String, ClassifyStickers.FileMetadata> filesByHash,
+        List<DuplicateMetaInfo> duplicates) {
+      List<ClassifyStickers.FileMetadata> sorted = new ArrayList<>(hashedFiles);
+      sorted.sort(Comparator.comparing(ClassifyStickers.FileMetadata::originalPath));
+      for (ClassifyStickers.FileMetadata file : sorted) {
+        Path existing = sessionFiles.pathsByHash().putIfAbsent(file.hash(), file.originalPath());
+        if (existing != null) {
+          log.debug("Duplicate found: {} (original: {})", file.originalPath(), existing);
+          duplicates.add(new DuplicateMetaInfo(existing, file.originalPath()));
+        } else {
+          filesByHash.put(file.hash(), file);
+        }
+      }
+    }
+  }
 }
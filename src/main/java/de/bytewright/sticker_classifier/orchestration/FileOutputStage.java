@@ -0,0 +1,147 @@
+package de.bytewright.sticker_classifier.orchestration;
+
+import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig;
+import de.bytewright.sticker_classifier.domain.ShutdownPhase;
+import de.bytewright.sticker_classifier.orchestration.output.OutputStrategy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+/**
+ * Writes classified files into the result tree on its own bounded pool, so prompt workers can go
+ * back to the model right away. When the queue is full the submitting worker writes the file
+ * itself, which throttles workers instead of piling up jobs. How files are placed into category
+ * directories is up to the configured {@link OutputStrategy}. On shutdown every queued job is
+ * written once the prompt workers have stopped, jobs submitted afterwards are logged and dropped,
+ * their images stay pending in the session.
+ */
+@Slf4j
+@Service
+public class FileOutputStage implements SmartLifecycle {
+  private static final long SHUTDOWN_LOG_INTERVAL_SECONDS = 30;
+
+  private final ThreadPoolExecutor outputPool;
+  private final OutputStrategy outputStrategy;
+  private final Set<Path> createdDirectories = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param source file to place into the result tree
+   * @param targets output paths, one per category
+   * @param processedTarget where the source is moved afterwards, null to keep it in place
+   * @param onWritten runs once the job is done, failed copies are logged and do not stop it
+   */
+  public record OutputJob(
+      Path source, List<Path> targets, Path processedTarget, Runnable onWritten) {}
+
+  @Autowired
+  public FileOutputStage(AppOrchestrationConfig appOrchestrationConfig) {
+    this(
+        appOrchestrationConfig.getOutput().getThreadCount(),
+        appOrchestrationConfig.getOutput().getQueueSize(),
+        OutputStrategy.forMode(appOrchestrationConfig.getOutput().getMode()));
+  }
+
+  FileOutputStage(int threadCount, int queueSize, OutputStrategy outputStrategy) {
+    int threads = Math.max(1, threadCount);
+    this.outputPool =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+            FileOutputStage::runOnCaller);
+    this.outputStrategy = outputStrategy;
+  }
+
+  // Unlike CallerRunsPolicy this does not silently discard jobs once the pool is shut down
+  private static void runOnCaller(Runnable task, ThreadPoolExecutor executor) {
+    if (executor.isShutdown()) {
+      throw new RejectedExecutionException("Output stage is shut down");
+    }
+    task.run();
+  }
+
+  public void submit(OutputJob job) {
+    try {
+      outputPool.execute(() -> write(job));
+    } catch (RejectedExecutionException e) {
+      log.error("Output stage is shut down, {} stays pending for the next run", job.source());
+    }
+  }
+
+  @Override
+  public void start() {}
+
+  /** Writes every queued job before returning, however long that takes */
+  @Override
+  public void stop() {
+    outputPool.shutdown();
+    try {
+      while (!outputPool.awaitTermination(SHUTDOWN_LOG_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+        log.info("Waiting for {} output jobs on shutdown", outputPool.getQueue().size());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      List<Runnable> dropped = outputPool.shutdownNow();
+      log.warn("{} output jobs were dropped, their images stay pending", dropped.size());
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return !outputPool.isShutdown();
+  }
+
+  @Override
+  public int getPhase() {
+    return ShutdownPhase.OUTPUT;
+  }
+
+  private void write(OutputJob job) {
+    // Move first, links placed afterwards must point to the final location of the original
+    Path source = job.source();
+    if (job.processedTarget() != null) {
+      try {
+        ensureDirectory(job.processedTarget().getParent());
+        Files.move(job.source(), job.processedTarget());
+        source = job.processedTarget();
+      } catch (IOException e) {
+        log.error("Error while removing {}", job.source(), e);
+      }
+    }
+    for (Path target : job.targets()) {
+      try {
+        ensureDirectory(target.getParent());
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+          log.info("Skipping copy of file because it already exists! {}", target);
+          continue;
+        }
+        log.debug("Placing '{}' at: {}", source.getFileName(), target);
+        source = outputStrategy.place(source, target);
+      } catch (IOException e) {
+        log.error("Error while copying {}", source, e);
+      }
+    }
+    try {
+      job.onWritten().run();
+    } catch (RuntimeException e) {
+      log.error("Error after writing outputs of {}", job.source(), e);
+    }
+  }
+
+  private void ensureDirectory(Path dir) throws IOException {
+    if (!createdDirectories.contains(dir)) {
+      Files.createDirectories(dir);
+      createdDirectories.add(dir);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package de.bytewright.sticker_classifier.orchestration;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Walks a directory tree with one fork-join task per directory. The file filter only looks at the
+ * name and runs before any attribute is read: entries it rejects are only checked for being a
+ * directory, the attributes of the others are read once. Matching files are handed to the consumer
+ * as soon as they are found so the next stage can start before the walk is complete. The consumer
+ * is called concurrently. Like {@link Files#walk} symbolic links are not followed.
+ */
+@Slf4j
+final class ParallelFileWalker {
+  private ParallelFileWalker() {}
+
+  /**
+   * @param fileFilter decides by the path alone, it is also called for directories
+   * @return number of files passed to the consumer
+   */
+  static long walk(Path root, int parallelism, Predicate<Path> fileFilter, Consumer<Path> consumer)
+      throws IOException {
+    BasicFileAttributes rootAttributes = Files.readAttributes(root, BasicFileAttributes.class);
+    if (!rootAttributes.isDirectory()) {
+      if (rootAttributes.isRegularFile() && fileFilter.test(root)) {
+        consumer.accept(root);
+        return 1;
+      }
+      return 0;
+    }
+    LongAdder fileCount = new LongAdder();
+    try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+      pool.invoke(new DirectoryTask(root, fileFilter, consumer, fileCount));
+    }
+    return fileCount.sum();
+  }
+
+  private static final class DirectoryTask extends RecursiveAction {
+    private final Path dir;
+    private final Predicate<Path> fileFilter;
+    private final Consumer<Path> consumer;
+    private final LongAdder fileCount;
+
+    DirectoryTask(
+        Path dir, Predicate<Path> fileFilter, Consumer<Path> consumer, LongAdder fileCount) {
+      this.dir = dir;
+      this.fileFilter = fileFilter;
+      this.consumer = consumer;
+      this.fileCount = fileCount;
+    }
+
+    @Override
+    protected void compute() {
+      List<DirectoryTask> subDirectories = new ArrayList<>();
+      List<Path> files = new ArrayList<>();
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+        for (Path entry : entries) {
+          if (!fileFilter.test(entry)) {
+            if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+              forkSubDirectory(entry, subDirectories);
+            }
+            continue;
+          }
+          BasicFileAttributes attributes =
+              Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          if (attributes.isDirectory()) {
+            forkSubDirectory(entry, subDirectories);
+          } else if (attributes.isRegularFile()) {
+            files.add(entry);
+          }
+        }
+      } catch (IOException e) {
+        log.warn("Could not list {}, skipping it", dir, e);
+      }
+      for (Path file : files) {
+        consumer.accept(file);
+        fileCount.increment();
+      }
+      for (DirectoryTask task : subDirectories) {
+        task.join();
+      }
+    }
+
+    private void forkSubDirectory(Path subDirectory, List<DirectoryTask> subDirectories) {
+      DirectoryTask task = new DirectoryTask(subDirectory, fileFilter, consumer, fileCount);
+      // Let idle workers steal sub directories while this one processes its files
+      task.fork();
+      subDirectories.add(task);
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package de.bytewright.sticker_classifier.orchestration;
+
+import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig;
+import de.bytewright.sticker_classifier.domain.event.ClassificationSessionStartedEvent;
+import de.bytewright.sticker_classifier.domain.llm.PromptFailure;
+import de.bytewright.sticker_classifier.domain.metrics.LatencyHistogram;
+import de.bytewright.sticker_classifier.domain.metrics.StageMetrics;
+import de.bytewright.sticker_classifier.domain.storage.SessionStorage;
+import de.bytewright.sticker_classifier.orchestration.llm.PromptRequestCoordinator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the state of the prompt pipeline as Micrometer meters. All meters read counters the
+ * pipeline keeps anyway, so scraping adds no work to the hot path.
+ */
+@Component
+@RequiredArgsConstructor
+public class PipelineMetrics implements MeterBinder {
+  private static final Map<String, Function<LatencyHistogram.Summary, Duration>> QUANTILES =
+      Map.of(
+          "0.5", LatencyHistogram.Summary::p50,
+          "0.95", LatencyHistogram.Summary::p95,
+          "0.99", LatencyHistogram.Summary::p99,
+          "1.0", LatencyHistogram.Summary::max);
+
+  private final PromptRequestCoordinator coordinator;
+  private final StatsPromptResultConsumer statsPromptResultConsumer;
+  private final StageMetrics stageMetrics;
+  private final SessionStorage sessionStorage;
+  private final AppOrchestrationConfig appOrchestrationConfig;
+  private volatile UUID activeSessionId;
+
+  @EventListener
+  public void handleSessionStarted(ClassificationSessionStartedEvent event) {
+    activeSessionId = event.sessionId();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder(
+            "sticker.prompt.queue.size",
+            coordinator,
+            c -> c.getQueueSize() - c.getRetryQueueSize())
+        .tag("lane", "new")
+        .description("Prompt requests waiting for a worker")
+        .register(registry);
+    Gauge.builder(
+            "sticker.prompt.queue.size",
+            coordinator,
+            PromptRequestCoordinator::getRetryQueueSize)
+        .tag("lane", "retry")
+        .description("Prompt requests waiting for a worker")
+        .register(registry);
+    Gauge.builder(
+            "sticker.prompt.in.flight", coordinator, PromptRequestCoordinator::getInFlightCount)
+        .description("Prompt requests currently processed by a worker")
+        .register(registry);
+    int workerCount = Math.max(1, appOrchestrationConfig.getPrompts().getWorkerCount());
+    Gauge.builder(
+            "sticker.prompt.worker.utilization",
+            coordinator,
+            c -> (double) c.getInFlightCount() / workerCount)
+        .description("Share of workers busy with a request")
+        .register(registry);
+    FunctionCounter.builder(
+            "sticker.prompt.retries", coordinator, PromptRequestCoordinator::getRetryCount)
+        .description("Failed prompt attempts")
+        .register(registry);
+    FunctionCounter.builder(
+            "sticker.prompt.exhausted", coordinator, PromptRequestCoordinator::getExhaustedCount)
+        .description("Prompt requests given up after their last retry")
+        .register(registry);
+    for (PromptFailure failure : PromptFailure.values()) {
+      FunctionCounter.builder(
+              "sticker.prompt.failures", coordinator, c -> c.getFailureCount(failure))
+          .tag("failure", failure.name().toLowerCase(Locale.ROOT))
+          .description("Failed prompt attempts by cause")
+          .register(registry);
+    }
+    FunctionCounter.builder(
+            "sticker.prompt.results",
+            statsPromptResultConsumer,
+            StatsPromptResultConsumer::getTotalSuccessCount)
+        .tag("outcome", "success")
+        .register(registry);
+    FunctionCounter.builder(
+            "sticker.prompt.results",
+            statsPromptResultConsumer,
+            StatsPromptResultConsumer::getTotalErrorCount)
+        .tag("outcome", "error")
+        .register(registry);
+    Gauge.builder(
+            "sticker.prompt.throughput",
+            statsPromptResultConsumer,
+            StatsPromptResultConsumer::getCurrentThroughput)
+        .description("Results per minute, averaged over 5 minutes")
+        .register(registry);
+    Gauge.builder(
+            "sticker.tags.alias.cache.hit.ratio", this, PipelineMetrics::tagAliasCacheHitRatio)
+        .description("Share of unmatched tags resolved from the alias table of the active session")
+        .register(registry);
+    stageMetrics.onStage((key, histogram) -> bindStage(registry, key, histogram));
+  }
+
+  private void bindStage(
+      MeterRegistry registry, StageMetrics.StageKey key, LatencyHistogram histogram) {
+    QUANTILES.forEach(
+        (quantile, value) ->
+            Gauge.builder(
+                    "sticker.stage.latency", histogram, h -> seconds(value.apply(h.summary())))
+                .tag("stage", key.stage().name())
+                .tag("model", key.model())
+                .tag("promptType", key.promptType().name())
+                .tag("quantile", quantile)
+                .baseUnit("seconds")
+                .register(registry));
+  }
+
+  private double tagAliasCacheHitRatio() {
+    UUID sessionId = activeSessionId;
+    return sessionId == null
+        ? Double.NaN
+        : sessionStorage.getCategoryMatcher(sessionId).tagAliasCacheHitRatio();
+  }
+
+  private static double seconds(Duration duration) {
+    return duration.toNanos() / 1e9;
+  }
+}
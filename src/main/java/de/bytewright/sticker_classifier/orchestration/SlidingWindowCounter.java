@@ -0,0 +1,100 @@
+package de.bytewright.sticker_classifier.orchestration;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts successes and errors in a fixed ring of per second buckets. Recording is lock and
+ * allocation free, a bucket is reset by the first writer of a new second. Writers racing that
+ * reset can lose a count, which is acceptable for throughput statistics. The sums of the completed
+ * seconds of a window are cached until the clock ticks, so reading is only the current bucket on
+ * top of that.
+ */
+final class SlidingWindowCounter {
+  private final int windowSeconds;
+  private final LongSupplier epochSecondClock;
+  private final AtomicLongArray bucketSeconds;
+  private final LongAdder[] successes;
+  private final LongAdder[] errors;
+  // Completed seconds of each queried window size, valid while the clock shows the same second
+  private final Map<Integer, Totals> completedTotals = new ConcurrentHashMap<>();
+
+  SlidingWindowCounter(int windowSeconds) {
+    this(windowSeconds, () -> System.currentTimeMillis() / 1000);
+  }
+
+  SlidingWindowCounter(int windowSeconds, LongSupplier epochSecondClock) {
+    this.windowSeconds = windowSeconds;
+    this.epochSecondClock = epochSecondClock;
+    this.bucketSeconds = new AtomicLongArray(windowSeconds);
+    this.successes = new LongAdder[windowSeconds];
+    this.errors = new LongAdder[windowSeconds];
+    for (int i = 0; i < windowSeconds; i++) {
+      bucketSeconds.set(i, Long.MIN_VALUE);
+      successes[i] = new LongAdder();
+      errors[i] = new LongAdder();
+    }
+  }
+
+  void recordSuccess() {
+    successes[currentBucket()].increment();
+  }
+
+  void recordError() {
+    errors[currentBucket()].increment();
+  }
+
+  private int currentBucket() {
+    long second = epochSecondClock.getAsLong();
+    int index = (int) Math.floorMod(second, (long) windowSeconds);
+    long bucketSecond = bucketSeconds.get(index);
+    if (bucketSecond != second && bucketSeconds.compareAndSet(index, bucketSecond, second)) {
+      successes[index].reset();
+      errors[index].reset();
+    }
+    return index;
+  }
+
+  /**
+   * @param seconds size of the window to sum up, at most the size of the ring
+   */
+  long successes(int seconds) {
+    long now = epochSecondClock.getAsLong();
+    return completedTotals(seconds, now).successes() + current(successes, now);
+  }
+
+  long errors(int seconds) {
+    long now = epochSecondClock.getAsLong();
+    return completedTotals(seconds, now).errors() + current(errors, now);
+  }
+
+  private long current(LongAdder[] counters, long now) {
+    int index = (int) Math.floorMod(now, (long) windowSeconds);
+    return bucketSeconds.get(index) == now ? counters[index].sum() : 0;
+  }
+
+  private Totals completedTotals(int seconds, long now) {
+    int window = Math.min(seconds, windowSeconds);
+    Totals totals = completedTotals.get(window);
+    if (totals != null && totals.second() == now) {
+      return totals;
+    }
+    long successTotal = 0;
+    long errorTotal = 0;
+    for (long second = now - window + 1; second < now; second++) {
+      int index = (int) Math.floorMod(second, (long) windowSeconds);
+      if (bucketSeconds.get(index) == second) {
+        successTotal += successes[index].sum();
+        errorTotal += errors[index].sum();
+      }
+    }
+    totals = new Totals(now, successTotal, errorTotal);
+    completedTotals.put(window, totals);
+    return totals;
+  }
+
+  private record Totals(long second, long successes, long errors) {}
+}
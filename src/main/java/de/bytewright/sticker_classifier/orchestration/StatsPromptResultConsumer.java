@@ -3,8 +3,6 @@ package de.bytewright.sticker_classifier.orchestration;
 import de.bytewright.sticker_classifier.domain.llm.*;
 import de.bytewright.sticker_classifier.orchestration.llm.PromptRequestCoordinator;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicLong;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -17,7 +15,8 @@ public class StatsPromptResultConsumer implements PromptResultConsumer {
   private static final Duration MAX_RESULT_RETENTION = Duration.ofHours(2);
   private final AtomicLong totalSuccessCount = new AtomicLong(0);
   private final AtomicLong totalErrorCount = new AtomicLong(0);
-  private final ConcurrentLinkedDeque<Instant> recentRequests = new ConcurrentLinkedDeque<>();
+  private final SlidingWindowCounter recentRequests =
+      new SlidingWindowCounter((int) MAX_RESULT_RETENTION.toSeconds());
   private final PromptRequestCoordinator coordinator;
 
   @Override
@@ -31,42 +30,34 @@ public class StatsPromptResultConsumer implements PromptResultConsumer {
       case ErrorPromptResult errorPromptResult -> countError(errorPromptResult);
       default -> countSuccess(promptResult);
     }
+    if (!log.isInfoEnabled()) {
+      return false;
+    }
 
     double avgPerMin = getAvgThroughputPerMinute(5);
     double throughputPerHour = getAvgThroughputPerMinute(60);
 
     log.info(
-        "Throughput: {}/min (5min avg), {}/hour | Total: {} success, {} errors | Queue: {}, ETA: {}",
+        "Throughput: {}/min (5min avg), {}/hour | Total: {} success, {} errors | Error rate: {}%"
+            + " (5min) | Queue: {}, ETA: {}",
         String.format("%.2f", avgPerMin),
         String.format("%.0f", throughputPerHour),
         totalSuccessCount.get(),
         totalErrorCount.get(),
+        String.format("%.1f", getErrorRate(5) * 100),
         coordinator.getQueueSize(),
-        formatETA(calculateETA()));
+        formatETA(calculateETA(avgPerMin)));
     return false;
   }
 
   private void countSuccess(PromptResult promptResult) {
     totalSuccessCount.incrementAndGet();
-    recordRequest();
+    recentRequests.recordSuccess();
   }
 
   private void countError(ErrorPromptResult errorPromptResult) {
     totalErrorCount.incrementAndGet();
-    recordRequest();
-  }
-
-  private void recordRequest() {
-    Instant now = Instant.now();
-    recentRequests.addLast(now);
-    cleanupOldRequests(now);
-  }
-
-  private void cleanupOldRequests(Instant now) {
-    Instant cutoff = now.minus(MAX_RESULT_RETENTION);
-    while (!recentRequests.isEmpty() && recentRequests.peekFirst().isBefore(cutoff)) {
-      recentRequests.pollFirst();
-    }
+    recentRequests.recordError();
   }
 
   /**
@@ -76,11 +67,8 @@ public class StatsPromptResultConsumer implements PromptResultConsumer {
    * @return The number of requests in the given timeframe
    */
   public double getThroughputForTimeframe(int minutes) {
-    Instant now = Instant.now();
-    cleanupOldRequests(now);
-    Instant cutoff = now.minusSeconds(minutes * 60L);
-
-    return recentRequests.stream().filter(instant -> instant.isAfter(cutoff)).count();
+    int seconds = minutes * 60;
+    return recentRequests.successes(seconds) + recentRequests.errors(seconds);
   }
 
   /**
@@ -94,18 +82,30 @@ public class StatsPromptResultConsumer implements PromptResultConsumer {
     return count / minutes;
   }
 
+  /**
+   * @param minutes The timeframe in minutes
+   * @return Share of error results in the timeframe, 0 if there were no results
+   */
+  public double getErrorRate(int minutes) {
+    double total = getThroughputForTimeframe(minutes);
+    return total == 0 ? 0 : recentRequests.errors(minutes * 60) / total;
+  }
+
   /**
    * Calculates estimated time to complete remaining queue based on recent throughput.
    *
    * @return Duration until queue completion, or null if cannot be estimated
    */
   public Duration calculateETA() {
+    return calculateETA(getAvgThroughputPerMinute(5));
+  }
+
+  private Duration calculateETA(double throughputPerMinute) {
     int queueSize = coordinator.getQueueSize();
     if (queueSize == 0) {
       return Duration.ZERO;
     }
 
-    double throughputPerMinute = getAvgThroughputPerMinute(5);
     if (throughputPerMinute <= 0.01) {
       return null; // Not enough data or no throughput
     }
@@ -0,0 +1,297 @@
+package de.bytewright.sticker_classifier.orchestration;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig;
+import de.bytewright.sticker_classifier.domain.ShutdownPhase;
+import de.bytewright.sticker_classifier.domain.event.ClassificationSessionStartedEvent;
+import de.bytewright.sticker_classifier.domain.storage.SessionStorage;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Daemon mode: keeps watching the work directory of a session after its initial run. Events of a
+ * file are coalesced until it stayed quiet for the debounce period, then all settled files are
+ * ingested as one batch. A periodic reconciliation scan picks up files whose events were lost,
+ * e.g. on watch service overflow. Watching ends first on shutdown, before the prompt workers are
+ * drained, so no new files are fed into a stopping pipeline.
+ */
+@Slf4j
+@Service
+public class WorkDirectoryWatcher implements SmartLifecycle {
+  private static final Set<String> OUTPUT_DIR_SUFFIXES =
+      Set.of("_processed", "_duplicates", "_error", "_invalid");
+  private static final String BROKEN_IMAGES_DIR = "broken_imgs";
+
+  private final ClassifyStickers classifyStickers;
+  private final FileDiscovery fileDiscovery;
+  private final SessionStorage sessionStorage;
+  private final AppOrchestrationConfig appOrchestrationConfig;
+  private final LongSupplier nanoClock;
+  // file -> nano time of its last event
+  private final Map<Path, Long> pendingFiles = new ConcurrentHashMap<>();
+  private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+  private final Set<Path> registeredDirs = ConcurrentHashMap.newKeySet();
+  private WatchService watchService;
+  private ExecutorService watchLoop;
+  private ScheduledExecutorService scheduler;
+  private UUID sessionId;
+  private Path resultRootDir;
+  private volatile boolean running;
+
+  @Autowired
+  public WorkDirectoryWatcher(
+      ClassifyStickers classifyStickers,
+      FileDiscovery fileDiscovery,
+      SessionStorage sessionStorage,
+      AppOrchestrationConfig appOrchestrationConfig) {
+    this(classifyStickers, fileDiscovery, sessionStorage, appOrchestrationConfig, System::nanoTime);
+  }
+
+  WorkDirectoryWatcher(
+      ClassifyStickers classifyStickers,
+      FileDiscovery fileDiscovery,
+      SessionStorage sessionStorage,
+      AppOrchestrationConfig appOrchestrationConfig,
+      LongSupplier nanoClock) {
+    this.classifyStickers = classifyStickers;
+    this.fileDiscovery = fileDiscovery;
+    this.sessionStorage = sessionStorage;
+    this.appOrchestrationConfig = appOrchestrationConfig;
+    this.nanoClock = nanoClock;
+  }
+
+  @EventListener
+  public synchronized void handleSessionStarted(ClassificationSessionStartedEvent event) {
+    AppOrchestrationConfig.WatchConfig config = appOrchestrationConfig.getWatch();
+    if (!config.isEnabled() || !running) {
+      return;
+    }
+    if (watchService != null) {
+      log.warn("Already watching session {}, ignoring session {}", sessionId, event.sessionId());
+      return;
+    }
+    sessionId = event.sessionId();
+    resultRootDir = sessionStorage.getResultRootDir(sessionId).toAbsolutePath().normalize();
+    try {
+      watchService = event.workDirectory().getFileSystem().newWatchService();
+      registerRecursive(event.workDirectory());
+    } catch (IOException e) {
+      log.error("Could not watch {}, continuous ingestion disabled", event.workDirectory(), e);
+      stopWatching();
+      return;
+    }
+    log.info("Watching {} directories below {}", watchedDirs.size(), event.workDirectory());
+
+    long debounceMillis = Math.max(100, config.getDebounceMillis());
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    scheduler.scheduleWithFixedDelay(
+        () -> flushSettledFiles(debounceMillis),
+        debounceMillis,
+        debounceMillis / 2,
+        TimeUnit.MILLISECONDS);
+    long reconciliationSeconds = config.getReconciliationIntervalSeconds();
+    if (reconciliationSeconds > 0) {
+      scheduler.scheduleWithFixedDelay(
+          () -> reconcile(event.workDirectory()),
+          reconciliationSeconds,
+          reconciliationSeconds,
+          TimeUnit.SECONDS);
+    }
+    watchLoop = Executors.newSingleThreadExecutor();
+    watchLoop.execute(this::processEvents);
+  }
+
+  @Override
+  public void start() {
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    stopWatching();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public int getPhase() {
+    return ShutdownPhase.WATCHER;
+  }
+
+  private synchronized void stopWatching() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+    if (watchLoop != null) {
+      watchLoop.shutdownNow();
+    }
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        log.warn("Could not close watch service", e);
+      }
+    }
+    watchedDirs.clear();
+    registeredDirs.clear();
+    pendingFiles.clear();
+    watchService = null;
+  }
+
+  private void processEvents() {
+    WatchService service = watchService;
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        WatchKey key = service.take();
+        Path dir = watchedDirs.get(key);
+        try {
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+              log.warn("Watch service overflow, scheduling reconciliation scan");
+              scheduler.execute(() -> reconcile(sessionStorage.getWorkDir(sessionId)));
+            } else if (dir != null) {
+              handleEvent(dir.resolve((Path) event.context()), event.kind());
+            }
+          }
+        } catch (RuntimeException e) {
+          // Keep watching, the reconciliation scan picks up files of the dropped events
+          log.error("Error while handling watch events of {}", dir, e);
+        }
+        if (!key.reset() && dir != null) {
+          watchedDirs.remove(key);
+          registeredDirs.remove(dir);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e) {
+      log.debug("Watch service closed");
+    }
+  }
+
+  void handleEvent(Path path, WatchEvent.Kind<?> kind) {
+    if (kind == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+      try {
+        // Files copied together with the directory may exist before the watch is registered
+        registerRecursive(path);
+        enqueueUnknownFiles(path);
+      } catch (IOException e) {
+        log.error("Could not watch new directory {}", path, e);
+      }
+    } else if (isPngFile(path)) {
+      pendingFiles.put(path, nanoClock.getAsLong());
+    }
+  }
+
+  void flushSettledFiles(long debounceMillis) {
+    long settledBefore = nanoClock.getAsLong() - TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+    List<Path> settled = new ArrayList<>();
+    for (Map.Entry<Path, Long> entry : pendingFiles.entrySet()) {
+      // Only remove if no newer event arrived in the meantime
+      if (entry.getValue() - settledBefore < 0
+          && pendingFiles.remove(entry.getKey(), entry.getValue())) {
+        settled.add(entry.getKey());
+      }
+    }
+    List<Path> existing = settled.stream().filter(Files::isRegularFile).toList();
+    if (existing.isEmpty()) {
+      return;
+    }
+    log.info("Ingesting {} new files from watched directories", existing.size());
+    try {
+      classifyStickers.ingestNewFiles(sessionId, existing);
+    } catch (RuntimeException e) {
+      log.error("Error while ingesting new files", e);
+    }
+  }
+
+  void reconcile(Path workDir) {
+    try {
+      registerRecursive(workDir);
+      int pendingBefore = pendingFiles.size();
+      enqueueUnknownFiles(workDir);
+      int missed = pendingFiles.size() - pendingBefore;
+      if (missed > 0) {
+        log.info("Reconciliation scan found {} files without watch events", missed);
+      }
+    } catch (IOException | RuntimeException e) {
+      log.error("Reconciliation scan of {} failed", workDir, e);
+    }
+  }
+
+  private void enqueueUnknownFiles(Path dir) throws IOException {
+    long now = nanoClock.getAsLong();
+    Files.walkFileTree(
+        dir,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs) {
+            return isExcluded(subDir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (attrs.isRegularFile()
+                && isPngFile(file)
+                && !fileDiscovery.isKnownFile(sessionId, file)) {
+              pendingFiles.putIfAbsent(file, now);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            log.debug("Could not visit {}", file, e);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  private void registerRecursive(Path dir) throws IOException {
+    Files.walkFileTree(
+        dir,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs)
+              throws IOException {
+            if (isExcluded(subDir)) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            if (registeredDirs.add(subDir)) {
+              watchedDirs.put(subDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), subDir);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  /** Directories written by the pipeline itself must not be fed back into it */
+  private boolean isExcluded(Path dir) {
+    Path fileName = dir.getFileName();
+    if (fileName == null) {
+      return false;
+    }
+    String name = fileName.toString();
+    return name.equals(BROKEN_IMAGES_DIR)
+        || OUTPUT_DIR_SUFFIXES.stream().anyMatch(name::endsWith)
+        || dir.toAbsolutePath().normalize().startsWith(resultRootDir);
+  }
+
+  private boolean isPngFile(Path path) {
+    return path.getFileName().toString().toLowerCase().endsWith(".png");
+  }
+}
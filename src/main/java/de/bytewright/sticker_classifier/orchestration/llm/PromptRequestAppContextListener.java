@@ -1,25 +1,29 @@
 package de.bytewright.sticker_classifier.orchestration.llm;
 
+import de.bytewright.sticker_classifier.domain.ShutdownPhase;
 import de.bytewright.sticker_classifier.domain.llm.PromptResultConsumer;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.event.ContextClosedEvent;
-import org.springframework.context.event.ContextRefreshedEvent;
-import org.springframework.context.event.EventListener;
 
+/**
+ * Starts the prompt workers with the context and stops them first on shutdown, see {@link
+ * ShutdownPhase}.
+ */
 @Slf4j
 @Configuration
 @RequiredArgsConstructor
-public class PromptRequestAppContextListener {
+public class PromptRequestAppContextListener implements SmartLifecycle {
   private final Set<PromptResultConsumer> resultConsumers;
   private final WorkerFactory workerFactory;
+  private volatile boolean running;
 
-  @EventListener
-  public void onApplicationEvent(ContextRefreshedEvent event) {
+  @Override
+  public void start() {
     log.info("Initializing storyteller worker on application startup");
     List<PromptResultConsumer> sortedConsumers =
         resultConsumers.stream()
@@ -27,11 +31,23 @@ public class PromptRequestAppContextListener {
             .toList();
     workerFactory.getResultConsumers().addAll(sortedConsumers);
     workerFactory.initialize();
+    running = true;
   }
 
-  @EventListener
-  public void onApplicationEvent(ContextClosedEvent event) {
+  @Override
+  public void stop() {
     log.info("Shutting down storyteller worker on application shutdown");
+    running = false;
     workerFactory.shutdown();
   }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public int getPhase() {
+    return ShutdownPhase.WORKERS;
+  }
 }
@@ -1,62 +1,204 @@
 package de.bytewright.sticker_classifier.orchestration.llm;
 
+import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig;
+import de.bytewright.sticker_classifier.domain.event.ImagePromptRequestFailedEvent;
+import de.bytewright.sticker_classifier.domain.llm.PromptFailure;
 import de.bytewright.sticker_classifier.domain.llm.PromptRequest;
+import de.bytewright.sticker_classifier.domain.llm.PromptRequestWithImage;
 import de.bytewright.sticker_classifier.domain.llm.PromptRetry;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+/**
+ * Queues prompt requests for the workers. Failed requests wait in a delay queue until their
+ * backoff has passed and are preferred over new requests once they are due. Requests that run out
+ * of retries take the same route as images rejected by the model: they are moved to the error
+ * directory.
+ */
 @Slf4j
 @Service
-// todo include actuator
-public class PromptRequestCoordinator /*implements HealthIndicator*/ {
+public class PromptRequestCoordinator implements HealthIndicator {
+  /** Queued work without a finished request for this long is reported as stalled */
+  private static final Duration STALL_TIMEOUT = Duration.ofMinutes(5);
+
   private final Queue<PromptRequest> requestQueue = new ConcurrentLinkedQueue<>();
+  private final DelayQueue<DelayedRequest> retryQueue = new DelayQueue<>();
+  // ConcurrentLinkedQueue#size traverses the whole queue
+  private final AtomicInteger queueSize = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder retryCount = new LongAdder();
+  private final LongAdder exhaustedCount = new LongAdder();
+  private final Map<PromptFailure, LongAdder> failureCounts = new EnumMap<>(PromptFailure.class);
+  private final AtomicLong lastProgressNanos = new AtomicLong(System.nanoTime());
+  private final RetryPolicy retryPolicy;
+  private final ApplicationEventPublisher eventPublisher;
+
+  @Autowired
+  public PromptRequestCoordinator(
+      AppOrchestrationConfig appOrchestrationConfig, ApplicationEventPublisher eventPublisher) {
+    this(new RetryPolicy(appOrchestrationConfig.getPrompts().getRetry()), eventPublisher);
+  }
+
+  PromptRequestCoordinator(RetryPolicy retryPolicy, ApplicationEventPublisher eventPublisher) {
+    this.retryPolicy = retryPolicy;
+    this.eventPublisher = eventPublisher;
+    for (PromptFailure failure : PromptFailure.values()) {
+      failureCounts.put(failure, new LongAdder());
+    }
+  }
+
+  private record DelayedRequest(PromptRequest request, long dueNanos) implements Delayed {
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(dueNanos, ((DelayedRequest) other).dueNanos);
+    }
+  }
 
   public void schedule(PromptRequest request) {
     log.debug("Queueing new request of type {}", request.promptType());
     requestQueue.add(request);
+    queueSize.incrementAndGet();
   }
 
-  void reschedule(PromptRequest promptRequest) {
-    if (promptRequest instanceof PromptRetry(int counter, PromptRequest delegate)) {
-      log.warn(
-          "{}. rescheduling attempt for prompt request after exec failed: {}",
-          counter,
-          delegate.promptType());
-      if (counter < 3) {
-        requestQueue.add(new PromptRetry(counter + 1, delegate));
-      } else {
-        throw new IllegalArgumentException(
-            "Failed to get usable result from promptRequest in %d tries! %s"
-                .formatted(counter, delegate));
+  /**
+   * Queues a failed request for another attempt once its backoff has passed.
+   *
+   * @param retryAfter earliest time for another attempt given by the connector, may be null
+   * @return false if the request ran out of retries and was given up
+   */
+  boolean reschedule(PromptRequest promptRequest, PromptFailure failure, Duration retryAfter) {
+    failureCounts.get(failure).increment();
+    if (failure == PromptFailure.CIRCUIT_OPEN) {
+      // The request never reached the model, so this costs no attempt
+      enqueueDelayed(promptRequest, retryPolicy.afterOpenCircuit(retryAfter));
+      return true;
+    }
+    retryCount.increment();
+    PromptRequest delegate = promptRequest;
+    int retry = 1;
+    if (promptRequest instanceof PromptRetry(int counter, PromptRequest retried)) {
+      delegate = retried;
+      retry = counter + 1;
+    }
+    if (!retryPolicy.allowsRetry(failure, retry)) {
+      exhaustedCount.increment();
+      log.error(
+          "Giving up on prompt request of type {} after {} attempts, last failure: {}",
+          delegate.promptType(),
+          retry,
+          failure);
+      if (delegate instanceof PromptRequestWithImage imageRequest
+          && imageRequest.imagePath() != null) {
+        eventPublisher.publishEvent(new ImagePromptRequestFailedEvent(imageRequest.imagePath()));
       }
-    } else {
-      log.warn("Rescheduling prompt request after exec failed: {}", promptRequest.promptType());
-      requestQueue.add(new PromptRetry(1, promptRequest));
+      return false;
+    }
+    Duration delay = retryPolicy.backoff(retry);
+    if (retryAfter != null && retryAfter.compareTo(delay) > 0) {
+      delay = retryAfter;
     }
+    log.warn(
+        "{}. retry of prompt request of type {} after {} in {} ms",
+        retry,
+        delegate.promptType(),
+        failure,
+        delay.toMillis());
+    enqueueDelayed(new PromptRetry(retry, delegate), delay);
+    return true;
+  }
+
+  private void enqueueDelayed(PromptRequest request, Duration delay) {
+    retryQueue.add(new DelayedRequest(request, System.nanoTime() + delay.toNanos()));
+    queueSize.incrementAndGet();
   }
 
   /**
    * Takes the next request from the queue. This method is used by worker threads to get the next
-   * request to process.
+   * request to process, they have to call {@link #requestFinished()} once it is done.
    *
    * @return The next request or Optional#empty if queue is empty
    */
   public Optional<PromptRequest> takeNextRequest() {
-    if (!requestQueue.isEmpty()) {
-      Optional<PromptRequest> promptRequest = Optional.ofNullable(requestQueue.poll());
-      log.info(
-          "Fetched PromptRequest from queue, queue size now {}. Prompt Type: {}",
-          requestQueue.size(),
-          promptRequest.map(PromptRequest::promptType).map(Enum::name).orElse("UNKNOWN_TYPE"));
-      return promptRequest;
+    // Only returns requests whose backoff has passed
+    DelayedRequest due = retryQueue.poll();
+    PromptRequest promptRequest = due != null ? due.request() : requestQueue.poll();
+    if (promptRequest == null) {
+      return Optional.empty();
     }
-    return Optional.empty();
+    inFlight.incrementAndGet();
+    log.info(
+        "Fetched PromptRequest from queue, queue size now {}. Prompt Type: {}",
+        queueSize.decrementAndGet(),
+        promptRequest.promptType());
+    return Optional.of(promptRequest);
+  }
+
+  void requestFinished() {
+    inFlight.decrementAndGet();
+    lastProgressNanos.set(System.nanoTime());
   }
 
   public int getQueueSize() {
-    return requestQueue.size();
+    return queueSize.get();
+  }
+
+  /** Queued requests that failed before and wait for another attempt, due or not */
+  public int getRetryQueueSize() {
+    return retryQueue.size();
+  }
+
+  public int getInFlightCount() {
+    return inFlight.get();
+  }
+
+  /** Total number of failed attempts that were rescheduled or given up */
+  public long getRetryCount() {
+    return retryCount.sum();
+  }
+
+  /** Requests given up after their last retry */
+  public long getExhaustedCount() {
+    return exhaustedCount.sum();
+  }
+
+  public long getFailureCount(PromptFailure failure) {
+    return failureCounts.get(failure).sum();
+  }
+
+  @Override
+  public Health health() {
+    Duration sinceProgress = Duration.ofNanos(System.nanoTime() - lastProgressNanos.get());
+    int queued = queueSize.get();
+    Health.Builder health =
+        queued > 0 && sinceProgress.compareTo(STALL_TIMEOUT) > 0 ? Health.down() : Health.up();
+    return health
+        .withDetail("queued", queued)
+        .withDetail("queuedRetries", retryQueue.size())
+        .withDetail("inFlight", inFlight.get())
+        .withDetail("retries", retryCount.sum())
+        .withDetail("givenUp", exhaustedCount.sum())
+        .withDetail("secondsSinceLastResult", sinceProgress.toSeconds())
+        .build();
   }
 }
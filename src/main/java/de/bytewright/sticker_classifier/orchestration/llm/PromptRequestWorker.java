@@ -1,9 +1,13 @@
 package de.bytewright.sticker_classifier.orchestration.llm;
 
+import de.bytewright.sticker_classifier.domain.llm.ErrorPromptResult;
 import de.bytewright.sticker_classifier.domain.llm.LlmConnector;
+import de.bytewright.sticker_classifier.domain.llm.PromptFailedException;
+import de.bytewright.sticker_classifier.domain.llm.PromptFailure;
 import de.bytewright.sticker_classifier.domain.llm.PromptRequest;
 import de.bytewright.sticker_classifier.domain.llm.PromptResult;
 import de.bytewright.sticker_classifier.domain.llm.PromptResultProcessor;
+import java.time.Duration;
 import java.util.Optional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -15,22 +19,35 @@ public class PromptRequestWorker {
   private final LlmConnector llmConnector;
   private final PromptRequestCoordinator coordinator;
   private final PromptResultProcessor resultConsumer;
+  private volatile boolean stopped;
+
+  /** Lets the loop finish the request at hand and hand over its result, then return */
+  void stop() {
+    stopped = true;
+  }
 
   void processingLoop() {
     log.info("Worker thread started with name: {}", workerName);
     try {
-      while (!Thread.currentThread().isInterrupted()) {
+      while (!stopped && !Thread.currentThread().isInterrupted()) {
         try {
           // Get next request from coordinator
           Optional<PromptRequest> request = coordinator.takeNextRequest();
 
           if (request.isPresent()) {
             PromptRequest promptRequest = request.get();
-            Optional<PromptResult> promptResult = llmConnector.processRequest(promptRequest);
-            if (promptResult.isPresent()) {
-              resultConsumer.processResult(promptResult.get());
-            } else {
-              coordinator.reschedule(promptRequest);
+            try {
+              Optional<PromptResult> promptResult = llmConnector.processRequest(promptRequest);
+              if (promptResult.isPresent()) {
+                resultConsumer.processResult(promptResult.get());
+              } else {
+                handleFailure(promptRequest, PromptFailure.UNKNOWN, null);
+              }
+            } catch (PromptFailedException e) {
+              log.debug("Prompt request failed with {}: {}", e.getFailure(), e.getMessage());
+              handleFailure(promptRequest, e.getFailure(), e.getRetryAfter());
+            } finally {
+              coordinator.requestFinished();
             }
           } else {
             // No request available, sleep to avoid busy waiting
@@ -48,4 +65,10 @@ public class PromptRequestWorker {
       log.info("Worker '{}' thread exiting", workerName);
     }
   }
+
+  private void handleFailure(PromptRequest request, PromptFailure failure, Duration retryAfter) {
+    if (!coordinator.reschedule(request, failure, retryAfter)) {
+      resultConsumer.processResult(new ErrorPromptResult(request));
+    }
+  }
 }
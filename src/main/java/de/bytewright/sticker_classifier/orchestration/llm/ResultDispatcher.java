@@ -0,0 +1,110 @@
+package de.bytewright.sticker_classifier.orchestration.llm;
+
+import de.bytewright.sticker_classifier.domain.llm.PromptResult;
+import de.bytewright.sticker_classifier.domain.llm.PromptResultConsumer;
+import de.bytewright.sticker_classifier.domain.llm.PromptResultProcessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hands prompt results from the workers to the consumers. Every consumer owns a single thread
+ * lane, a result travels the lanes in priority order and stops at the first consumer that
+ * consumes it, just like a synchronous loop over the consumers, but the worker only enqueues the
+ * result into the first lane and can go back to the model. Each consumer still sees results one
+ * at a time and in the order they were dispatched. Handing a result to a full lane blocks until
+ * there is room, which throttles the producers instead of piling up results.
+ */
+@Slf4j
+final class ResultDispatcher implements PromptResultProcessor {
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+  private final List<Lane> lanes = new ArrayList<>();
+
+  private record Lane(PromptResultConsumer consumer, ThreadPoolExecutor executor) {}
+
+  /**
+   * @param consumers in the order they are asked
+   * @param queueSize results a lane buffers before callers have to wait
+   */
+  ResultDispatcher(List<PromptResultConsumer> consumers, int queueSize) {
+    for (PromptResultConsumer consumer : consumers) {
+      String name = "result-" + consumer.getClass().getSimpleName();
+      AtomicInteger threadCount = new AtomicInteger();
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              1,
+              1,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+              runnable -> new Thread(runnable, name + "-" + threadCount.incrementAndGet()),
+              ResultDispatcher::waitForRoom);
+      lanes.add(new Lane(consumer, executor));
+    }
+  }
+
+  // Running the consumer on the caller instead would break the order of results per consumer
+  private static void waitForRoom(Runnable task, ThreadPoolExecutor executor) {
+    if (executor.isShutdown()) {
+      throw new RejectedExecutionException("Result dispatcher is shut down");
+    }
+    try {
+      executor.getQueue().put(task);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RejectedExecutionException("Interrupted while waiting for a free result slot", e);
+    }
+  }
+
+  @Override
+  public void processResult(PromptResult result) {
+    dispatch(result, 0);
+  }
+
+  private void dispatch(PromptResult result, int laneIndex) {
+    if (laneIndex >= lanes.size()) {
+      return;
+    }
+    Lane lane = lanes.get(laneIndex);
+    lane.executor().execute(() -> deliver(result, laneIndex));
+  }
+
+  private void deliver(PromptResult result, int laneIndex) {
+    PromptResultConsumer consumer = lanes.get(laneIndex).consumer();
+    try {
+      if (consumer.processPromtResult(result.type(), result)) {
+        log.info("{} consumed LLM result: {}", consumer.getClass().getSimpleName(), result.type());
+        return;
+      }
+    } catch (Exception e) {
+      log.error("Error notifying consumer for result of type {}", result.type(), e);
+    }
+    dispatch(result, laneIndex + 1);
+  }
+
+  /** Lets every lane finish its results, lanes are closed in order as each feeds the next one */
+  void shutdown() {
+    for (Lane lane : lanes) {
+      ThreadPoolExecutor executor = lane.executor();
+      executor.shutdown();
+      try {
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          log.warn(
+              "{} results were not delivered to {} on shutdown",
+              executor.getQueue().size(),
+              lane.consumer().getClass().getSimpleName());
+          executor.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        executor.shutdownNow();
+      }
+    }
+  }
+}
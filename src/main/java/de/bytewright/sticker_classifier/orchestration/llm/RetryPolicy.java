@@ -0,0 +1,49 @@
+package de.bytewright.sticker_classifier.orchestration.llm;
+
+import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig;
+import de.bytewright.sticker_classifier.domain.llm.PromptFailure;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed request is tried again and how long it waits for that. Delays grow
+ * exponentially and are partly random, so requests that failed at the same moment, e.g. during an
+ * Ollama restart, do not come back at the same moment either.
+ */
+final class RetryPolicy {
+  private static final Duration MIN_CIRCUIT_WAIT = Duration.ofSeconds(1);
+
+  private final AppOrchestrationConfig.RetryConfig config;
+
+  RetryPolicy(AppOrchestrationConfig.RetryConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * @param retry number of the retry about to be made, starting at 1
+   */
+  boolean allowsRetry(PromptFailure failure, int retry) {
+    return retry <= config.getMaxRetriesByFailure().getOrDefault(failure, config.getMaxRetries());
+  }
+
+  /** Exponential delay before the given retry, reduced by up to the jitter share */
+  Duration backoff(int retry) {
+    double delay =
+        config.getInitialBackoffMillis() * Math.pow(config.getBackoffMultiplier(), retry - 1);
+    delay = Math.min(delay, config.getMaxBackoffMillis());
+    return Duration.ofMillis(Math.round(delay * (1 - config.getJitter() * random())));
+  }
+
+  /** Delay for a request rejected by an open circuit, extended by up to the jitter share */
+  Duration afterOpenCircuit(Duration retryAfter) {
+    Duration wait =
+        retryAfter == null || retryAfter.compareTo(MIN_CIRCUIT_WAIT) < 0
+            ? MIN_CIRCUIT_WAIT
+            : retryAfter;
+    return Duration.ofMillis(Math.round(wait.toMillis() * (1 + config.getJitter() * random())));
+  }
+
+  private static double random() {
+    return ThreadLocalRandom.current().nextDouble();
+  }
+}
@@ -3,8 +3,8 @@ package de.bytewright.sticker_classifier.orchestration.llm;
 import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig;
 import de.bytewright.sticker_classifier.domain.llm.LlmConnector;
 import de.bytewright.sticker_classifier.domain.llm.PromptExecutorService;
-import de.bytewright.sticker_classifier.domain.llm.PromptResult;
 import de.bytewright.sticker_classifier.domain.llm.PromptResultConsumer;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import lombok.Getter;
@@ -21,33 +21,45 @@ public class WorkerFactory {
   private final PromptRequestCoordinator coordinator;
   private final LlmConnector llmConnector;
   private final AppOrchestrationConfig appOrchestrationConfig;
+  private final List<PromptRequestWorker> workers = new ArrayList<>();
+  private ResultDispatcher resultDispatcher;
 
   public void initialize() {
-    for (int i = 0; i < appOrchestrationConfig.getPrompts().getWorkerCount(); i++) {
+    AppOrchestrationConfig.PromptConfig config = appOrchestrationConfig.getPrompts();
+    // Workers only block on the model, consumers run on their own lanes
+    resultDispatcher =
+        new ResultDispatcher(List.copyOf(resultConsumers), config.getResultQueueSize());
+    for (int i = 0; i < config.getWorkerCount(); i++) {
       var worker =
-          new PromptRequestWorker("worker_" + i, llmConnector, coordinator, this::notifyConsumers);
+          new PromptRequestWorker("worker_" + i, llmConnector, coordinator, resultDispatcher);
+      workers.add(worker);
       executorService.submit(worker::processingLoop);
     }
     log.info("Storyteller worker initialized with pool size 1");
   }
 
-  void notifyConsumers(PromptResult result) {
-    for (PromptResultConsumer consumer : resultConsumers) {
-      try {
-        boolean isResultConsumed = consumer.processPromtResult(result.type(), result);
-        if (isResultConsumed) {
-          log.info(
-              "{} consumed LLM result: {}", consumer.getClass().getSimpleName(), result.type());
-          break;
-        }
-      } catch (Exception e) {
-        log.error("Error notifying consumer for result of type {}", result.type(), e);
+  /**
+   * Stops the workers from taking new requests and waits for the running ones, only then the
+   * dispatcher is drained, so a result handed over late still reaches every consumer. Workers that
+   * do not finish in time are interrupted, their requests stay open in the session.
+   */
+  public void shutdown() {
+    workers.forEach(PromptRequestWorker::stop);
+    executorService.shutdown();
+    Duration timeout =
+        Duration.ofSeconds(appOrchestrationConfig.getPrompts().getShutdownTimeoutSeconds());
+    try {
+      if (!executorService.awaitTermination(timeout)) {
+        log.warn("Workers did not finish within {} s, interrupting them", timeout.toSeconds());
+        executorService.shutdownNow();
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      executorService.shutdownNow();
     }
-  }
-
-  public void shutdown() {
-    executorService.shutdownNow();
-    log.info("Storyteller worker shutdown initiated");
+    if (resultDispatcher != null) {
+      resultDispatcher.shutdown();
+    }
+    log.info("Storyteller worker shutdown completed");
   }
 }
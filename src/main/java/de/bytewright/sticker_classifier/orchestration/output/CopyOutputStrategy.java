@@ -0,0 +1,14 @@
+package de.bytewright.sticker_classifier.orchestration.output;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class CopyOutputStrategy implements OutputStrategy {
+
+  @Override
+  public Path place(Path source, Path target) throws IOException {
+    Files.copy(source, target);
+    return source;
+  }
+}
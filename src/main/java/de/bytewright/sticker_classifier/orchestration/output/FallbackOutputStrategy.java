@@ -0,0 +1,77 @@
+package de.bytewright.sticker_classifier.orchestration.output;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Copies the file when the primary strategy is not possible, e.g. when a hard link would cross
+ * filesystems or the filesystem has no links. Directory pairs where the primary strategy was not
+ * possible once get copies right away. Any other failure, like a denied permission, is rethrown.
+ * Whatever the failed attempt left at the target, e.g. the empty file of {@code cp --reflink}, is
+ * replaced by the copy. The copy becomes the source of further placements, so following hard links
+ * stay on the target filesystem.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class FallbackOutputStrategy implements OutputStrategy {
+  /** Reasons the OS gives when a link cannot be made between two directories at all */
+  private static final List<String> UNSUPPORTED_REASONS =
+      List.of(
+          "cross-device", // EXDEV
+          "not supported", // EOPNOTSUPP, e.g. no reflinks on ext4
+          "different disk drive", // ERROR_NOT_SAME_DEVICE
+          "privilege is not held"); // symbolic links on Windows without developer mode
+
+  private final OutputStrategy primary;
+  private final Set<DirectoryPair> copyOnlyDirectories = ConcurrentHashMap.newKeySet();
+
+  @Override
+  public Path place(Path source, Path target) throws IOException {
+    DirectoryPair directories =
+        new DirectoryPair(source.toAbsolutePath().getParent(), target.toAbsolutePath().getParent());
+    if (!copyOnlyDirectories.contains(directories)) {
+      try {
+        return primary.place(source, target);
+      } catch (FileSystemException e) {
+        if (e instanceof FileAlreadyExistsException || !isUnsupported(e)) {
+          throw e;
+        }
+        copyFrom(directories, e);
+      } catch (UnsupportedOperationException e) {
+        copyFrom(directories, e);
+      }
+      // The target did not exist before, a primary that found one fails with FileAlreadyExists
+      Files.deleteIfExists(target);
+    }
+    Files.copy(source, target);
+    return target;
+  }
+
+  private void copyFrom(DirectoryPair directories, Exception cause) {
+    log.info(
+        "{} not possible for {}, copying instead: {}",
+        primary.getClass().getSimpleName(),
+        directories.targetDir(),
+        cause.getMessage());
+    copyOnlyDirectories.add(directories);
+  }
+
+  private static boolean isUnsupported(FileSystemException e) {
+    if (e.getReason() == null) {
+      return false;
+    }
+    String reason = e.getReason().toLowerCase(Locale.ROOT);
+    return UNSUPPORTED_REASONS.stream().anyMatch(reason::contains);
+  }
+
+  private record DirectoryPair(Path sourceDir, Path targetDir) {}
+}
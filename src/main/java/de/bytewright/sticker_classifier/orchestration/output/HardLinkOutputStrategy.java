@@ -0,0 +1,15 @@
+package de.bytewright.sticker_classifier.orchestration.output;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** All placements share the inode of the source, fails if target is on another filesystem */
+public class HardLinkOutputStrategy implements OutputStrategy {
+
+  @Override
+  public Path place(Path source, Path target) throws IOException {
+    Files.createLink(target, source);
+    return source;
+  }
+}
@@ -0,0 +1,24 @@
+package de.bytewright.sticker_classifier.orchestration.output;
+
+import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig.OutputConfig.Mode;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/** Places a classified file into one category directory of the result tree */
+public interface OutputStrategy {
+
+  /**
+   * @return the path further placements of the same file should use as their source
+   */
+  Path place(Path source, Path target) throws IOException;
+
+  /** Strategy for the mode, every mode but {@link Mode#COPY} falls back to a copy if needed */
+  static OutputStrategy forMode(Mode mode) {
+    return switch (mode) {
+      case COPY -> new CopyOutputStrategy();
+      case HARDLINK -> new FallbackOutputStrategy(new HardLinkOutputStrategy());
+      case SYMLINK -> new FallbackOutputStrategy(new SymbolicLinkOutputStrategy());
+      case REFLINK -> new FallbackOutputStrategy(new ReflinkOutputStrategy());
+    };
+  }
+}
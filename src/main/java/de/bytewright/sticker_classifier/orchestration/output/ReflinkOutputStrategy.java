@@ -0,0 +1,49 @@
+package de.bytewright.sticker_classifier.orchestration.output;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Copy-on-write clone of the source. Java has no API for reflinks, so this delegates to {@code cp}
+ * which costs a process start per file but no data is copied on btrfs, XFS or APFS. A failed
+ * {@code cp} leaves an empty target behind, it is removed before the failure is reported.
+ */
+public class ReflinkOutputStrategy implements OutputStrategy {
+  private static final String OS_NAME = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+
+  @Override
+  public Path place(Path source, Path target) throws IOException {
+    List<String> command;
+    if (OS_NAME.contains("linux")) {
+      command = List.of("cp", "--reflink=always", source.toString(), target.toString());
+    } else if (OS_NAME.contains("mac")) {
+      command = List.of("cp", "-c", source.toString(), target.toString());
+    } else {
+      throw new UnsupportedOperationException("reflinks are not supported on " + OS_NAME);
+    }
+    boolean targetExisted = Files.exists(target, LinkOption.NOFOLLOW_LINKS);
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    try {
+      // The message of cp carries the reason, e.g. "Operation not supported" without reflinks
+      String output = new String(process.getInputStream().readAllBytes()).strip();
+      int exitCode = process.waitFor();
+      if (exitCode != 0) {
+        if (!targetExisted) {
+          Files.deleteIfExists(target);
+        }
+        throw new FileSystemException(
+            source.toString(), target.toString(), "cp exited with " + exitCode + ": " + output);
+      }
+    } catch (InterruptedException e) {
+      process.destroy();
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while cloning " + source, e);
+    }
+    return source;
+  }
+}
@@ -0,0 +1,18 @@
+package de.bytewright.sticker_classifier.orchestration.output;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Links to the absolute source path, so the source must stay where it is. Creating symbolic links
+ * needs special privileges on Windows.
+ */
+public class SymbolicLinkOutputStrategy implements OutputStrategy {
+
+  @Override
+  public Path place(Path source, Path target) throws IOException {
+    Files.createSymbolicLink(target, source.toAbsolutePath());
+    return source;
+  }
+}
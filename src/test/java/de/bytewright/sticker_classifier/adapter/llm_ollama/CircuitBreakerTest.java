@@ -0,0 +1,53 @@
+package de.bytewright.sticker_classifier.adapter.llm_ollama;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+  private final AtomicLong now = new AtomicLong();
+  private final CircuitBreaker circuitBreaker =
+      new CircuitBreaker("model@localhost", 2, Duration.ofSeconds(30), now::get);
+
+  @Test
+  void opensAfterConsecutiveFailures() {
+    circuitBreaker.onFailure();
+    circuitBreaker.onSuccess();
+    circuitBreaker.onFailure();
+    assertThat(circuitBreaker.tryAcquire()).isEmpty();
+
+    circuitBreaker.onFailure();
+    now.addAndGet(Duration.ofSeconds(10).toNanos());
+
+    assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(circuitBreaker.tryAcquire()).contains(Duration.ofSeconds(20));
+  }
+
+  @Test
+  void letsOneTrialCallThroughOncePeriodHasPassed() {
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    now.addAndGet(Duration.ofSeconds(30).toNanos());
+
+    assertThat(circuitBreaker.tryAcquire()).isEmpty();
+    assertThat(circuitBreaker.tryAcquire()).contains(Duration.ofSeconds(30));
+
+    circuitBreaker.onSuccess();
+    assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(circuitBreaker.tryAcquire()).isEmpty();
+  }
+
+  @Test
+  void reopensWhenTrialCallFails() {
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    now.addAndGet(Duration.ofSeconds(30).toNanos());
+    circuitBreaker.tryAcquire();
+
+    circuitBreaker.onFailure();
+
+    assertThat(circuitBreaker.tryAcquire()).contains(Duration.ofSeconds(30));
+  }
+}
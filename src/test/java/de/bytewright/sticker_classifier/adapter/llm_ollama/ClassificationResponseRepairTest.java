@@ -0,0 +1,50 @@
+package de.bytewright.sticker_classifier.adapter.llm_ollama;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class ClassificationResponseRepairTest {
+  private final JsonFactory factory = new JsonFactory();
+
+  @Test
+  void closesBracketsAndDropsStrayOnes() {
+    assertThat(ClassificationResponseRepair.close("{\"a\": [\"b\", \"c\","))
+        .isEqualTo("{\"a\": [\"b\", \"c\"]}");
+    assertThat(ClassificationResponseRepair.close("{\"a\": [\"b\"}}\n```"))
+        .isEqualTo("{\"a\": [\"b\"]}");
+    assertThat(ClassificationResponseRepair.close("{\"a\": \"}\"]}")).isEqualTo("{\"a\": \"}\"}");
+  }
+
+  @Test
+  void salvagesTruncatedResponse() {
+    String response =
+        "{\"detectedTags\": [\"Cat\", \"happy\"], \"keyword\": \"waving cat\", \"emoji\": \"\\u263";
+
+    Optional<ClassificationResult> result = ClassificationResponseRepair.salvage(factory, response);
+
+    assertThat(result).isPresent();
+    assertThat(result.get().getDetectedTags()).containsExactlyInAnyOrder("cat", "happy");
+    assertThat(result.get().getKeyword()).isEqualTo("waving cat");
+    assertThat(result.get().getEmoji()).isNull();
+  }
+
+  @Test
+  void dropsTruncatedTag() {
+    String response = "{\"keyword\": \"cat\", \"detectedTags\": [\"cat\", \"hap";
+
+    Optional<ClassificationResult> result = ClassificationResponseRepair.salvage(factory, response);
+
+    assertThat(result).isPresent();
+    assertThat(result.get().getDetectedTags()).containsExactly("cat");
+  }
+
+  @Test
+  void givesUpWithoutObject() {
+    assertThat(ClassificationResponseRepair.salvage(factory, "I can not see an image")).isEmpty();
+    assertThat(ClassificationResponseRepair.salvage(factory, "{\"keyword\":")).isEmpty();
+  }
+}
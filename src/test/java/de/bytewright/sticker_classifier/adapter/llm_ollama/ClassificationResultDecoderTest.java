@@ -0,0 +1,59 @@
+package de.bytewright.sticker_classifier.adapter.llm_ollama;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import org.junit.jupiter.api.Test;
+
+class ClassificationResultDecoderTest {
+  private final JsonFactory factory = new JsonFactory();
+
+  @Test
+  void decodesFencedResponse() throws Exception {
+    String response =
+        """
+        ```json
+        {"detectedTags": [" Cat ", "HAPPY"], "hasText": true, "textLanguageGuess": "en",
+         "emoji": "\\u263a", "keyword": "cat"}
+        ```
+        """;
+
+    ClassificationResult result = ClassificationResultDecoder.decode(factory, response);
+
+    assertThat(result.getDetectedTags()).containsExactlyInAnyOrder("cat", "happy");
+    assertThat(result.isHasText()).isTrue();
+    assertThat(result.getTextLanguageGuess()).isEqualTo("en");
+    assertThat(result.getEmoji()).isEqualTo("\u263a");
+    assertThat(result.getKeyword()).isEqualTo("cat");
+  }
+
+  @Test
+  void skipsUnknownFieldsAndCoercesValues() throws Exception {
+    String response =
+        """
+        {"reasoning": {"steps": ["look", "think"]}, "detectedTags": null,
+         "hasText": "true", "emoji": null}
+        """;
+
+    ClassificationResult result = ClassificationResultDecoder.decode(factory, response);
+
+    assertThat(result.getDetectedTags()).isNull();
+    assertThat(result.isHasText()).isTrue();
+    assertThat(result.getEmoji()).isNull();
+  }
+
+  @Test
+  void rejectsMalformedResponses() {
+    assertThatThrownBy(() -> ClassificationResultDecoder.decode(factory, "no json here"))
+        .isInstanceOf(JsonProcessingException.class);
+    String truncated = "{\"detectedTags\": [\"a\"";
+    assertThatThrownBy(() -> ClassificationResultDecoder.decode(factory, truncated))
+        .isInstanceOf(JsonProcessingException.class);
+    String wrongShape = "{\"emoji\": [\"a\"]}";
+    assertThatThrownBy(() -> ClassificationResultDecoder.decode(factory, wrongShape))
+        .isInstanceOf(JsonProcessingException.class);
+  }
+}
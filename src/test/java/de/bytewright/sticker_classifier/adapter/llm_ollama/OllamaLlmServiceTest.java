@@ -1,12 +1,25 @@
 package de.bytewright.sticker_classifier.adapter.llm_ollama;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import de.bytewright.sticker_classifier.domain.llm.PromptFailedException;
+import de.bytewright.sticker_classifier.domain.llm.PromptFailure;
+import de.bytewright.sticker_classifier.domain.llm.PromptRequestUnstructured;
+import de.bytewright.sticker_classifier.domain.llm.PromptType;
 import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
 import org.junit.jupiter.api.Test;
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.web.client.ResourceAccessException;
 
 class OllamaLlmServiceTest {
 
@@ -19,4 +32,58 @@ class OllamaLlmServiceTest {
         .hasToString(
             "{\"$schema\":\"https://json-schema.org/draft/2020-12/schema\",\"type\":\"object\",\"properties\":{\"categoryName\":{\"type\":\"string\"},\"emoji\":{\"type\":\"string\"},\"hasText\":{\"type\":\"boolean\"},\"keyword\":{\"type\":\"string\"},\"textLanguageGuess\":{\"type\":\"string\"}},\"required\":[\"categoryName\",\"hasText\"]}");
   }
+
+  @Test
+  void classifiesApiFailures() {
+    assertThat(
+            OllamaLlmService.classify(
+                new ResourceAccessException("timeout", new HttpTimeoutException("timed out"))))
+        .isEqualTo(PromptFailure.TIMEOUT);
+    assertThat(
+            OllamaLlmService.classify(
+                new ResourceAccessException("refused", new ConnectException("refused"))))
+        .isEqualTo(PromptFailure.CONNECTION_REFUSED);
+    assertThat(
+            OllamaLlmService.classify(
+                new NonTransientAiException(
+                    "HTTP 404 - {\"error\":\"model 'qwen3-vl:4b' not found\"}")))
+        .isEqualTo(PromptFailure.MODEL_NOT_LOADED);
+    assertThat(OllamaLlmService.classify(new TransientAiException("HTTP 503 - busy")))
+        .isEqualTo(PromptFailure.SERVER_ERROR);
+    assertThat(OllamaLlmService.classify(new IllegalStateException()))
+        .isEqualTo(PromptFailure.UNKNOWN);
+  }
+
+  @Test
+  void textRequestRethrowsClassifiedFailures() {
+    OllamaApi ollamaApi = mock();
+    when(ollamaApi.chat(any()))
+        .thenThrow(new ResourceAccessException("refused", new ConnectException("refused")));
+
+    assertThatThrownBy(() -> textService(ollamaApi).processRequest(textRequest()))
+        .isInstanceOfSatisfying(
+            PromptFailedException.class,
+            e -> assertThat(e.getFailure()).isEqualTo(PromptFailure.CONNECTION_REFUSED));
+  }
+
+  @Test
+  void textRequestWithoutResponseHasNoResult() {
+    OllamaApi ollamaApi = mock();
+    when(ollamaApi.chat(any())).thenReturn(null);
+
+    assertThat(textService(ollamaApi).processRequest(textRequest())).isEmpty();
+  }
+
+  private static OllamaLlmService textService(OllamaApi ollamaApi) {
+    OllamaAdapterConfig config = new OllamaAdapterConfig();
+    config.setTextModel("qwen3:4b");
+    return new OllamaLlmService(config, mock(), mock(), mock(), ollamaApi, mock());
+  }
+
+  private static PromptRequestUnstructured textRequest() {
+    return PromptRequestUnstructured.builder()
+        .prompt("Summarize the stickers")
+        .promptType(PromptType.STICKER_CLASSIFICATION)
+        .build();
+  }
 }
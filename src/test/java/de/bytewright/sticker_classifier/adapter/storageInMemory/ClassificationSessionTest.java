@@ -0,0 +1,47 @@
+package de.bytewright.sticker_classifier.adapter.storageInMemory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.bytewright.sticker_classifier.domain.llm.PromptRequestWithImage;
+import de.bytewright.sticker_classifier.domain.model.CategoryMatcher;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class ClassificationSessionTest {
+  private static final int REQUESTS = 10_000;
+
+  @Test
+  void reportsCompletionExactlyOnceUnderConcurrency() {
+    ClassificationSession session =
+        new ClassificationSession(
+            List.of(),
+            List.of(),
+            CategoryMatcher.compile(List.of(), List.of()),
+            Path.of("work"),
+            Path.of("out"));
+    for (int i = 0; i < REQUESTS; i++) {
+      session.addRequest(PromptRequestWithImage.builder().imagePath(Path.of(i + ".png")).build());
+    }
+    AtomicInteger completions = new AtomicInteger();
+
+    try (ExecutorService workers = Executors.newFixedThreadPool(8)) {
+      for (int i = 0; i < REQUESTS; i++) {
+        workers.submit(
+            () -> {
+              if (session.addResult(Path.of("sticker.png"), new ClassificationResult())) {
+                completions.incrementAndGet();
+              }
+            });
+      }
+    }
+
+    assertThat(session.getResults().size()).isEqualTo(REQUESTS);
+    assertThat(session.getResultCount().sum()).isEqualTo(REQUESTS);
+    assertThat(completions).hasValue(1);
+  }
+}
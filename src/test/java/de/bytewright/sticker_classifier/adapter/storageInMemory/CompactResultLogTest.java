@@ -0,0 +1,34 @@
+package de.bytewright.sticker_classifier.adapter.storageInMemory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.bytewright.sticker_classifier.adapter.storageInMemory.ClassificationSession.ImageResult;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class CompactResultLogTest {
+
+  @Test
+  void decodesStoredResults() {
+    CompactResultLog log = new CompactResultLog();
+    ClassificationResult result = new ClassificationResult();
+    result.setDetectedTags(Set.of("bear", "love"));
+    result.setHasText(true);
+    result.setTextLanguageGuess("ja");
+    result.setEmoji("🐻");
+    result.setKeyword("hug");
+
+    log.add(Path.of("pack", "1.png"), result);
+    log.add(Path.of("2.png"), null);
+
+    List<ImageResult> decoded = log.stream().toList();
+    assertThat(log.size()).isEqualTo(2);
+    assertThat(decoded.getFirst().imagePath()).isEqualTo(Path.of("pack", "1.png"));
+    assertThat(decoded.getFirst().result()).isEqualTo(result);
+    assertThat(decoded.get(1).imagePath()).isEqualTo(Path.of("2.png"));
+    assertThat(decoded.get(1).result()).isNull();
+  }
+}
@@ -0,0 +1,150 @@
+package de.bytewright.sticker_classifier.adapter.storageJournal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bytewright.sticker_classifier.adapter.storageInMemory.InMemoryStorage;
+import de.bytewright.sticker_classifier.domain.llm.PromptRequestWithImage;
+import de.bytewright.sticker_classifier.domain.model.ClassificationCategory;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import de.bytewright.sticker_classifier.domain.session.ProcessingState;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalingSessionStorageTest {
+  private static final Path WORK_DIR = Path.of("stickers");
+  private static final Path OUTPUT_DIR = Path.of("sorted");
+
+  @Test
+  void resumesPendingRequestsAfterRestart(@TempDir Path tempDir) throws IOException {
+    JournalingSessionStorage storage = createStorage(tempDir, 10_000);
+    UUID sessionId = startSession(storage, 3);
+    storage.storeResult(sessionId, Path.of("0.png"), result("cat"));
+    storage.close();
+
+    JournalingSessionStorage restarted = createStorage(tempDir, 10_000);
+
+    assertThat(restarted.findUnfinishedSession(WORK_DIR, OUTPUT_DIR)).contains(sessionId);
+    assertThat(restarted.getPendingImagePaths(sessionId))
+        .containsExactly(Path.of("1.png"), Path.of("2.png"));
+    assertThat(restarted.getClassificationCategories(sessionId)).hasSize(1);
+  }
+
+  @Test
+  void restoresFromSnapshotAndTornJournal(@TempDir Path tempDir) throws IOException {
+    JournalingSessionStorage storage = createStorage(tempDir, 2);
+    UUID sessionId = startSession(storage, 5);
+    storage.storeResult(sessionId, Path.of("3.png"), result("cat"));
+    storage.close();
+    Files.writeString(
+        tempDir.resolve(sessionId + SessionJournal.JOURNAL_SUFFIX),
+        "{\"type\":\"RESULT_STO",
+        StandardOpenOption.APPEND);
+
+    JournalingSessionStorage restarted = createStorage(tempDir, 2);
+    restarted.storeResult(sessionId, Path.of("4.png"), result("cat"));
+    restarted.close();
+    JournalingSessionStorage restartedAgain = createStorage(tempDir, 2);
+
+    assertThat(tempDir.resolve(sessionId + SessionJournal.SNAPSHOT_SUFFIX)).exists();
+    assertThat(restartedAgain.getPendingImagePaths(sessionId))
+        .containsExactly(Path.of("0.png"), Path.of("1.png"), Path.of("2.png"));
+  }
+
+  @Test
+  void completedSessionsAreNotResumed(@TempDir Path tempDir) throws IOException {
+    JournalingSessionStorage storage = createStorage(tempDir, 10_000);
+    UUID sessionId = startSession(storage, 1);
+    storage.storeResult(sessionId, Path.of("0.png"), result("cat"));
+    storage.close();
+
+    Optional<UUID> unfinished =
+        createStorage(tempDir, 10_000).findUnfinishedSession(WORK_DIR, OUTPUT_DIR);
+
+    assertThat(unfinished).isEmpty();
+    assertThat(tempDir.resolve(sessionId + SessionJournal.JOURNAL_SUFFIX)).doesNotExist();
+    assertThat(
+            tempDir
+                .resolve(JournalingSessionStorage.ARCHIVE_DIRECTORY)
+                .resolve(sessionId + SessionJournal.JOURNAL_SUFFIX))
+        .exists();
+  }
+
+  @Test
+  void completedSessionsFromSnapshotsAreArchived(@TempDir Path tempDir) throws IOException {
+    JournalingSessionStorage storage = createStorage(tempDir, 2);
+    UUID sessionId = startSession(storage, 2);
+    storage.storeResult(sessionId, Path.of("0.png"), result("cat"));
+    storage.storeFailure(sessionId, Path.of("1.png"));
+    storage.close();
+
+    JournalingSessionStorage restarted = createStorage(tempDir, 2);
+
+    assertThat(restarted.findUnfinishedSession(WORK_DIR, OUTPUT_DIR)).isEmpty();
+    Path archive = tempDir.resolve(JournalingSessionStorage.ARCHIVE_DIRECTORY);
+    try (Stream<Path> files = Files.list(tempDir)) {
+      assertThat(files).containsExactly(archive);
+    }
+  }
+
+  @Test
+  void failedRequestsFinishTheSessionAndSurviveRestart(@TempDir Path tempDir)
+      throws IOException {
+    JournalingSessionStorage storage = createStorage(tempDir, 10_000);
+    UUID sessionId = startSession(storage, 3);
+    storage.storeResult(sessionId, Path.of("0.png"), result("cat"));
+    storage.storeFailure(sessionId, Path.of("1.png"));
+    storage.close();
+
+    JournalingSessionStorage restarted = createStorage(tempDir, 10_000);
+    assertThat(restarted.getPendingImagePaths(sessionId)).containsExactly(Path.of("2.png"));
+    assertThat(restarted.getProgress(sessionId).failedCount()).isEqualTo(1);
+
+    restarted.storeFailure(sessionId, Path.of("2.png"));
+
+    assertThat(restarted.getProgress(sessionId).state()).isEqualTo(ProcessingState.COMPLETED);
+    assertThat(restarted.findUnfinishedSession(WORK_DIR, OUTPUT_DIR)).isEmpty();
+  }
+
+  private static UUID startSession(JournalingSessionStorage storage, int requestCount) {
+    UUID sessionId =
+        storage.createSession(
+            List.of(new ClassificationCategory("Cat", 1, "a cat")),
+            List.of(),
+            WORK_DIR,
+            OUTPUT_DIR);
+    storage.updateState(sessionId, ProcessingState.CLASSIFYING);
+    for (int i = 0; i < requestCount; i++) {
+      storage.addRequest(
+          sessionId,
+          PromptRequestWithImage.builder()
+              .imagePath(Path.of(i + ".png"))
+              .requestParameter(sessionId)
+              .build());
+    }
+    return sessionId;
+  }
+
+  private static ClassificationResult result(String tag) {
+    ClassificationResult result = new ClassificationResult();
+    result.setDetectedTags(Set.of(tag));
+    return result;
+  }
+
+  private static JournalingSessionStorage createStorage(Path directory, int snapshotInterval)
+      throws IOException {
+    JournalStorageConfig config = new JournalStorageConfig();
+    config.setDirectory(directory.toString());
+    config.setMinSnapshotInterval(snapshotInterval);
+    return new JournalingSessionStorage(new InMemoryStorage(), new ObjectMapper(), config);
+  }
+}
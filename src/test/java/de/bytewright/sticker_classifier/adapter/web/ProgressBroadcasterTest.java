@@ -0,0 +1,86 @@
+package de.bytewright.sticker_classifier.adapter.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bytewright.sticker_classifier.domain.event.ClassificationSessionStartedEvent;
+import de.bytewright.sticker_classifier.domain.llm.ClassificationPromptResult;
+import de.bytewright.sticker_classifier.domain.llm.ErrorPromptResult;
+import de.bytewright.sticker_classifier.domain.llm.PromptRequestWithImage;
+import de.bytewright.sticker_classifier.domain.llm.PromptRetry;
+import de.bytewright.sticker_classifier.domain.llm.PromptType;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import de.bytewright.sticker_classifier.domain.session.ProcessingState;
+import de.bytewright.sticker_classifier.domain.session.SessionProgress;
+import de.bytewright.sticker_classifier.domain.storage.SessionStorage;
+import de.bytewright.sticker_classifier.orchestration.StatsPromptResultConsumer;
+import de.bytewright.sticker_classifier.orchestration.llm.PromptRequestCoordinator;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class ProgressBroadcasterTest {
+  private final UUID sessionId = UUID.randomUUID();
+  private final SessionStorage sessionStorage = mock();
+  private final ProgressBroadcaster broadcaster =
+      new ProgressBroadcaster(
+          sessionStorage,
+          mock(StatsPromptResultConsumer.class),
+          mock(PromptRequestCoordinator.class),
+          new ObjectMapper());
+
+  @Test
+  void snapshotContainsSessionProgressAndNewestSamplesFirst() {
+    when(sessionStorage.getProgress(sessionId))
+        .thenReturn(new SessionProgress(ProcessingState.CLASSIFYING, 30, 24, 1));
+    broadcaster.handleSessionStarted(
+        new ClassificationSessionStartedEvent(sessionId, Path.of(".")));
+    for (int i = 0; i < 25; i++) {
+      broadcaster.processPromtResult(
+          PromptType.STICKER_CLASSIFICATION, classified("sticker_" + i + ".png"));
+    }
+    broadcaster.processPromtResult(
+        PromptType.STICKER_CLASSIFICATION,
+        new ErrorPromptResult(new PromptRetry(2, request("broken.png"))));
+
+    ProgressSnapshot snapshot = broadcaster.snapshot();
+
+    assertThat(snapshot.state()).isEqualTo(ProcessingState.CLASSIFYING);
+    assertThat(snapshot.requested()).isEqualTo(30);
+    assertThat(snapshot.classified()).isEqualTo(24);
+    assertThat(snapshot.failed()).isEqualTo(1);
+    assertThat(snapshot.recentClassifications()).hasSize(20);
+    assertThat(snapshot.recentClassifications().getFirst().fileName()).isEqualTo("sticker_24.png");
+    assertThat(snapshot.errorSamples())
+        .singleElement()
+        .extracting(ProgressSnapshot.ErrorSample::fileName)
+        .isEqualTo("broken.png");
+  }
+
+  @Test
+  void snapshotIsIdleWithoutSession() {
+    assertThat(broadcaster.snapshot().state()).isEqualTo(ProcessingState.IDLE);
+  }
+
+  private ClassificationPromptResult classified(String fileName) {
+    ClassificationResult result = new ClassificationResult();
+    result.setDetectedTags(new HashSet<>(Set.of("cat")));
+    result.setEmoji("😺");
+    return ClassificationPromptResult.builder()
+        .promptRequestWithImage(request(fileName))
+        .classificationResult(result)
+        .build();
+  }
+
+  private PromptRequestWithImage request(String fileName) {
+    return PromptRequestWithImage.builder()
+        .imagePath(Path.of("work", fileName))
+        .promptType(PromptType.STICKER_CLASSIFICATION)
+        .requestParameter(sessionId)
+        .build();
+  }
+}
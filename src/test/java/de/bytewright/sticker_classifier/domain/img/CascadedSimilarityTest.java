@@ -0,0 +1,115 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import dev.brachtendorf.jimagehash.hashAlgorithms.PerceptiveHash;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class CascadedSimilarityTest {
+  private final StickerDeduplicationBySimilarityService.Config config =
+      StickerDeduplicationBySimilarityService.Config.builder().build();
+  private final CascadedSimilarity similarity = new CascadedSimilarity(config);
+  private final PerceptiveHash pHash = StickerSignature.createPerceptiveHash(64);
+
+  @Test
+  void identicalStickersHaveNoDistance() {
+    BufferedImage image = sticker(false);
+    StickerSignature a = StickerSignature.of(image, pHash);
+    StickerSignature b = StickerSignature.of(copyOf(image), pHash);
+
+    assertThat(similarity.passesPrefilter(a, b)).isTrue();
+    assertThat(similarity.fusedDistance(a, b)).isZero();
+  }
+
+  @Test
+  void nearDuplicatesAreWithinThreshold() {
+    StickerSignature a = StickerSignature.of(sticker(false), pHash);
+    StickerSignature b = StickerSignature.of(sticker(true), pHash);
+
+    assertThat(similarity.passesPrefilter(a, b)).isTrue();
+    assertThat(similarity.fusedDistance(a, b))
+        .isPositive()
+        .isLessThanOrEqualTo(config.getSimilarityThreshold());
+  }
+
+  @Test
+  void differentStickersAreBeyondThreshold() {
+    StickerSignature a = StickerSignature.of(sticker(false), pHash);
+    StickerSignature b = StickerSignature.of(otherSticker(), pHash);
+
+    assertThat(similarity.fusedDistance(a, b)).isGreaterThan(config.getSimilarityThreshold());
+  }
+
+  @Test
+  void prefilterRejectsPairsWithoutCalculatingThePerceptualHash() {
+    AtomicInteger loads = new AtomicInteger();
+    BufferedImage brightLeft = gradient(Color.WHITE, Color.BLACK);
+    BufferedImage brightRight = gradient(Color.BLACK, Color.WHITE);
+    StickerSignature a = StickerSignature.of(brightLeft, pHash, () -> count(loads, brightLeft));
+    StickerSignature b = StickerSignature.of(brightRight, pHash, () -> count(loads, brightRight));
+
+    assertThat(a.differenceHashDistance(b)).isGreaterThan(config.getPrefilterThreshold());
+    assertThat(similarity.passesPrefilter(a, b)).isFalse();
+    assertThat(loads).hasValue(0);
+
+    similarity.fusedDistance(a, b);
+    similarity.fusedDistance(a, b);
+    assertThat(loads).hasValue(2);
+  }
+
+  private static BufferedImage count(AtomicInteger loads, BufferedImage image) {
+    loads.incrementAndGet();
+    return image;
+  }
+
+  static BufferedImage sticker(boolean withSpeck) {
+    BufferedImage image = new BufferedImage(128, 128, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(new Color(220, 40, 40));
+    g.fillOval(10, 10, 80, 80);
+    g.setColor(new Color(40, 60, 200));
+    g.fillRect(60, 70, 60, 50);
+    g.setColor(Color.BLACK);
+    g.drawLine(0, 127, 127, 0);
+    if (withSpeck) {
+      g.setColor(Color.WHITE);
+      g.fillRect(100, 20, 3, 3);
+    }
+    g.dispose();
+    return image;
+  }
+
+  private static BufferedImage otherSticker() {
+    BufferedImage image = new BufferedImage(128, 128, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(new Color(30, 180, 60));
+    g.fillPolygon(new int[] {64, 0, 127}, new int[] {0, 127, 127}, 3);
+    g.setColor(new Color(250, 220, 30));
+    for (int y = 0; y < 128; y += 16) {
+      g.fillRect(0, y, 128, 6);
+    }
+    g.dispose();
+    return image;
+  }
+
+  private static BufferedImage gradient(Color left, Color right) {
+    BufferedImage image = new BufferedImage(128, 128, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    g.setPaint(new GradientPaint(0, 0, left, 127, 0, right));
+    g.fillRect(0, 0, 128, 128);
+    g.dispose();
+    return image;
+  }
+
+  private static BufferedImage copyOf(BufferedImage image) {
+    BufferedImage copy =
+        new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    copy.setData(image.getData());
+    return copy;
+  }
+}
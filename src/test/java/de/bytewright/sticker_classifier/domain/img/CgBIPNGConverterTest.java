@@ -0,0 +1,167 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CgBIPNGConverterTest {
+  private static final int WIDTH = 7;
+  private static final int HEIGHT = 5;
+
+  @Test
+  void convertsByteArray() throws IOException {
+    int[] argb = samplePixels();
+    byte[] cgbi = createCgBIPng(argb, 10);
+    assertThat(CgBIPNGConverter.isCgBIPNG(cgbi)).isTrue();
+
+    byte[] converted = CgBIPNGConverter.convertCgBIToStandardPNG(cgbi);
+
+    assertThat(CgBIPNGConverter.isCgBIPNG(converted)).isFalse();
+    assertPixels(ImageIO.read(new ByteArrayInputStream(converted)), argb);
+  }
+
+  @Test
+  void convertsFile(@TempDir Path tempDir) throws IOException {
+    int[] argb = samplePixels();
+    Path source = tempDir.resolve("cgbi.png");
+    Path target = tempDir.resolve("fixed.png");
+    Files.write(source, createCgBIPng(argb, 3));
+
+    CgBIPNGConverter.convertCgBIToStandardPNG(source, target);
+
+    assertPixels(ImageIO.read(target.toFile()), argb);
+  }
+
+  @Test
+  void rejectsTruncatedImageData() throws IOException {
+    byte[] cgbi = createCgBIPng(samplePixels(), 10);
+    byte[] truncated = Arrays.copyOf(cgbi, cgbi.length - 40);
+
+    assertThatThrownBy(() -> CgBIPNGConverter.convertCgBIToStandardPNG(truncated))
+        .isInstanceOf(IOException.class);
+  }
+
+  static int[] samplePixels() {
+    int[] argb = new int[WIDTH * HEIGHT];
+    for (int i = 0; i < argb.length; i++) {
+      int alpha = i % 3 == 0 ? 255 : i % 3 == 1 ? 0 : 170;
+      argb[i] = alpha << 24 | (i * 37 % 256) << 16 | (i * 91 % 256) << 8 | (i * 13 % 256);
+    }
+    return argb;
+  }
+
+  private static void assertPixels(BufferedImage img, int[] expectedArgb) {
+    assertThat(img.getWidth()).isEqualTo(WIDTH);
+    assertThat(img.getHeight()).isEqualTo(HEIGHT);
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        int expected = expectedArgb[y * WIDTH + x];
+        int actual = img.getRGB(x, y);
+        int alpha = expected >>> 24;
+        assertThat(actual >>> 24).isEqualTo(alpha);
+        if (alpha == 0) {
+          continue; // colour of fully transparent pixels is lost by premultiplication
+        }
+        for (int shift = 0; shift <= 16; shift += 8) {
+          // premultiplying and back is lossy for partially transparent pixels
+          assertThat((actual >> shift) & 0xFF).isCloseTo((expected >> shift) & 0xFF, within(2));
+        }
+      }
+    }
+  }
+
+  /** Builds a CgBI PNG: premultiplied BGRA, every filter type in use, raw deflate, split IDAT */
+  static byte[] createCgBIPng(int[] argb, int idatChunkCount) throws IOException {
+    int stride = WIDTH * 4;
+    byte[] raw = new byte[HEIGHT * (stride + 1)];
+    byte[] previous = new byte[stride];
+    for (int y = 0; y < HEIGHT; y++) {
+      byte[] row = new byte[stride];
+      for (int x = 0; x < WIDTH; x++) {
+        int pixel = argb[y * WIDTH + x];
+        int alpha = pixel >>> 24;
+        row[x * 4] = (byte) ((pixel & 0xFF) * alpha / 255);
+        row[x * 4 + 1] = (byte) (((pixel >> 8) & 0xFF) * alpha / 255);
+        row[x * 4 + 2] = (byte) (((pixel >> 16) & 0xFF) * alpha / 255);
+        row[x * 4 + 3] = (byte) alpha;
+      }
+      int filterType = y % 5;
+      raw[y * (stride + 1)] = (byte) filterType;
+      for (int i = 0; i < stride; i++) {
+        int left = i >= 4 ? row[i - 4] & 0xFF : 0;
+        int up = y > 0 ? previous[i] & 0xFF : 0;
+        int upLeft = y > 0 && i >= 4 ? previous[i - 4] & 0xFF : 0;
+        int predictor =
+            switch (filterType) {
+              case 1 -> left;
+              case 2 -> up;
+              case 3 -> (left + up) / 2;
+              case 4 -> paeth(left, up, upLeft);
+              default -> 0;
+            };
+        raw[y * (stride + 1) + 1 + i] = (byte) ((row[i] & 0xFF) - predictor);
+      }
+      previous = row;
+    }
+
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(raw);
+    deflater.finish();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    byte[] buffer = new byte[256];
+    while (!deflater.finished()) {
+      compressed.write(buffer, 0, deflater.deflate(buffer));
+    }
+    deflater.end();
+    byte[] idat = compressed.toByteArray();
+
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    png.write(new byte[] {(byte) 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A});
+    writeChunk(png, "CgBI", new byte[] {0x50, 0x00, 0x20, 0x02});
+    byte[] ihdr =
+        ByteBuffer.allocate(13).putInt(WIDTH).putInt(HEIGHT).put((byte) 8).put((byte) 6).array();
+    writeChunk(png, "IHDR", ihdr);
+    int chunkSize = Math.max(1, idat.length / idatChunkCount + 1);
+    for (int offset = 0; offset < idat.length; offset += chunkSize) {
+      int end = Math.min(idat.length, offset + chunkSize);
+      writeChunk(png, "IDAT", Arrays.copyOfRange(idat, offset, end));
+    }
+    writeChunk(png, "IEND", new byte[0]);
+    return png.toByteArray();
+  }
+
+  private static int paeth(int a, int b, int c) {
+    int p = a + b - c;
+    int pa = Math.abs(p - a);
+    int pb = Math.abs(p - b);
+    int pc = Math.abs(p - c);
+    return pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+  }
+
+  private static void writeChunk(ByteArrayOutputStream out, String type, byte[] data)
+      throws IOException {
+    byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    out.write(ByteBuffer.allocate(4).putInt(data.length).array());
+    out.write(typeBytes);
+    out.write(data);
+    CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(data);
+    out.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+  }
+}
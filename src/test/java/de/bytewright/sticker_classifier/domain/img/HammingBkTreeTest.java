@@ -0,0 +1,40 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class HammingBkTreeTest {
+
+  @Test
+  void queryMatchesBruteForce() {
+    Random random = new Random(42);
+    int count = 500;
+    long[][] hashes = new long[count][];
+    HammingBkTree tree = new HammingBkTree(count, 64);
+    for (int i = 0; i < count; i++) {
+      long value =
+          i > 0 && random.nextBoolean()
+              ? hashes[random.nextInt(i)][0] ^ (1L << random.nextInt(64))
+              : random.nextLong();
+      hashes[i] = new long[] {value};
+      tree.add(hashes[i]);
+    }
+
+    for (int i = 0; i < count; i++) {
+      List<Integer> expected = new ArrayList<>();
+      for (int j = 0; j < count; j++) {
+        if (Long.bitCount(hashes[i][0] ^ hashes[j][0]) <= 6) {
+          expected.add(j);
+        }
+      }
+      List<Integer> found = new ArrayList<>();
+      tree.query(i, 6, found::add);
+
+      assertThat(found).containsExactlyInAnyOrderElementsOf(expected);
+    }
+  }
+}
@@ -3,11 +3,17 @@ package de.bytewright.sticker_classifier.domain.img;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 
+import de.bytewright.sticker_classifier.domain.img.ImageValidationReport.Status;
+import de.bytewright.sticker_classifier.domain.img.PngStructureValidator.Defect;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class ImageValidationServiceTest {
 
@@ -23,4 +29,53 @@ class ImageValidationServiceTest {
     // THEN
     assertThat(paths).hasSize(1);
   }
+
+  @Test
+  void backsUpOriginalsOfPacksWithTheSameFileNames(@TempDir Path root) throws IOException {
+    byte[] cgbi = CgBIPNGConverterTest.createCgBIPng(CgBIPNGConverterTest.samplePixels(), 2);
+    Path first = write(root.resolve("pack_a/1.png"), cgbi);
+    Path second = write(root.resolve("pack_b/1.png"), cgbi);
+
+    ImageValidationReport report = new ImageValidationService().validate(List.of(first, second));
+
+    assertThat(report.outcomes().values())
+        .allSatisfy(outcome -> assertThat(outcome.status()).isEqualTo(Status.REPAIRED));
+    assertThat(root.resolve("broken_imgs/pack_a_1.png")).hasBinaryContent(cgbi);
+    assertThat(root.resolve("broken_imgs/pack_b_1.png")).hasBinaryContent(cgbi);
+  }
+
+  @Test
+  void reusesIdenticalBackupsAndNumbersOthers(@TempDir Path root) throws IOException {
+    byte[] cgbi = CgBIPNGConverterTest.createCgBIPng(CgBIPNGConverterTest.samplePixels(), 1);
+    Path sticker = write(root.resolve("pack/1.png"), cgbi);
+    write(root.resolve("broken_imgs/pack_1.png"), cgbi);
+
+    assertThat(ImageValidationService.saveOriginal(sticker))
+        .isEqualTo(root.resolve("broken_imgs/pack_1.png"));
+    write(root.resolve("broken_imgs/pack_1.png"), new byte[] {1});
+    assertThat(ImageValidationService.saveOriginal(sticker))
+        .isEqualTo(root.resolve("broken_imgs/pack_1_1.png"))
+        .hasBinaryContent(cgbi);
+  }
+
+  @Test
+  void movesStructurallyBrokenFilesToQuarantine(@TempDir Path root) throws IOException {
+    byte[] png = PngStructureValidatorTest.validPng();
+    Path valid = write(root.resolve("pack/valid.png"), png);
+    Path truncated = write(root.resolve("pack/truncated.png"), Arrays.copyOf(png, png.length / 2));
+
+    ImageValidationReport report = new ImageValidationService().validate(List.of(valid, truncated));
+
+    assertThat(report.usableFiles()).containsExactly(valid);
+    assertThat(report.outcomes().get(truncated).defect()).isEqualTo(Defect.TRUNCATED);
+    assertThat(report.countByDefect()).containsEntry(Defect.TRUNCATED, 1);
+    assertThat(truncated).doesNotExist();
+    assertThat(root.resolve("pack_invalid/truncated.png")).exists();
+    assertThat(valid).exists();
+  }
+
+  private static Path write(Path file, byte[] content) throws IOException {
+    Files.createDirectories(file.getParent());
+    return Files.write(file, content);
+  }
 }
@@ -0,0 +1,224 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.bytewright.sticker_classifier.domain.img.PngStructureValidator.Defect;
+import de.bytewright.sticker_classifier.domain.img.PngStructureValidator.Result;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+
+class PngStructureValidatorTest {
+
+  @Test
+  void acceptsValidPng() throws IOException {
+    assertThat(check(validPng())).isEmpty();
+  }
+
+  @Test
+  void detectsTruncatedFile() throws IOException {
+    byte[] png = validPng();
+
+    assertThat(check(Arrays.copyOf(png, png.length - 20)))
+        .map(Result::defect)
+        .contains(Defect.TRUNCATED);
+  }
+
+  @Test
+  void detectsCrcMismatch() throws IOException {
+    byte[] png = validPng();
+    png[20] ^= 0x01; // inside the IHDR payload
+
+    assertThat(check(png)).map(Result::defect).contains(Defect.CRC_MISMATCH);
+  }
+
+  @Test
+  void detectsMissingSignature() throws IOException {
+    assertThat(check("no png at all".getBytes())).map(Result::defect).contains(Defect.NOT_PNG);
+  }
+
+  @Test
+  void detectsIncompleteImageData() throws IOException {
+    byte[] rows = Arrays.copyOf(rgbaRows(40, 30), 161 * 20);
+
+    Optional<Result> result = check(png(ihdr(40, 30, 6, 0), idat(deflate(rows))));
+
+    assertThat(result).map(Result::defect).contains(Defect.INCOMPLETE_IMAGE_DATA);
+    assertThat(result).map(Result::message).contains("got 3220 of 4830 bytes of image data");
+  }
+
+  @Test
+  void detectsInvalidFilterByte() throws IOException {
+    byte[] rows = rgbaRows(40, 30);
+    rows[0] = 5;
+
+    Optional<Result> result = check(png(ihdr(40, 30, 6, 0), idat(deflate(rows))));
+
+    assertThat(result).map(Result::defect).contains(Defect.CORRUPT_IMAGE_DATA);
+    assertThat(result).map(Result::message).contains("invalid filter type 5 in row 0");
+  }
+
+  @Test
+  void findsInvalidFilterBytesAcrossChunkAndBufferBoundaries() throws IOException {
+    // 801 byte scanlines never line up with the 16 KiB inflate buffer or the 1000 byte chunks
+    byte[] rows = rgbaRows(200, 100);
+    byte[] compressed = deflate(rows);
+    assertThat(check(png(ihdr(200, 100, 6, 0), idat(compressed, 1000)))).isEmpty();
+
+    rows[801 * 90] = (byte) 0xFF;
+    Optional<Result> result = check(png(ihdr(200, 100, 6, 0), idat(deflate(rows), 1000)));
+
+    assertThat(result).map(Result::message).contains("invalid filter type 255 in row 90");
+  }
+
+  @Test
+  void detectsBrokenZlibStream() throws IOException {
+    byte[] compressed = deflate(rgbaRows(40, 30));
+    compressed[0] = 0; // zlib header
+
+    Optional<Result> result = check(png(ihdr(40, 30, 6, 0), idat(compressed)));
+
+    assertThat(result).map(Result::defect).contains(Defect.CORRUPT_IMAGE_DATA);
+  }
+
+  @Test
+  void detectsImageDataSplitByOtherChunks() throws IOException {
+    byte[] compressed = deflate(rgbaRows(40, 30));
+    int half = compressed.length / 2;
+
+    Optional<Result> result =
+        check(
+            png(
+                ihdr(40, 30, 6, 0),
+                chunk("IDAT", Arrays.copyOf(compressed, half)),
+                chunk("tEXt", "Comment\0split".getBytes(StandardCharsets.US_ASCII)),
+                chunk("IDAT", Arrays.copyOfRange(compressed, half, compressed.length))));
+
+    assertThat(result).map(Result::defect).contains(Defect.CORRUPT_IMAGE_DATA);
+    assertThat(result).map(Result::message).contains("IDAT chunks are not consecutive");
+  }
+
+  @Test
+  void rejectsOversizedImagesBeforeReadingTheirData() throws IOException {
+    int width = PngStructureValidator.MAX_DIMENSION + 1;
+
+    assertThat(check(png(ihdr(width, 1, 6, 0))))
+        .map(Result::defect)
+        .contains(Defect.IMAGE_TOO_LARGE);
+    assertThat(check(png(ihdr(8192, 8193, 6, 0))))
+        .map(Result::defect)
+        .contains(Defect.IMAGE_TOO_LARGE);
+  }
+
+  @Test
+  void countsTheBytesOfAllAdam7Passes() throws IOException {
+    // 3x3 gray: passes 1, 4, 5, 6 and 7 hold 1, 1, 2, 2x1 and 3 pixels, plus a filter byte per row
+    byte[] passes = new byte[15];
+    byte[] png = png(ihdr(3, 3, 0, 1), idat(deflate(passes)));
+
+    assertThat(check(png)).isEmpty();
+    assertThat(ImageIO.read(new ByteArrayInputStream(png))).isNotNull();
+    assertThat(check(png(ihdr(3, 3, 0, 1), idat(deflate(Arrays.copyOf(passes, 14))))))
+        .map(Result::message)
+        .contains("got 14 of 15 bytes of image data");
+  }
+
+  private static Optional<Result> check(byte[] data) throws IOException {
+    return PngStructureValidator.check(new DataInputStream(new ByteArrayInputStream(data)));
+  }
+
+  static byte[] validPng() throws IOException {
+    BufferedImage img = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+    for (int y = 0; y < img.getHeight(); y++) {
+      for (int x = 0; x < img.getWidth(); x++) {
+        img.setRGB(x, y, (x * 6) << 24 | (y * 8) << 16 | x << 8 | y);
+      }
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(img, "png", out);
+    return out.toByteArray();
+  }
+
+  /** Unfiltered RGBA scanlines, every pixel byte is above the highest filter type */
+  private static byte[] rgbaRows(int width, int height) {
+    int scanline = width * 4 + 1;
+    byte[] rows = new byte[scanline * height];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = i % scanline == 0 ? 0 : (byte) (0x80 | i);
+    }
+    return rows;
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater();
+    deflater.setInput(data);
+    deflater.finish();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    while (!deflater.finished()) {
+      out.write(buffer, 0, deflater.deflate(buffer));
+    }
+    deflater.end();
+    return out.toByteArray();
+  }
+
+  private static byte[] ihdr(int width, int height, int colorType, int interlace) {
+    return chunk(
+        "IHDR",
+        ByteBuffer.allocate(13)
+            .putInt(width)
+            .putInt(height)
+            .put((byte) 8)
+            .put((byte) colorType)
+            .put((byte) 0)
+            .put((byte) 0)
+            .put((byte) interlace)
+            .array());
+  }
+
+  private static byte[] idat(byte[] compressed) {
+    return idat(compressed, compressed.length);
+  }
+
+  private static byte[] idat(byte[] compressed, int chunkSize) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int offset = 0; offset < compressed.length; offset += chunkSize) {
+      int end = Math.min(offset + chunkSize, compressed.length);
+      out.writeBytes(chunk("IDAT", Arrays.copyOfRange(compressed, offset, end)));
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] chunk(String type, byte[] data) {
+    byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(data);
+    return ByteBuffer.allocate(data.length + 12)
+        .putInt(data.length)
+        .put(typeBytes)
+        .put(data)
+        .putInt((int) crc.getValue())
+        .array();
+  }
+
+  private static byte[] png(byte[]... chunks) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.writeBytes(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+    for (byte[] chunk : chunks) {
+      out.writeBytes(chunk);
+    }
+    out.writeBytes(chunk("IEND", new byte[0]));
+    return out.toByteArray();
+  }
+}
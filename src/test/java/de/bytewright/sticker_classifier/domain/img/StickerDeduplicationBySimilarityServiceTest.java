@@ -37,4 +37,21 @@ class StickerDeduplicationBySimilarityServiceTest {
       assertThat(stringListMap).isNotEmpty();
     }
   }
+
+  @Test
+  void combinedDirectoryNameDependsOnTheFullPaths() {
+    Path root = Path.of("out");
+    Set<Path> catsA = Set.of(root.resolve("a/cats"), root.resolve("dogs"));
+    Set<Path> catsB = Set.of(root.resolve("b/cats"), root.resolve("dogs"));
+
+    String name = StickerDeduplicationBySimilarityService.combinedDirectoryName(root, catsA);
+
+    assertThat(name).matches("merged_[0-9a-f]{16}");
+    assertThat(StickerDeduplicationBySimilarityService.combinedDirectoryName(root, catsB))
+        .isNotEqualTo(name);
+    assertThat(
+            StickerDeduplicationBySimilarityService.combinedDirectoryName(
+                root, new LinkedHashSet<>(List.of(root.resolve("dogs"), root.resolve("a/cats")))))
+        .isEqualTo(name);
+  }
 }
@@ -0,0 +1,40 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import dev.brachtendorf.jimagehash.hash.Hash;
+import dev.brachtendorf.jimagehash.hashAlgorithms.PerceptiveHash;
+import java.awt.image.BufferedImage;
+import java.math.BigInteger;
+import org.junit.jupiter.api.Test;
+
+class StickerSignatureTest {
+
+  @Test
+  void perceptualHashWordsRoundTripToTheHashValue() {
+    PerceptiveHash pHash = StickerSignature.createPerceptiveHash(64);
+    BufferedImage image = CascadedSimilarityTest.sticker(false);
+    Hash hash = pHash.hash(image);
+
+    long[] words = StickerSignature.of(image, pHash).perceptualHash();
+
+    BigInteger restored = BigInteger.ZERO;
+    for (int w = words.length - 1; w >= 0; w--) {
+      restored = restored.shiftLeft(64).or(new BigInteger(Long.toUnsignedString(words[w])));
+    }
+    assertThat(words).hasSize((hash.getBitResolution() + 63) / 64);
+    assertThat(restored).isEqualTo(hash.getHashValue());
+  }
+
+  @Test
+  void missingImageMakesPerceptualHashMaximallyDistant() {
+    PerceptiveHash pHash = StickerSignature.createPerceptiveHash(64);
+    BufferedImage image = CascadedSimilarityTest.sticker(false);
+    StickerSignature readable = StickerSignature.of(image, pHash);
+    StickerSignature deleted = StickerSignature.of(image, pHash, () -> null);
+
+    assertThat(deleted.perceptualHash()).isEmpty();
+    assertThat(readable.perceptualHashDistance(deleted)).isEqualTo(1);
+    assertThat(readable.differenceHashDistance(deleted)).isZero();
+  }
+}
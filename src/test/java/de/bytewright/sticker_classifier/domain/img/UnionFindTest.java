@@ -0,0 +1,65 @@
+package de.bytewright.sticker_classifier.domain.img;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.bytewright.sticker_classifier.domain.img.StickerDeduplicationBySimilarityService.ClusteredFiles;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class UnionFindTest {
+
+  @Test
+  void unionMergesSets() {
+    UnionFind unionFind = new UnionFind(5);
+
+    assertThat(unionFind.union(0, 1)).isTrue();
+    assertThat(unionFind.union(3, 4)).isTrue();
+    assertThat(unionFind.union(1, 0)).isFalse();
+
+    assertThat(unionFind.find(0)).isEqualTo(unionFind.find(1));
+    assertThat(unionFind.find(3)).isEqualTo(unionFind.find(4));
+    assertThat(unionFind.find(0)).isNotEqualTo(unionFind.find(3));
+    assertThat(unionFind.find(2)).isEqualTo(2);
+  }
+
+  @Test
+  void findKeepsTheRootWhileCompressingTheDeepestPath() {
+    int levels = 20;
+    int size = 1 << levels;
+    UnionFind unionFind = new UnionFind(size);
+    // Merging roots of equal rank pairwise is the only way to grow a tree under union by rank, the
+    // last element ends up one link deeper per round
+    for (int step = 1; step < size; step *= 2) {
+      for (int i = 0; i < size; i += 2 * step) {
+        unionFind.union(i, i + step);
+      }
+    }
+
+    for (int round = 0; round < levels; round++) {
+      assertThat(unionFind.find(size - 1)).isZero();
+    }
+    assertThat(unionFind.union(size - 1, size / 2)).isFalse();
+    for (int i = 0; i < size; i++) {
+      assertThat(unionFind.find(i)).isZero();
+    }
+  }
+
+  @Test
+  void createClustersAveragesEdgeScores() {
+    List<Path> files = List.of(Path.of("a.png"), Path.of("b.png"), Path.of("c.png"));
+    UnionFind unionFind = new UnionFind(3);
+    unionFind.union(0, 1);
+    double[] scoreSums = {0.1, 0, 0};
+    int[] edgeCounts = {1, 0, 0};
+
+    List<ClusteredFiles> clusters =
+        StickerDeduplicationBySimilarityService.createClusters(
+            files, unionFind, scoreSums, edgeCounts);
+
+    assertThat(clusters).hasSize(1);
+    assertThat(clusters.getFirst().avgScore()).isEqualTo(0.1);
+    assertThat(clusters.getFirst().filePaths())
+        .containsExactlyInAnyOrder(files.get(0), files.get(1));
+  }
+}
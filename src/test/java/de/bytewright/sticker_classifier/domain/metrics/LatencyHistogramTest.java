@@ -0,0 +1,57 @@
+package de.bytewright.sticker_classifier.domain.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void bucketsCoverEveryValueWithoutGaps() {
+    for (long micros = 0; micros < 100_000; micros++) {
+      int index = LatencyHistogram.indexOf(micros);
+      assertThat(LatencyHistogram.highestValueOf(index)).isGreaterThanOrEqualTo(micros);
+      if (index > 0) {
+        assertThat(LatencyHistogram.highestValueOf(index - 1)).isLessThan(micros);
+      }
+    }
+  }
+
+  @Test
+  void percentilesStayWithinRelativePrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int millis = 1; millis <= 1000; millis++) {
+      histogram.record(Duration.ofMillis(millis));
+    }
+
+    LatencyHistogram.Summary summary = histogram.summary();
+
+    assertThat(summary.count()).isEqualTo(1000);
+    assertThat(summary.p50().toNanos() / 1e6).isCloseTo(500, within(500 * 0.016));
+    assertThat(summary.p95().toNanos() / 1e6).isCloseTo(950, within(950 * 0.016));
+    assertThat(summary.p99().toNanos() / 1e6).isCloseTo(990, within(990 * 0.016));
+    assertThat(summary.max()).isEqualTo(Duration.ofMillis(1000));
+    assertThat(summary.mean().toNanos() / 1e6).isCloseTo(500.5, within(0.01));
+  }
+
+  @Test
+  void emptyHistogramReportsZero() {
+    LatencyHistogram.Summary summary = new LatencyHistogram().summary();
+
+    assertThat(summary.count()).isZero();
+    assertThat(summary.p99()).isEqualTo(Duration.ZERO);
+  }
+
+  @Test
+  void clampsValuesOutsideTheTrackableRange() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.recordNanos(-5);
+    histogram.record(Duration.ofDays(365));
+
+    assertThat(histogram.summary().count()).isEqualTo(2);
+    assertThat(histogram.percentile(0.0)).isEqualTo(Duration.ZERO);
+    assertThat(histogram.percentile(1.0)).isGreaterThan(Duration.ofDays(12));
+  }
+}
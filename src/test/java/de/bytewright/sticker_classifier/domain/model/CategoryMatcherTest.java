@@ -0,0 +1,36 @@
+package de.bytewright.sticker_classifier.domain.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class CategoryMatcherTest {
+  private static final ClassificationCategory BEAR = new ClassificationCategory("Bear", 1, "");
+  private static final ClassificationCategory LOVE = new ClassificationCategory("Love", 2, "");
+  private static final ClassificationCategory CAT = new ClassificationCategory("Cat", 3, "");
+  private static final CompoundClassificationCategory BEAR_LOVE =
+      new CompoundClassificationCategory("BearLove", Set.of(BEAR, LOVE), "");
+
+  private final CategoryMatcher matcher =
+      CategoryMatcher.compile(List.of(CAT, BEAR, LOVE), List.of(BEAR_LOVE));
+
+  @Test
+  void matchesCategoriesCaseInsensitive() {
+    assertThat(matcher.match(Set.of("cat", "dog"))).containsExactly("Cat");
+  }
+
+  @Test
+  void matchesCompoundOnlyForExactMemberSet() {
+    assertThat(matcher.match(Set.of("bear", "love")))
+        .containsExactlyInAnyOrder("Bear", "Love", "BearLove");
+    assertThat(matcher.match(Set.of("bear", "love", "cat")))
+        .containsExactlyInAnyOrder("Bear", "Love", "Cat");
+  }
+
+  @Test
+  void returnsEmptySetWithoutMatch() {
+    assertThat(matcher.match(Set.of("dog"))).isEmpty();
+  }
+}
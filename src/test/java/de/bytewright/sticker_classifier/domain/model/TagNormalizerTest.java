@@ -0,0 +1,33 @@
+package de.bytewright.sticker_classifier.domain.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TagNormalizerTest {
+  private final TagNormalizer normalizer =
+      new TagNormalizer(List.of("Brown Bear", "Cat", "Happy", "Heart Eyes", "Hungry"));
+
+  @Test
+  void resolvesSeparatorAndPluralVariants() {
+    assertThat(normalizer.resolve("brown_bear")).contains("Brown Bear");
+    assertThat(normalizer.resolve("brownbear")).contains("Brown Bear");
+    assertThat(normalizer.resolve("bear-brown")).contains("Brown Bear");
+    assertThat(normalizer.resolve("cats")).contains("Cat");
+    assertThat(normalizer.resolve("Heart eyes!")).contains("Heart Eyes");
+  }
+
+  @Test
+  void resolvesSmallTyposOnlyWhenUnambiguous() {
+    assertThat(normalizer.resolve("brown baer")).contains("Brown Bear");
+    assertThat(normalizer.resolve("hapy")).isEmpty();
+    assertThat(normalizer.resolve("dog")).isEmpty();
+  }
+
+  @Test
+  void limitsEditDistance() {
+    assertThat(TagNormalizer.editDistance("kitten", "sitting", 5)).isEqualTo(3);
+    assertThat(TagNormalizer.editDistance("kitten", "sitting", 1)).isEqualTo(2);
+  }
+}
@@ -0,0 +1,88 @@
+package de.bytewright.sticker_classifier.orchestration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import de.bytewright.sticker_classifier.adapter.storageInMemory.InMemoryStorage;
+import de.bytewright.sticker_classifier.domain.event.ConfigurationLoadedEvent;
+import de.bytewright.sticker_classifier.domain.llm.PromptRequestWithImage;
+import de.bytewright.sticker_classifier.domain.model.ClassificationCategory;
+import de.bytewright.sticker_classifier.domain.model.ClassificationResult;
+import de.bytewright.sticker_classifier.domain.session.ProcessingState;
+import de.bytewright.sticker_classifier.orchestration.llm.PromptRequestCoordinator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+
+class ClassifyStickersTest {
+  private static final List<ClassificationCategory> CATEGORIES =
+      List.of(new ClassificationCategory("Cat", 1, "a cat"));
+  private final InMemoryStorage storage = new InMemoryStorage();
+  private final PromptRequestCoordinator coordinator = mock();
+  private final ClassifyStickers classifyStickers =
+      new ClassifyStickers(
+          storage, coordinator, mock(FileDiscovery.class), mock(ApplicationEventPublisher.class));
+
+  @TempDir Path workDir;
+
+  @Test
+  void resumeFailsPendingRequestsWhoseFileIsGone() throws IOException {
+    Path remaining = Files.write(workDir.resolve("remaining.png"), new byte[1]);
+    // Moved to _processed by the output stage, the crash came before its result was stored
+    Path written = workDir.resolve("written.png");
+    UUID sessionId = interruptedSession(remaining, written);
+
+    classifyStickers.handleConfigurationLoaded(config());
+
+    ArgumentCaptor<PromptRequestWithImage> scheduled =
+        ArgumentCaptor.forClass(PromptRequestWithImage.class);
+    verify(coordinator).schedule(scheduled.capture());
+    assertThat(scheduled.getValue().imagePath()).isEqualTo(remaining);
+    assertThat(storage.getPendingImagePaths(sessionId)).containsExactly(remaining);
+
+    storage.storeResult(sessionId, remaining, new ClassificationResult());
+
+    assertThat(storage.getProgress(sessionId).state()).isEqualTo(ProcessingState.COMPLETED);
+    assertThat(storage.getProgress(sessionId).failedCount()).isEqualTo(1);
+  }
+
+  @Test
+  void resumeCompletesSessionWhenEveryPendingFileIsGone() {
+    UUID sessionId = interruptedSession(workDir.resolve("written.png"));
+
+    classifyStickers.handleConfigurationLoaded(config());
+
+    verify(coordinator, never()).schedule(any());
+    assertThat(storage.getProgress(sessionId).state()).isEqualTo(ProcessingState.COMPLETED);
+    assertThat(storage.findUnfinishedSession(workDir, workDir.resolve("out"))).isEmpty();
+  }
+
+  private UUID interruptedSession(Path... images) {
+    UUID sessionId = storage.createSession(CATEGORIES, List.of(), workDir, workDir.resolve("out"));
+    storage.updateState(sessionId, ProcessingState.CLASSIFYING);
+    for (Path image : images) {
+      storage.addRequest(
+          sessionId,
+          PromptRequestWithImage.builder().imagePath(image).requestParameter(sessionId).build());
+    }
+    return sessionId;
+  }
+
+  private ConfigurationLoadedEvent config() {
+    return ConfigurationLoadedEvent.builder()
+        .workDirectory(workDir)
+        .outputDirectory(workDir.resolve("out"))
+        .classifications(CATEGORIES)
+        .compoundCategories(List.of())
+        .build();
+  }
+}
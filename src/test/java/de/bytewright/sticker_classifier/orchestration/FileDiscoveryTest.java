@@ -0,0 +1,38 @@
+package de.bytewright.sticker_classifier.orchestration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig;
+import de.bytewright.sticker_classifier.domain.img.ImageValidationService;
+import de.bytewright.sticker_classifier.domain.storage.SessionStorage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileDiscoveryTest {
+  private final UUID sessionId = UUID.randomUUID();
+  private final ImageValidationService imageService = mock();
+  private final AppOrchestrationConfig config = mock();
+  private final FileDiscovery fileDiscovery =
+      new FileDiscovery(mock(SessionStorage.class), imageService, config);
+
+  @Test
+  void keepsTheFirstCopyInPathOrder(@TempDir Path dir) throws IOException {
+    when(config.getClassification()).thenReturn(new AppOrchestrationConfig.ClassificationConfig());
+    when(imageService.validateAndFixImages(any())).thenAnswer(call -> call.getArgument(0));
+    Path first = Files.write(dir.resolve("a.png"), new byte[] {1});
+    Path second = Files.write(dir.resolve("b.png"), new byte[] {1});
+    Path third = Files.write(dir.resolve("c.png"), new byte[] {1});
+    Path unique = Files.write(dir.resolve("d.png"), new byte[] {2});
+
+    assertThat(fileDiscovery.discoverNewFiles(sessionId, List.of(unique, third, second, first)))
+        .containsExactly(first, unique);
+  }
+}
@@ -0,0 +1,111 @@
+package de.bytewright.sticker_classifier.orchestration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig.OutputConfig.Mode;
+import de.bytewright.sticker_classifier.orchestration.output.OutputStrategy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileOutputStageTest {
+  @TempDir Path tempDir;
+  private final Queue<String> written = new ConcurrentLinkedQueue<>();
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Test
+  void movesTheOriginalBeforePlacingLinks() throws IOException {
+    Path source = Files.write(tempDir.resolve("sticker.png"), new byte[] {1, 2, 3});
+    Path processed = tempDir.resolve("_processed/sticker.png");
+    Path target = tempDir.resolve("out/cat/sticker.png");
+    FileOutputStage stage = new FileOutputStage(1, 4, OutputStrategy.forMode(Mode.SYMLINK));
+
+    stage.submit(job(source, List.of(target), processed));
+    stage.stop();
+
+    assertThat(source).doesNotExist();
+    assertThat(processed).exists();
+    assertThat(Files.readSymbolicLink(target)).isEqualTo(processed.toAbsolutePath());
+    assertThat(written).containsExactly("sticker.png");
+  }
+
+  @Test
+  void runsTheJobOnTheCallerWhenTheQueueIsFull() throws Exception {
+    FileOutputStage stage = new FileOutputStage(1, 1, blockingOn("first.png"));
+    Queue<String> threads = new ConcurrentLinkedQueue<>();
+
+    stage.submit(job("first.png"));
+    stage.submit(job("queued.png"));
+    Path third = tempDir.resolve("third.png");
+    stage.submit(
+        new FileOutputStage.OutputJob(
+            third,
+            List.of(tempDir.resolve("out/third.png")),
+            null,
+            () -> threads.add(Thread.currentThread().getName())));
+
+    assertThat(threads).containsExactly(Thread.currentThread().getName());
+    release.countDown();
+    stage.stop();
+    assertThat(written).containsExactlyInAnyOrder("first.png", "queued.png");
+  }
+
+  @Test
+  void writesQueuedJobsOnShutdownAndRejectsLaterOnes() throws Exception {
+    FileOutputStage stage = new FileOutputStage(1, 8, blockingOn("first.png"));
+    stage.submit(job("first.png"));
+    for (int i = 0; i < 5; i++) {
+      stage.submit(job("queued" + i + ".png"));
+    }
+
+    CompletableFuture<Void> stopped = CompletableFuture.runAsync(stage::stop);
+    while (stage.isRunning()) {
+      Thread.sleep(5);
+    }
+    stage.submit(job("late.png"));
+    release.countDown();
+    stopped.get(5, TimeUnit.SECONDS);
+
+    assertThat(written)
+        .containsExactlyInAnyOrder(
+            "first.png",
+            "queued0.png",
+            "queued1.png",
+            "queued2.png",
+            "queued3.png",
+            "queued4.png");
+  }
+
+  private OutputStrategy blockingOn(String name) {
+    return (source, target) -> {
+      if (target.getFileName().toString().equals(name)) {
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return source;
+    };
+  }
+
+  private FileOutputStage.OutputJob job(String name) {
+    return job(tempDir.resolve(name), List.of(tempDir.resolve("out").resolve(name)), null);
+  }
+
+  private FileOutputStage.OutputJob job(Path source, List<Path> targets, Path processedTarget) {
+    return new FileOutputStage.OutputJob(
+        source,
+        targets,
+        processedTarget,
+        () -> written.add(source.getFileName().toString()));
+  }
+}
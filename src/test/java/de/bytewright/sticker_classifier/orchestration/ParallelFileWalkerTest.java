@@ -0,0 +1,59 @@
+package de.bytewright.sticker_classifier.orchestration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParallelFileWalkerTest {
+
+  @Test
+  void findsSameFilesAsFilesWalk(@TempDir Path root) throws IOException {
+    Random random = new Random(7);
+    for (int i = 0; i < 200; i++) {
+      Path dir = root;
+      for (int depth = random.nextInt(6); depth > 0; depth--) {
+        dir = dir.resolve("dir" + random.nextInt(4));
+      }
+      Files.createDirectories(dir);
+      Files.write(dir.resolve("file%d.%s".formatted(i, i % 3 == 0 ? "txt" : "png")), new byte[1]);
+    }
+    Set<Path> found = ConcurrentHashMap.newKeySet();
+
+    long count = ParallelFileWalker.walk(root, 4, ParallelFileWalkerTest::isPng, found::add);
+
+    List<Path> expected;
+    try (Stream<Path> paths = Files.walk(root)) {
+      expected = paths.filter(Files::isRegularFile).filter(ParallelFileWalkerTest::isPng).toList();
+    }
+    assertThat(count).isEqualTo(expected.size());
+    assertThat(found).containsExactlyInAnyOrderElementsOf(expected);
+  }
+
+  @Test
+  void descendsIntoDirectoriesWhateverTheirName(@TempDir Path root) throws IOException {
+    Path pngDir = Files.createDirectories(root.resolve("album.png"));
+    Path otherDir = Files.createDirectories(root.resolve("album"));
+    Path nested = Files.write(pngDir.resolve("a.png"), new byte[1]);
+    Path other = Files.write(otherDir.resolve("b.png"), new byte[1]);
+    Files.write(otherDir.resolve("c.txt"), new byte[1]);
+    Set<Path> found = ConcurrentHashMap.newKeySet();
+
+    long count = ParallelFileWalker.walk(root, 2, ParallelFileWalkerTest::isPng, found::add);
+
+    assertThat(count).isEqualTo(2);
+    assertThat(found).containsExactlyInAnyOrder(nested, other);
+  }
+
+  private static boolean isPng(Path path) {
+    return path.getFileName().toString().endsWith(".png");
+  }
+}
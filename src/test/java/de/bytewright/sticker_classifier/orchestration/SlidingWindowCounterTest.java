@@ -0,0 +1,53 @@
+package de.bytewright.sticker_classifier.orchestration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class SlidingWindowCounterTest {
+  private final AtomicLong clock = new AtomicLong(1_000);
+  private final SlidingWindowCounter counter = new SlidingWindowCounter(60, clock::get);
+
+  @Test
+  void sumsOnlyBucketsInsideTheWindow() {
+    counter.recordSuccess();
+    counter.recordError();
+    clock.addAndGet(10);
+    counter.recordSuccess();
+    counter.recordSuccess();
+
+    assertThat(counter.successes(5)).isEqualTo(2);
+    assertThat(counter.successes(60)).isEqualTo(3);
+    assertThat(counter.errors(60)).isEqualTo(1);
+  }
+
+  @Test
+  void reusesBucketsAfterTheRingWrapped() {
+    counter.recordSuccess();
+    clock.addAndGet(60);
+    counter.recordSuccess();
+
+    assertThat(counter.successes(60)).isEqualTo(1);
+    clock.addAndGet(120);
+    assertThat(counter.successes(60)).isZero();
+  }
+
+  @Test
+  void countsTheCurrentSecondOnTopOfTheCachedTotals() {
+    counter.recordSuccess();
+    clock.addAndGet(1);
+    counter.recordError();
+    assertThat(counter.successes(60)).isEqualTo(1);
+    assertThat(counter.errors(60)).isEqualTo(1);
+
+    counter.recordSuccess();
+    counter.recordError();
+
+    assertThat(counter.successes(60)).isEqualTo(2);
+    assertThat(counter.errors(60)).isEqualTo(2);
+    clock.addAndGet(59);
+    assertThat(counter.successes(60)).isEqualTo(1);
+    assertThat(counter.errors(60)).isEqualTo(2);
+  }
+}
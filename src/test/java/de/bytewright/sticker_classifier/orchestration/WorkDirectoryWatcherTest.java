@@ -0,0 +1,167 @@
+package de.bytewright.sticker_classifier.orchestration;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig;
+import de.bytewright.sticker_classifier.domain.event.ClassificationSessionStartedEvent;
+import de.bytewright.sticker_classifier.domain.storage.SessionStorage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+class WorkDirectoryWatcherTest {
+  private static final long DEBOUNCE_MILLIS = 2000;
+  private final UUID sessionId = UUID.randomUUID();
+  private final AtomicLong clock = new AtomicLong();
+  private final ClassifyStickers classifyStickers = mock();
+  private final FileDiscovery fileDiscovery = mock();
+  private final SessionStorage sessionStorage = mock();
+  private final AppOrchestrationConfig config = mock();
+  private final WorkDirectoryWatcher watcher =
+      new WorkDirectoryWatcher(
+          classifyStickers, fileDiscovery, sessionStorage, config, clock::get);
+
+  @TempDir Path workDir;
+
+  @AfterEach
+  void stopWatching() {
+    watcher.stop();
+  }
+
+  @Test
+  void coalescesEventsUntilTheFileStayedQuiet() throws IOException {
+    Path sticker = png(workDir.resolve("sticker.png"));
+    start();
+
+    watcher.handleEvent(sticker, ENTRY_CREATE);
+    advance(1500);
+    watcher.handleEvent(sticker, ENTRY_MODIFY);
+    advance(1000);
+    watcher.flushSettledFiles(DEBOUNCE_MILLIS);
+    verify(classifyStickers, never()).ingestNewFiles(any(), any());
+
+    advance(1500);
+    watcher.flushSettledFiles(DEBOUNCE_MILLIS);
+    watcher.flushSettledFiles(DEBOUNCE_MILLIS);
+
+    assertThat(ingested()).containsExactly(sticker);
+  }
+
+  @Test
+  void skipsDirectoriesWrittenByThePipeline() throws IOException {
+    Path sticker = png(workDir.resolve("pack/sticker.png"));
+    List<String> pipelineDirs =
+        List.of(
+            "pack_processed",
+            "pack_duplicates",
+            "pack_error",
+            "pack_invalid",
+            "broken_imgs",
+            "out");
+    for (String dir : pipelineDirs) {
+      png(workDir.resolve(dir).resolve("sticker.png"));
+    }
+    start();
+
+    watcher.reconcile(workDir);
+    advance(DEBOUNCE_MILLIS + 1);
+    watcher.flushSettledFiles(DEBOUNCE_MILLIS);
+
+    assertThat(ingested()).containsExactly(sticker);
+  }
+
+  @Test
+  void reconciliationPicksUpFilesWithoutEvents() throws IOException {
+    Path known = png(workDir.resolve("known.png"));
+    Path missed = png(workDir.resolve("pack/missed.png"));
+    when(fileDiscovery.isKnownFile(sessionId, known)).thenReturn(true);
+    start();
+    advance(DEBOUNCE_MILLIS + 1);
+    watcher.flushSettledFiles(DEBOUNCE_MILLIS);
+    verify(classifyStickers, never()).ingestNewFiles(any(), any());
+
+    watcher.reconcile(workDir);
+    advance(DEBOUNCE_MILLIS + 1);
+    watcher.flushSettledFiles(DEBOUNCE_MILLIS);
+
+    assertThat(ingested()).containsExactly(missed);
+  }
+
+  @Test
+  void keepsWatchingAfterAnEventFailed(@TempDir Path outside) throws Exception {
+    when(fileDiscovery.isKnownFile(any(), any())).thenThrow(new IllegalStateException("boom"));
+    start();
+    // Moved in as a whole, so only the directory creates an event and its scan fails
+    Path pack = Files.createDirectory(outside.resolve("pack"));
+    png(pack.resolve("sticker.png"));
+    Files.move(pack, workDir.resolve("pack"));
+    Thread.sleep(200);
+
+    Path late = png(workDir.resolve("late.png"));
+    for (int i = 0; i < 100 && mockingDetails(classifyStickers).getInvocations().isEmpty(); i++) {
+      Thread.sleep(50);
+      advance(DEBOUNCE_MILLIS + 1);
+      watcher.flushSettledFiles(DEBOUNCE_MILLIS);
+    }
+
+    assertThat(ingested()).containsExactly(late);
+  }
+
+  @Test
+  void ignoresSessionsStartedAfterShutdown() {
+    start();
+    watcher.stop();
+
+    watcher.handleSessionStarted(new ClassificationSessionStartedEvent(sessionId, workDir));
+
+    assertThat(watcher.isRunning()).isFalse();
+    verify(sessionStorage, times(1)).getResultRootDir(sessionId);
+  }
+
+  /** The scheduled flush and reconciliation never fire on their own, the tests call them */
+  private void start() {
+    AppOrchestrationConfig.WatchConfig watchConfig = mock();
+    when(watchConfig.isEnabled()).thenReturn(true);
+    when(watchConfig.getDebounceMillis()).thenReturn(TimeUnit.HOURS.toMillis(1));
+    when(config.getWatch()).thenReturn(watchConfig);
+    when(sessionStorage.getResultRootDir(sessionId)).thenReturn(workDir.resolve("out"));
+    when(sessionStorage.getWorkDir(sessionId)).thenReturn(workDir);
+    watcher.start();
+    watcher.handleSessionStarted(new ClassificationSessionStartedEvent(sessionId, workDir));
+  }
+
+  private void advance(long millis) {
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+
+  @SuppressWarnings("unchecked")
+  private Collection<Path> ingested() {
+    ArgumentCaptor<Collection<Path>> files = ArgumentCaptor.forClass(Collection.class);
+    verify(classifyStickers, times(1)).ingestNewFiles(eq(sessionId), files.capture());
+    return files.getValue();
+  }
+
+  private static Path png(Path file) throws IOException {
+    Files.createDirectories(file.getParent());
+    return Files.write(file, new byte[] {1});
+  }
+}
@@ -0,0 +1,121 @@
+package de.bytewright.sticker_classifier.orchestration.llm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig;
+import de.bytewright.sticker_classifier.domain.event.ImagePromptRequestFailedEvent;
+import de.bytewright.sticker_classifier.domain.llm.PromptFailure;
+import de.bytewright.sticker_classifier.domain.llm.PromptRequest;
+import de.bytewright.sticker_classifier.domain.llm.PromptRequestWithImage;
+import de.bytewright.sticker_classifier.domain.llm.PromptRetry;
+import de.bytewright.sticker_classifier.domain.llm.PromptType;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.context.ApplicationEventPublisher;
+
+class PromptRequestCoordinatorTest {
+  private static final UUID REQUEST_PARAMETER = UUID.randomUUID();
+
+  private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+  @Test
+  void countsQueuedRetriesAndInFlightRequests() {
+    PromptRequestCoordinator coordinator = coordinator(new AppOrchestrationConfig.RetryConfig());
+    coordinator.schedule(request("a.png"));
+    coordinator.schedule(request("b.png"));
+
+    PromptRequest taken = coordinator.takeNextRequest().orElseThrow();
+    assertThat(coordinator.getInFlightCount()).isEqualTo(1);
+    assertThat(coordinator.reschedule(taken, PromptFailure.TIMEOUT, null)).isTrue();
+    coordinator.requestFinished();
+
+    assertThat(coordinator.getQueueSize()).isEqualTo(2);
+    assertThat(coordinator.getRetryQueueSize()).isEqualTo(1);
+    assertThat(coordinator.getInFlightCount()).isZero();
+    assertThat(coordinator.getRetryCount()).isEqualTo(1);
+    assertThat(coordinator.getFailureCount(PromptFailure.TIMEOUT)).isEqualTo(1);
+
+    // The retry waits for its backoff, the new request is taken first
+    assertThat(coordinator.takeNextRequest()).contains(request("b.png"));
+    assertThat(coordinator.takeNextRequest()).isEmpty();
+    assertThat(coordinator.getRetryQueueSize()).isEqualTo(1);
+  }
+
+  @Test
+  void prefersDueRetriesOverNewRequests() {
+    PromptRequestCoordinator coordinator =
+        coordinator(
+            new AppOrchestrationConfig.RetryConfig() {
+              @Override
+              public long getInitialBackoffMillis() {
+                return 0;
+              }
+            });
+    coordinator.schedule(request("a.png"));
+    coordinator.schedule(request("b.png"));
+
+    PromptRequest taken = coordinator.takeNextRequest().orElseThrow();
+    coordinator.reschedule(taken, PromptFailure.PARSE_FAILURE, null);
+
+    assertThat(coordinator.takeNextRequest()).contains(new PromptRetry(1, request("a.png")));
+    assertThat(coordinator.takeNextRequest()).contains(request("b.png"));
+  }
+
+  @Test
+  void givesUpAfterLastRetryAndMovesImageToErrorFlow() {
+    PromptRequestCoordinator coordinator = coordinator(new AppOrchestrationConfig.RetryConfig());
+
+    boolean rescheduled =
+        coordinator.reschedule(
+            new PromptRetry(3, request("a.png")), PromptFailure.CONNECTION_REFUSED, null);
+
+    assertThat(rescheduled).isFalse();
+    assertThat(coordinator.getExhaustedCount()).isEqualTo(1);
+    assertThat(coordinator.getQueueSize()).isZero();
+    verify(eventPublisher).publishEvent(new ImagePromptRequestFailedEvent(Path.of("a.png")));
+  }
+
+  @Test
+  void openCircuitCostsNoAttempt() {
+    PromptRequestCoordinator coordinator = coordinator(new AppOrchestrationConfig.RetryConfig());
+
+    boolean rescheduled =
+        coordinator.reschedule(
+            new PromptRetry(3, request("a.png")),
+            PromptFailure.CIRCUIT_OPEN,
+            Duration.ofSeconds(30));
+
+    assertThat(rescheduled).isTrue();
+    assertThat(coordinator.getRetryCount()).isZero();
+    assertThat(coordinator.getRetryQueueSize()).isEqualTo(1);
+    assertThat(coordinator.takeNextRequest()).isEmpty();
+    verifyNoInteractions(eventPublisher);
+  }
+
+  @Test
+  void reportsUpWhileRequestsAreFinished() {
+    PromptRequestCoordinator coordinator = coordinator(new AppOrchestrationConfig.RetryConfig());
+    coordinator.schedule(request("a.png"));
+
+    assertThat(coordinator.health().getStatus()).isEqualTo(Status.UP);
+    assertThat(coordinator.health().getDetails()).containsEntry("queued", 1);
+  }
+
+  private PromptRequestCoordinator coordinator(AppOrchestrationConfig.RetryConfig config) {
+    return new PromptRequestCoordinator(new RetryPolicy(config), eventPublisher);
+  }
+
+  private static PromptRequestWithImage request(String fileName) {
+    return PromptRequestWithImage.builder()
+        .imagePath(Path.of(fileName))
+        .promptType(PromptType.STICKER_CLASSIFICATION)
+        .requestParameter(REQUEST_PARAMETER)
+        .build();
+  }
+}
@@ -0,0 +1,65 @@
+package de.bytewright.sticker_classifier.orchestration.llm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import de.bytewright.sticker_classifier.domain.llm.PromptRequestUnstructured;
+import de.bytewright.sticker_classifier.domain.llm.PromptResult;
+import de.bytewright.sticker_classifier.domain.llm.PromptResultConsumer;
+import de.bytewright.sticker_classifier.domain.llm.PromptType;
+import de.bytewright.sticker_classifier.domain.llm.StringPromptResult;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.junit.jupiter.api.Test;
+
+class ResultDispatcherTest {
+  private final Queue<String> calls = new ConcurrentLinkedQueue<>();
+
+  @Test
+  void stopsAtTheConsumerThatConsumesTheResult() {
+    ResultDispatcher dispatcher =
+        new ResultDispatcher(
+            List.of(consumer("stats", false), consumer("processor", true), consumer("late", false)),
+            4);
+
+    for (int i = 0; i < 10; i++) {
+      dispatcher.processResult(result("r" + i));
+    }
+    dispatcher.shutdown();
+
+    assertThat(calls).filteredOn(call -> call.startsWith("late")).isEmpty();
+    assertThat(calls.stream().filter(call -> call.startsWith("stats")))
+        .containsExactly(
+            "stats:r0", "stats:r1", "stats:r2", "stats:r3", "stats:r4", "stats:r5", "stats:r6",
+            "stats:r7", "stats:r8", "stats:r9");
+    assertThat(calls).filteredOn(call -> call.startsWith("processor")).hasSize(10);
+  }
+
+  @Test
+  void failingConsumerPassesTheResultOn() {
+    PromptResultConsumer failing =
+        (type, result) -> {
+          throw new IllegalStateException("boom");
+        };
+    ResultDispatcher dispatcher =
+        new ResultDispatcher(List.of(failing, consumer("next", false)), 4);
+
+    dispatcher.processResult(result("r0"));
+    dispatcher.shutdown();
+
+    assertThat(calls).containsExactly("next:r0");
+  }
+
+  private PromptResultConsumer consumer(String name, boolean consumes) {
+    return (type, result) -> {
+      calls.add(name + ":" + ((StringPromptResult) result).result());
+      return consumes;
+    };
+  }
+
+  private static PromptResult result(String value) {
+    PromptRequestUnstructured request =
+        PromptRequestUnstructured.builder().promptType(PromptType.STICKER_CLASSIFICATION).build();
+    return new StringPromptResult(request, PromptType.STICKER_CLASSIFICATION, null, value);
+  }
+}
@@ -0,0 +1,104 @@
+package de.bytewright.sticker_classifier.orchestration.output;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import de.bytewright.sticker_classifier.domain.AppOrchestrationConfig.OutputConfig.Mode;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OutputStrategyTest {
+
+  @Test
+  void hardLinksShareTheSourceFile(@TempDir Path tempDir) throws IOException {
+    Path source = Files.write(tempDir.resolve("sticker.png"), new byte[] {1, 2, 3});
+    Path target = tempDir.resolve("cat.png");
+
+    Path nextSource = OutputStrategy.forMode(Mode.HARDLINK).place(source, target);
+
+    assertThat(nextSource).isEqualTo(source);
+    assertThat(Files.isSameFile(source, target)).isTrue();
+  }
+
+  @Test
+  void symbolicLinksPointToTheSource(@TempDir Path tempDir) throws IOException {
+    Path source = Files.write(tempDir.resolve("sticker.png"), new byte[] {1, 2, 3});
+    Path target = tempDir.resolve("cat.png");
+
+    OutputStrategy.forMode(Mode.SYMLINK).place(source, target);
+
+    assertThat(Files.isSymbolicLink(target)).isTrue();
+    assertThat(Files.readSymbolicLink(target)).isEqualTo(source.toAbsolutePath());
+  }
+
+  @Test
+  void reflinksOrCopiesWhereClonesAreNotSupported(@TempDir Path tempDir) throws IOException {
+    Path source = Files.write(tempDir.resolve("sticker.png"), new byte[] {1, 2, 3});
+    Path target = tempDir.resolve("cat.png");
+
+    OutputStrategy.forMode(Mode.REFLINK).place(source, target);
+
+    assertThat(target).hasBinaryContent(new byte[] {1, 2, 3});
+  }
+
+  @Test
+  void fallsBackToCopyAndRemembersTheDirectory(@TempDir Path tempDir) throws IOException {
+    Path source = Files.write(tempDir.resolve("sticker.png"), new byte[] {1, 2, 3});
+    AtomicInteger attempts = new AtomicInteger();
+    OutputStrategy failing =
+        (from, to) -> {
+          attempts.incrementAndGet();
+          throw new FileSystemException(from.toString(), to.toString(), "cross-device link");
+        };
+    OutputStrategy strategy = new FallbackOutputStrategy(failing);
+
+    Path nextSource = strategy.place(source, tempDir.resolve("a.png"));
+    strategy.place(source, tempDir.resolve("b.png"));
+
+    assertThat(nextSource).isEqualTo(tempDir.resolve("a.png"));
+    assertThat(tempDir.resolve("b.png")).hasBinaryContent(new byte[] {1, 2, 3});
+    assertThat(attempts).hasValue(1);
+  }
+
+  @Test
+  void rethrowsFailuresOtherThanUnsupportedLinks(@TempDir Path tempDir) throws IOException {
+    Path source = Files.write(tempDir.resolve("sticker.png"), new byte[] {1, 2, 3});
+    AtomicInteger attempts = new AtomicInteger();
+    OutputStrategy failing =
+        (from, to) -> {
+          attempts.incrementAndGet();
+          throw new FileSystemException(from.toString(), to.toString(), "Permission denied");
+        };
+    OutputStrategy strategy = new FallbackOutputStrategy(failing);
+
+    assertThatThrownBy(() -> strategy.place(source, tempDir.resolve("a.png")))
+        .isInstanceOf(FileSystemException.class);
+    assertThatThrownBy(() -> strategy.place(source, tempDir.resolve("b.png")))
+        .isInstanceOf(FileSystemException.class);
+
+    assertThat(tempDir.resolve("a.png")).doesNotExist();
+    assertThat(attempts).hasValue(2);
+  }
+
+  @Test
+  void replacesWhatTheFailedAttemptLeftBehind(@TempDir Path tempDir) throws IOException {
+    Path source = Files.write(tempDir.resolve("sticker.png"), new byte[] {1, 2, 3});
+    Path target = tempDir.resolve("cat.png");
+    // Like cp --reflink=always on ext4: an empty target and "Operation not supported"
+    OutputStrategy partial =
+        (from, to) -> {
+          Files.createFile(to);
+          throw new FileSystemException(from.toString(), to.toString(), "Operation not supported");
+        };
+
+    Path nextSource = new FallbackOutputStrategy(partial).place(source, target);
+
+    assertThat(nextSource).isEqualTo(target);
+    assertThat(target).hasBinaryContent(new byte[] {1, 2, 3});
+  }
+}